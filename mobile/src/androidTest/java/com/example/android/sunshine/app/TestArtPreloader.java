@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.test.AndroidTestCase;
+import android.util.Log;
+import android.view.View;
+import android.widget.AbsListView;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.load.resource.drawable.GlideDrawable;
+import com.bumptech.glide.request.FutureTarget;
+import com.example.android.sunshine.app.utils.PollingCheck;
+import com.example.android.sunshine.app.utils.StubHttpServer;
+import com.example.android.sunshine.shared.WeatherConditions;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Serves an art pack from a stand-in image server with a slow network's latency, and checks
+    that warmed art isn't downloaded again and that preloaded art comes straight from memory,
+    and which rows the scroll preloader asks for as the list scrolls.
+    The server gets a new port every run, so every run starts with nothing cached.
+ */
+public class TestArtPreloader extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestArtPreloader.class.getSimpleName();
+
+    private static final long LATENCY_MILLIS = 300;
+
+    private StubHttpServer mServer;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Bitmap art = Bitmap.createBitmap(128, 128, Bitmap.Config.ARGB_8888);
+        art.eraseColor(Color.YELLOW);
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        art.compress(Bitmap.CompressFormat.PNG, 100, png);
+        final byte[] body = png.toByteArray();
+
+        mServer = new StubHttpServer(LATENCY_MILLIS) {
+            @Override
+            protected Response serve(String target) {
+                return new Response(200, "image/png", body);
+            }
+        };
+        mServer.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    private String getArtUrl(int weatherId) {
+        return mServer.getBaseUrl() + "/" + WeatherConditions.getArtName(weatherId) + ".png";
+    }
+
+    /*
+        A forecast of clear, cloudy and rainy days only needs three images, and once they're
+        warm, warming them again doesn't touch the network.
+     */
+    public void testWarmingFetchesEachImageOnce() {
+        Set<String> artUrls = new LinkedHashSet<>();
+        for (int weatherId : new int[]{800, 800, 801, 500, 501, 800}) {
+            artUrls.add(getArtUrl(weatherId));
+        }
+        assertEquals(3, ArtPreloader.warmDiskCache(mContext, artUrls));
+        assertEquals(3, mServer.getRequestCount());
+
+        assertEquals(3, ArtPreloader.warmDiskCache(mContext, artUrls));
+        assertEquals("Warm art shouldn't be downloaded again", 3, mServer.getRequestCount());
+    }
+
+    /*
+        Art the preloader had ahead of the scroll is in memory: a load that can't use the disk
+        cache finds it without going to the network, which art that wasn't preloaded can't.
+        Also logs how long a row's load takes, cold and preloaded.
+     */
+    public void testPreloadedArtSkipsTheNetwork() throws Exception {
+        final int size = mContext.getResources().getDimensionPixelSize(R.dimen.list_icon);
+
+        long coldNanos = timeRowLoad(getArtUrl(800), size);
+        assertEquals(1, mServer.getRequestCount());
+
+        final String preloadedUrl = getArtUrl(801);
+        final ArtPreloader.ScrollPreloader[] preloader = new ArtPreloader.ScrollPreloader[1];
+        // Glide only starts loads into targets from the main thread.
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                preloader[0] = new ArtPreloader.ScrollPreloader(Glide.with(mContext), null, size);
+                preloader[0].preload(preloadedUrl);
+            }
+        });
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return preloader[0] != null && preloader[0].getReadyCount() == 1;
+            }
+        }.run();
+        assertEquals(2, mServer.getRequestCount());
+
+        loadFromMemoryOrNetwork(preloadedUrl, size);
+        assertEquals("Preloaded art should come from memory", 2, mServer.getRequestCount());
+        loadFromMemoryOrNetwork(getArtUrl(500), size);
+        assertEquals("Art nobody loaded has to come from the network", 3,
+                mServer.getRequestCount());
+
+        long preloadedNanos = timeRowLoad(preloadedUrl, size);
+        assertEquals("Preloaded art shouldn't be downloaded again", 3,
+                mServer.getRequestCount());
+        Log.d(LOG_TAG, "Row art: cold " + (coldNanos / 1000) + "us, preloaded "
+                + (preloadedNanos / 1000) + "us");
+    }
+
+    /*
+        Scrolls a 14 row list by hand and checks which rows are preloaded: the next few past the
+        edge in the direction of the scroll, each only once until the direction flips, and
+        never past either end of the list.
+     */
+    public void testScrollPreloadsRowsAhead() {
+        final int rows = 14;
+        ForecastAdapter adapter = new ForecastAdapter(mContext, null, new View(mContext),
+                AbsListView.CHOICE_MODE_NONE) {
+            @Override
+            public int getItemCount() {
+                return rows;
+            }
+        };
+        RecordingPreloader preloader = new RecordingPreloader(adapter);
+        FakeLayoutManager layoutManager = new FakeLayoutManager(mContext);
+        RecyclerView recyclerView = new RecyclerView(mContext);
+        recyclerView.setLayoutManager(layoutManager);
+
+        // The first layout gets the rows below the first screen ready.
+        assertEquals(Arrays.asList(5, 6, 7, 8, 9),
+                preloader.scroll(recyclerView, layoutManager, 0, 0, 4));
+        // Only the rows that weren't already preloaded.
+        assertEquals(Arrays.asList(10, 11),
+                preloader.scroll(recyclerView, layoutManager, 10, 1, 6));
+        // Stops at the end of the list.
+        assertEquals(Arrays.asList(12, 13),
+                preloader.scroll(recyclerView, layoutManager, 10, 7, 11));
+        assertEquals(Collections.<Integer>emptyList(),
+                preloader.scroll(recyclerView, layoutManager, 10, 9, 13));
+
+        // Scrolling back up starts over, above the screen.
+        assertEquals(Arrays.asList(6, 5, 4, 3, 2),
+                preloader.scroll(recyclerView, layoutManager, -10, 7, 11));
+        // And stops at the top.
+        assertEquals(Arrays.asList(1, 0),
+                preloader.scroll(recyclerView, layoutManager, -10, 3, 7));
+        assertEquals(Collections.<Integer>emptyList(),
+                preloader.scroll(recyclerView, layoutManager, -10, 0, 4));
+
+        // Down again, and the rows below are wanted again.
+        assertEquals(Arrays.asList(5, 6, 7, 8, 9),
+                preloader.scroll(recyclerView, layoutManager, 10, 0, 4));
+
+        // New rows start over too.
+        preloader.reset();
+        assertEquals(Arrays.asList(5, 6, 7, 8, 9),
+                preloader.scroll(recyclerView, layoutManager, 0, 0, 4));
+    }
+
+    /*
+        Makes the request ForecastAdapter does for a row's icon, except that it can't use the
+        disk cache: it's served from memory or downloaded.
+     */
+    private void loadFromMemoryOrNetwork(String artUrl, int size) throws Exception {
+        FutureTarget<GlideDrawable> load = Glide.with(mContext)
+                .load(artUrl)
+                .diskCacheStrategy(DiskCacheStrategy.NONE)
+                .fitCenter()
+                .into(size, size);
+        try {
+            load.get(10, TimeUnit.SECONDS);
+        } finally {
+            load.clear();
+        }
+    }
+
+    /*
+        Makes the same request ForecastAdapter does for a row's icon.
+     */
+    private long timeRowLoad(String artUrl, int size) throws Exception {
+        long start = System.nanoTime();
+        FutureTarget<GlideDrawable> load = Glide.with(mContext)
+                .load(artUrl)
+                .diskCacheStrategy(ArtPreloader.ART_CACHE_STRATEGY)
+                .fitCenter()
+                .into(size, size);
+        try {
+            load.get(10, TimeUnit.SECONDS);
+            return System.nanoTime() - start;
+        } finally {
+            load.clear();
+        }
+    }
+
+    /*
+        Records the rows it's asked to preload instead of loading anything.
+     */
+    private class RecordingPreloader extends ArtPreloader.ScrollPreloader {
+        private final List<Integer> mPreloaded = new ArrayList<>();
+
+        RecordingPreloader(ForecastAdapter adapter) {
+            super(Glide.with(mContext), adapter, 1);
+        }
+
+        @Override
+        void preloadRow(int position) {
+            mPreloaded.add(position);
+        }
+
+        List<Integer> scroll(RecyclerView recyclerView, FakeLayoutManager layoutManager, int dy,
+                             int firstVisible, int lastVisible) {
+            mPreloaded.clear();
+            layoutManager.mFirstVisible = firstVisible;
+            layoutManager.mLastVisible = lastVisible;
+            onScrolled(recyclerView, 0, dy);
+            return new ArrayList<>(mPreloaded);
+        }
+    }
+
+    /*
+        Shows whichever rows the test says it does.
+     */
+    private static class FakeLayoutManager extends LinearLayoutManager {
+        int mFirstVisible = RecyclerView.NO_POSITION;
+        int mLastVisible = RecyclerView.NO_POSITION;
+
+        FakeLayoutManager(Context context) {
+            super(context);
+        }
+
+        @Override
+        public int findFirstVisibleItemPosition() {
+            return mFirstVisible;
+        }
+
+        @Override
+        public int findLastVisibleItemPosition() {
+            return mLastVisible;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+import android.text.format.Time;
+
+import java.text.SimpleDateFormat;
+
+/*
+    Checks that the cached day labels read the same as the ones Utility used to work out on every
+    call, and that they're only worked out once.
+ */
+public class TestDayLabelCache extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestDayLabelCache.class.getSimpleName();
+
+    private static final int DAYS = 14;
+
+    private DayLabelCache mCache;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mCache = new DayLabelCache(mContext);
+    }
+
+    public void testLabelsMatchOnTheFlyFormatting() {
+        long now = System.currentTimeMillis();
+        for (int day = 0; day < DAYS; day++) {
+            long date = now + day * DateUtils.DAY_IN_MILLIS;
+            assertEquals(legacyFriendlyDayString(date, false),
+                    mCache.getFriendlyDayString(date, false));
+            assertEquals(legacyFriendlyDayString(date, true),
+                    mCache.getFriendlyDayString(date, true));
+            assertEquals(legacyFullFriendlyDayString(date), mCache.getFullFriendlyDayString(date));
+            assertEquals(legacyDayName(date), mCache.getDayName(date));
+            assertEquals(legacyMonthDay(date), mCache.getFormattedMonthDay(date));
+        }
+    }
+
+    /*
+        A second pass over the same days, even at other times of those days, reads everything
+        back from the cache.
+     */
+    public void testLabelsAreOnlyBuiltOnce() {
+        long now = System.currentTimeMillis();
+        for (int day = 0; day < DAYS; day++) {
+            mCache.getFriendlyDayString(now + day * DateUtils.DAY_IN_MILLIS, false);
+        }
+        int misses = mCache.getMissCount();
+        assertTrue("Nothing was built", misses > 0);
+
+        for (int day = 0; day < DAYS; day++) {
+            long date = now + day * DateUtils.DAY_IN_MILLIS;
+            String label = mCache.getFriendlyDayString(date, false);
+            assertSame(label, mCache.getFriendlyDayString(date, false));
+        }
+        assertEquals(misses, mCache.getMissCount());
+
+        mCache.invalidate();
+        mCache.getFriendlyDayString(now, false);
+        assertTrue("Invalidating should empty the cache", mCache.getMissCount() > misses);
+    }
+
+    // How Utility worked the labels out before the cache.
+
+    private String legacyFriendlyDayString(long dateInMillis, boolean displayLongToday) {
+        Time time = new Time();
+        time.setToNow();
+        int julianDay = Time.getJulianDay(dateInMillis, time.gmtoff);
+        int currentJulianDay = Time.getJulianDay(System.currentTimeMillis(), time.gmtoff);
+        if (displayLongToday && julianDay == currentJulianDay) {
+            return mContext.getString(R.string.format_full_friendly_date,
+                    mContext.getString(R.string.today), legacyMonthDay(dateInMillis));
+        } else if (julianDay < currentJulianDay + 7) {
+            return legacyDayName(dateInMillis);
+        } else {
+            return new SimpleDateFormat("EEE MMM dd").format(dateInMillis);
+        }
+    }
+
+    private String legacyFullFriendlyDayString(long dateInMillis) {
+        return mContext.getString(R.string.format_full_friendly_date,
+                legacyDayName(dateInMillis), legacyMonthDay(dateInMillis));
+    }
+
+    private String legacyDayName(long dateInMillis) {
+        Time time = new Time();
+        time.setToNow();
+        int julianDay = Time.getJulianDay(dateInMillis, time.gmtoff);
+        int currentJulianDay = Time.getJulianDay(System.currentTimeMillis(), time.gmtoff);
+        if (julianDay == currentJulianDay) {
+            return mContext.getString(R.string.today);
+        } else if (julianDay == currentJulianDay + 1) {
+            return mContext.getString(R.string.tomorrow);
+        } else {
+            return new SimpleDateFormat("EEEE").format(dateInMillis);
+        }
+    }
+
+    private static String legacyMonthDay(long dateInMillis) {
+        return new SimpleDateFormat("MMMM dd").format(dateInMillis);
+    }
+}
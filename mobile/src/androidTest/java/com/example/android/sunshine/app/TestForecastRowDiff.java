@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.database.MatrixCursor;
+import android.support.v7.widget.RecyclerView;
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+import android.view.View;
+import android.widget.AbsListView;
+
+/*
+    Checks that handing the forecast adapter a new load only rebinds the rows that changed.
+ */
+public class TestForecastRowDiff extends AndroidTestCase {
+
+    private static final int DAYS = 14;
+
+    // Laid out like ForecastFragment's projection; only the columns the rows read matter.
+    private static final String[] COLUMNS = {
+            "_id", "date", "short_desc", "max", "min", "location_setting", "weather_id",
+            "coord_lat", "coord_long"
+    };
+
+    private long mToday;
+    private ForecastAdapter mAdapter;
+    private CountingObserver mObserver;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mToday = System.currentTimeMillis();
+        mAdapter = new ForecastAdapter(mContext, null, new View(mContext),
+                AbsListView.CHOICE_MODE_NONE);
+        mObserver = new CountingObserver();
+        mAdapter.registerAdapterDataObserver(mObserver);
+    }
+
+    /*
+        A load just like the last one, as the provider sends after any write, rebinds nothing.
+     */
+    public void testSameLoadRebindsNothing() {
+        mAdapter.swapCursor(createForecast(0, DAYS, "94043", -1));
+        mObserver.reset();
+
+        mAdapter.swapCursor(createForecast(0, DAYS, "94043", -1));
+        assertEquals(0, mObserver.changed);
+        assertEquals(0, mObserver.inserted);
+        assertEquals(0, mObserver.removed);
+        assertEquals(0, mObserver.fullRebinds);
+    }
+
+    /*
+        A sync where the forecast for one day changed rebinds that one row.
+     */
+    public void testOneDayChangedRebindsOneRow() {
+        mAdapter.swapCursor(createForecast(0, DAYS, "94043", -1));
+        mObserver.reset();
+
+        mAdapter.swapCursor(createForecast(0, DAYS, "94043", 5));
+        assertEquals("Rebinds after a one-day change", 1, mObserver.changed);
+        assertEquals(5, mObserver.lastChangedPosition);
+        assertEquals(0, mObserver.inserted);
+        assertEquals(0, mObserver.removed);
+        assertEquals(0, mObserver.fullRebinds);
+        assertEquals(DAYS, mAdapter.getItemCount());
+    }
+
+    /*
+        The first sync after midnight drops yesterday and adds a day at the end.  Only the row
+        that moves up to take today's layout is rebound; the rest just move.
+     */
+    public void testDayRollingOverMovesRows() {
+        mAdapter.swapCursor(createForecast(0, DAYS, "94043", -1));
+        mObserver.reset();
+
+        mAdapter.swapCursor(createForecast(1, DAYS, "94043", -1));
+        assertEquals(1, mObserver.removed);
+        assertEquals(1, mObserver.inserted);
+        assertEquals(1, mObserver.changed);
+        assertEquals(0, mObserver.lastChangedPosition);
+        assertEquals(0, mObserver.fullRebinds);
+        assertEquals(DAYS, mAdapter.getItemCount());
+    }
+
+    /*
+        The day labels aren't part of a load, so when the day rolls over every row is rebound
+        to pick up its new one.
+     */
+    public void testDayLabelRefreshRebindsEveryRow() {
+        mAdapter.swapCursor(createForecast(0, DAYS, "94043", -1));
+        mObserver.reset();
+
+        mAdapter.refreshDayLabels();
+        assertEquals(DAYS, mObserver.changed);
+        assertEquals(0, mObserver.fullRebinds);
+    }
+
+    /*
+        Another location shares no rows with the last one.
+     */
+    public void testNewLocationReplacesEveryRow() {
+        mAdapter.swapCursor(createForecast(0, DAYS, "94043", -1));
+        mObserver.reset();
+
+        mAdapter.swapCursor(createForecast(0, DAYS, "10001", -1));
+        assertEquals(DAYS, mObserver.removed);
+        assertEquals(DAYS, mObserver.inserted);
+        assertEquals(0, mObserver.changed);
+        assertEquals(DAYS, mAdapter.getItemCount());
+
+        mAdapter.swapCursor(null);
+        assertEquals(0, mAdapter.getItemCount());
+        assertEquals(2 * DAYS, mObserver.removed);
+    }
+
+    /*
+        A cursor that didn't come through the loader has its rows formatted by the adapter, and
+        is told apart from the next load just the same.
+     */
+    public void testPlainCursorIsFormatted() {
+        mAdapter.swapCursor(createCursor(0, DAYS, "94043", -1));
+        assertEquals(DAYS, mAdapter.getItemCount());
+        assertEquals(DAYS, mObserver.inserted);
+        assertEquals(mToday, mAdapter.getItemId(0));
+        mObserver.reset();
+
+        mAdapter.swapCursor(createForecast(0, DAYS, "94043", 5));
+        assertEquals(1, mObserver.changed);
+        assertEquals(5, mObserver.lastChangedPosition);
+        assertEquals(0, mObserver.inserted);
+        assertEquals(0, mObserver.removed);
+    }
+
+    /*
+        Days firstDay to firstDay + days - 1 from today, with the high temperature of changedDay
+        (counted from today, or -1 for none) raised as a sync might.
+     */
+    private MatrixCursor createCursor(int firstDay, int days, String location, int changedDay) {
+        MatrixCursor cursor = new MatrixCursor(COLUMNS);
+        for (int day = firstDay; day < firstDay + days; day++) {
+            double high = 20 + day + (day == changedDay ? 5 : 0);
+            cursor.addRow(new Object[]{day, mToday + day * DateUtils.DAY_IN_MILLIS, "Clear",
+                    high, 10 - day, location, 800, 37.4, -122.1});
+        }
+        return cursor;
+    }
+
+    /*
+        The same, formatted the way ForecastCursorLoader delivers it.
+     */
+    private ForecastCursorLoader.ForecastCursor createForecast(int firstDay, int days,
+                                                               String location, int changedDay) {
+        MatrixCursor cursor = createCursor(firstDay, days, location, changedDay);
+        return new ForecastCursorLoader.ForecastCursor(cursor,
+                ForecastRowModel.fromCursor(mContext, cursor));
+    }
+
+    private static class CountingObserver extends RecyclerView.AdapterDataObserver {
+        int fullRebinds;
+        int changed;
+        int inserted;
+        int removed;
+        int lastChangedPosition = -1;
+
+        void reset() {
+            fullRebinds = changed = inserted = removed = 0;
+            lastChangedPosition = -1;
+        }
+
+        @Override
+        public void onChanged() {
+            fullRebinds++;
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            changed += itemCount;
+            lastChangedPosition = positionStart + itemCount - 1;
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            inserted += itemCount;
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            removed += itemCount;
+        }
+    }
+}
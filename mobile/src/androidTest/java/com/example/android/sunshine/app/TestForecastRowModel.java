@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.database.MatrixCursor;
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+
+import java.util.List;
+
+/*
+    Checks that the precomputed rows show exactly what binding used to format on the fly.
+ */
+public class TestForecastRowModel extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestForecastRowModel.class.getSimpleName();
+
+    // Laid out like ForecastFragment's projection; only the columns the rows read matter.
+    private static final String[] COLUMNS = {
+            "_id", "date", "short_desc", "max", "min", "location_setting", "weather_id",
+            "coord_lat", "coord_long"
+    };
+
+    private static MatrixCursor createForecastCursor(int days) {
+        MatrixCursor cursor = new MatrixCursor(COLUMNS);
+        long today = System.currentTimeMillis();
+        for (int day = 0; day < days; day++) {
+            cursor.addRow(new Object[]{day, today + day * DateUtils.DAY_IN_MILLIS, "Clear",
+                    20.5 + day, 10.25 - day, "94043", day % 2 == 0 ? 800 : 501, 37.4, -122.1});
+        }
+        return cursor;
+    }
+
+    public void testRowsMatchOnTheFlyFormatting() {
+        MatrixCursor cursor = createForecastCursor(14);
+        List<ForecastRowModel> rows = ForecastRowModel.fromCursor(mContext, cursor);
+        assertEquals(14, rows.size());
+
+        for (int i = 0; i < rows.size(); i++) {
+            cursor.moveToPosition(i);
+            ForecastRowModel row = rows.get(i);
+            long date = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+            int weatherId = cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+            String high = Utility.formatTemperature(mContext,
+                    cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP));
+            String low = Utility.formatTemperature(mContext,
+                    cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP));
+            String description = Utility.getStringForWeatherCondition(mContext, weatherId);
+
+            assertEquals(date, row.date);
+            assertEquals(Utility.getIconResourceForWeatherCondition(weatherId), row.iconResId);
+            assertEquals(Utility.getArtResourceForWeatherCondition(weatherId), row.artResId);
+            assertEquals(description, row.description);
+            assertEquals(mContext.getString(R.string.a11y_forecast, description),
+                    row.descriptionA11y);
+            assertEquals(high, row.highText);
+            assertEquals(mContext.getString(R.string.a11y_high_temp, high), row.highA11y);
+            assertEquals(low, row.lowText);
+            assertEquals(mContext.getString(R.string.a11y_low_temp, low), row.lowA11y);
+            assertEquals("iconView" + date, row.transitionName);
+        }
+        assertTrue(rows.get(0).first);
+        assertFalse(rows.get(1).first);
+    }
+
+    public void testEmptyCursor() {
+        assertTrue(ForecastRowModel.fromCursor(mContext, createForecastCursor(0)).isEmpty());
+        assertTrue(ForecastRowModel.fromCursor(mContext, null).isEmpty());
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v7.widget.RecyclerView;
+import android.test.AndroidTestCase;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.example.android.sunshine.shared.LongIntMap;
+
+/*
+    Checks that a checked item stays checked when the data moves it, whether it's found through
+    the adapter's index or by searching for it, for a long list.
+ */
+public class TestItemChoiceManager extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestItemChoiceManager.class.getSimpleName();
+
+    private static final int ROWS = 10000;
+
+    public void testCheckedItemFollowsItsId() {
+        IndexedAdapter adapter = new IndexedAdapter(0, 100);
+        ItemChoiceManager icm = new ItemChoiceManager(adapter);
+        check(icm, adapter, 50);
+
+        // Two rows were added in front of it.
+        adapter.setIds(-2, 100);
+        icm.confirmCheckedPositionsById(100);
+        assertEquals(52, icm.getSelectedItemPosition());
+        assertTrue(icm.isItemChecked(52));
+        assertFalse(icm.isItemChecked(50));
+
+        // Then it was dropped.
+        adapter.setIds(51, 100);
+        icm.confirmCheckedPositionsById(100);
+        assertEquals(RecyclerView.NO_POSITION, icm.getSelectedItemPosition());
+        assertEquals(0, icm.mCheckedIdStates.size());
+    }
+
+    /*
+        With an index the item is found however far it moved; searching gives up after
+        a few positions either way.
+     */
+    public void testIndexFindsItemsFarAway() {
+        IndexedAdapter indexed = new IndexedAdapter(0, ROWS);
+        ItemChoiceManager indexedIcm = new ItemChoiceManager(indexed);
+        check(indexedIcm, indexed, 5000);
+        indexed.setIds(-1000, ROWS);
+        indexedIcm.confirmCheckedPositionsById(ROWS);
+        assertEquals(6000, indexedIcm.getSelectedItemPosition());
+
+        SearchedAdapter searched = new SearchedAdapter(0, ROWS);
+        ItemChoiceManager searchedIcm = new ItemChoiceManager(searched);
+        check(searchedIcm, searched, 5000);
+        searched.setIds(-10, ROWS);
+        searchedIcm.confirmCheckedPositionsById(ROWS);
+        assertEquals(5010, searchedIcm.getSelectedItemPosition());
+    }
+
+    /*
+        Re-finds a whole list's worth of checked items after the list shifted, through the index
+        and by searching.  Both have to land every item on its new position; the timings are
+        only logged.
+     */
+    public void testConfirmCost() {
+        IndexedAdapter indexed = new IndexedAdapter(0, ROWS);
+        SearchedAdapter searched = new SearchedAdapter(0, ROWS);
+        ItemChoiceManager indexedIcm = new ItemChoiceManager(indexed);
+        ItemChoiceManager searchedIcm = new ItemChoiceManager(searched);
+        for (int i = 0; i < ROWS; i++) {
+            check(indexedIcm, indexed, i);
+            check(searchedIcm, searched, i);
+        }
+        // Shifted by less than the search distance, so searching still finds them all.
+        indexed.setIds(-15, ROWS);
+        searched.setIds(-15, ROWS);
+
+        long start = System.nanoTime();
+        indexedIcm.confirmCheckedPositionsById(ROWS);
+        long indexedNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        searchedIcm.confirmCheckedPositionsById(ROWS);
+        long searchedNanos = System.nanoTime() - start;
+
+        Log.d(LOG_TAG, "Re-finding " + ROWS + " checked rows: index " + (indexedNanos / 1000)
+                + "us, search " + (searchedNanos / 1000) + "us");
+        assertShiftedBy(indexedIcm, 15);
+        assertShiftedBy(searchedIcm, 15);
+    }
+
+    /*
+        Every id that's still in the list is checked at its old position plus the shift, and
+        the ones shifted off the end are gone.
+     */
+    private static void assertShiftedBy(ItemChoiceManager icm, int shift) {
+        assertEquals(ROWS - shift, icm.mCheckedIdStates.size());
+        assertEquals(ROWS - shift, icm.mCheckStates.size());
+        for (long id = 0; id < ROWS - shift; id++) {
+            int position = (int) id + shift;
+            assertEquals("Checked id " + id, position,
+                    icm.mCheckedIdStates.get(id, RecyclerView.NO_POSITION));
+            assertTrue("Position " + position, icm.mCheckStates.get(position));
+        }
+    }
+
+    private static void check(ItemChoiceManager icm, SearchedAdapter adapter, int position) {
+        icm.mCheckStates.put(position, true);
+        icm.mCheckedIdStates.put(adapter.getItemId(position), position);
+    }
+
+    /*
+        Rows whose ids run from firstId up, like days of a forecast.
+     */
+    private static class SearchedAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+        long[] mIds;
+
+        SearchedAdapter(long firstId, int count) {
+            setHasStableIds(true);
+            setIds(firstId, count);
+        }
+
+        void setIds(long firstId, int count) {
+            mIds = new long[count];
+            for (int i = 0; i < count; i++) {
+                mIds[i] = firstId + i;
+            }
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return mIds[position];
+        }
+
+        @Override
+        public int getItemCount() {
+            return mIds.length;
+        }
+
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            return new RecyclerView.ViewHolder(new View(parent.getContext())) {};
+        }
+
+        @Override
+        public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+        }
+    }
+
+    private static class IndexedAdapter extends SearchedAdapter
+            implements ItemChoiceManager.PositionIndex {
+        private LongIntMap mPositions;
+
+        IndexedAdapter(long firstId, int count) {
+            super(firstId, count);
+        }
+
+        @Override
+        void setIds(long firstId, int count) {
+            super.setIds(firstId, count);
+            mPositions = new LongIntMap(count);
+            for (int i = 0; i < count; i++) {
+                mPositions.put(mIds[i], i);
+            }
+        }
+
+        @Override
+        public int getPositionForId(long id) {
+            return mPositions.get(id, RecyclerView.NO_POSITION);
+        }
+    }
+}
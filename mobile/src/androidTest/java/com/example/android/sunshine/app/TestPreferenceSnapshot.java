@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+/*
+    Checks that the settings snapshot follows the preferences, and logs what reading it costs
+    next to reading the preferences the way Utility used to.
+ */
+public class TestPreferenceSnapshot extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestPreferenceSnapshot.class.getSimpleName();
+
+    private SharedPreferences mPrefs;
+    private String mUnitsKey;
+    private String mSavedUnits;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mUnitsKey = mContext.getString(R.string.pref_units_key);
+        mSavedUnits = mPrefs.getString(mUnitsKey, null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        SharedPreferences.Editor editor = mPrefs.edit();
+        if (mSavedUnits == null) {
+            editor.remove(mUnitsKey);
+        } else {
+            editor.putString(mUnitsKey, mSavedUnits);
+        }
+        editor.commit();
+        PreferenceSnapshot.refresh(mContext);
+        super.tearDown();
+    }
+
+    public void testSnapshotMatchesPreferences() {
+        PreferenceSnapshot snapshot = PreferenceSnapshot.get(mContext);
+        assertEquals(readPreferredLocation(mContext), snapshot.locationSetting);
+        assertEquals(readIsMetric(mContext), snapshot.metric);
+        assertEquals(readUsingLocalGraphics(mContext), snapshot.localGraphics);
+        assertSame("Reads between changes should share one snapshot",
+                snapshot, PreferenceSnapshot.get(mContext));
+    }
+
+    /*
+        A change is picked up by the listener on its own, and listeners registered through the
+        snapshot already see it.
+     */
+    public void testSnapshotFollowsChanges() {
+        final boolean wasMetric = PreferenceSnapshot.get(mContext).metric;
+        final boolean[] sawNewValue = new boolean[1];
+        SharedPreferences.OnSharedPreferenceChangeListener listener =
+                new SharedPreferences.OnSharedPreferenceChangeListener() {
+                    @Override
+                    public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+                        if (key.equals(mUnitsKey)) {
+                            sawNewValue[0] = PreferenceSnapshot.get(mContext).metric != wasMetric;
+                        }
+                    }
+                };
+        PreferenceSnapshot.registerListener(mContext, listener);
+        try {
+            mPrefs.edit().putString(mUnitsKey, mContext.getString(wasMetric
+                    ? R.string.pref_units_imperial : R.string.pref_units_metric)).commit();
+            // We're not on the main thread, so the listeners hear of it a little later.
+            new PollingCheck(5000) {
+                @Override
+                protected boolean check() {
+                    return PreferenceSnapshot.get(mContext).metric != wasMetric;
+                }
+            }.run();
+            new PollingCheck(5000) {
+                @Override
+                protected boolean check() {
+                    return sawNewValue[0];
+                }
+            }.run();
+            PreferenceSnapshot snapshot = PreferenceSnapshot.get(mContext);
+            assertEquals(readIsMetric(mContext), snapshot.metric);
+            assertEquals(readPreferredLocation(mContext), snapshot.locationSetting);
+            assertEquals(readUsingLocalGraphics(mContext), snapshot.localGraphics);
+        } finally {
+            PreferenceSnapshot.unregisterListener(listener);
+        }
+    }
+
+    /*
+        Times the reads a forecast row, a widget or a notification makes, through the snapshot
+        and straight from the preferences.  Both have to read the same values; the timings are
+        only logged.
+     */
+    public void testReadCost() {
+        final int reads = 20000;
+        // Warm up both.
+        readAll(reads / 10);
+        readAllFromPreferences(reads / 10);
+
+        long start = System.nanoTime();
+        int snapshotResult = readAll(reads);
+        long snapshotNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        int preferencesResult = readAllFromPreferences(reads);
+        long preferencesNanos = System.nanoTime() - start;
+
+        assertEquals(snapshotResult, preferencesResult);
+        Log.d(LOG_TAG, "Settings reads: snapshot " + (snapshotNanos / reads) + "ns, preferences "
+                + (preferencesNanos / reads) + "ns");
+    }
+
+    private int readAll(int times) {
+        int result = 0;
+        for (int i = 0; i < times; i++) {
+            PreferenceSnapshot snapshot = PreferenceSnapshot.get(mContext);
+            result += snapshot.metric ? 1 : 0;
+            result += snapshot.locationSetting.length();
+            result += snapshot.localGraphics ? 1 : 0;
+        }
+        return result;
+    }
+
+    private int readAllFromPreferences(int times) {
+        int result = 0;
+        for (int i = 0; i < times; i++) {
+            result += readIsMetric(mContext) ? 1 : 0;
+            result += readPreferredLocation(mContext).length();
+            result += readUsingLocalGraphics(mContext) ? 1 : 0;
+        }
+        return result;
+    }
+
+    // How Utility read these before the snapshot.
+
+    private static String readPreferredLocation(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        return prefs.getString(context.getString(R.string.pref_location_key),
+                context.getString(R.string.pref_location_default));
+    }
+
+    private static boolean readIsMetric(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        return prefs.getString(context.getString(R.string.pref_units_key),
+                context.getString(R.string.pref_units_metric))
+                .equals(context.getString(R.string.pref_units_metric));
+    }
+
+    private static boolean readUsingLocalGraphics(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String sunshineArtPack = context.getString(R.string.pref_art_pack_sunshine);
+        return prefs.getString(context.getString(R.string.pref_art_pack_key),
+                sunshineArtPack).equals(sunshineArtPack);
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/*
+    Checks Utility's condition lookups, now backed by the shared tables, against the resources
+    the old if/else chains and switch picked, for every id from well below the smallest
+    condition to well above the largest.  The shared module checks the tables themselves.
+ */
+public class TestWeatherConditions extends AndroidTestCase {
+
+    private static final int FIRST_ID = -1;
+    private static final int LAST_ID = 1100;
+
+    // The cases the old description switch had, outside the 2xx and 3xx groups.  521 and 522
+    // have strings but were never in it, so they stay "unknown".
+    private static final int[] SWITCH_CASES = {
+            500, 501, 502, 503, 504, 511, 520, 531,
+            600, 601, 602, 611, 612, 615, 616, 620, 621, 622,
+            701, 711, 721, 731, 741, 751, 761, 762, 771, 781,
+            800, 801, 802, 803, 804,
+            900, 901, 902, 903, 904, 905, 906,
+            951, 952, 953, 954, 955, 956, 957, 958, 959, 960, 961, 962
+    };
+
+    public void testIconsAndArtMatchChains() {
+        for (int id = FIRST_ID; id <= LAST_ID; id++) {
+            assertEquals("Icon for " + id, legacyIcon(id),
+                    Utility.getIconResourceForWeatherCondition(id));
+            assertEquals("Art for " + id, legacyArt(id),
+                    Utility.getArtResourceForWeatherCondition(id));
+        }
+    }
+
+    public void testArtUrlMatchesChain() {
+        String artPack = PreferenceSnapshot.get(mContext).artPack;
+        for (int id = FIRST_ID; id <= LAST_ID; id++) {
+            String name = legacyArtName(id);
+            String expected = name == null ? null : String.format(Locale.US, artPack, name);
+            assertEquals("Art URL for " + id, expected,
+                    Utility.getArtUrlForWeatherCondition(mContext, id));
+        }
+    }
+
+    public void testDescriptionMatchesSwitch() {
+        for (int id = FIRST_ID; id <= LAST_ID; id++) {
+            String expected;
+            if (id >= 200 && id <= 232) {
+                expected = mContext.getString(R.string.condition_2xx);
+            } else if (id >= 300 && id <= 321) {
+                expected = mContext.getString(R.string.condition_3xx);
+            } else if (Arrays.binarySearch(SWITCH_CASES, id) >= 0) {
+                int stringId = mContext.getResources().getIdentifier("condition_" + id, "string",
+                        mContext.getPackageName());
+                assertTrue("No string for " + id, stringId != 0);
+                expected = mContext.getString(stringId);
+            } else {
+                expected = mContext.getString(R.string.condition_unknown, id);
+            }
+            assertEquals("Description for " + id, expected,
+                    Utility.getStringForWeatherCondition(mContext, id));
+        }
+    }
+
+    // The chains Utility used before the tables.
+
+    private static int legacyIcon(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.ic_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.ic_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.ic_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.ic_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.ic_fog;
+        } else if (weatherId == 761 || weatherId == 781) {
+            return R.drawable.ic_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.ic_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.ic_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.ic_cloudy;
+        }
+        return -1;
+    }
+
+    private static int legacyArt(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.art_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.art_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.art_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.art_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.art_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.art_snow;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.art_fog;
+        } else if (weatherId == 761 || weatherId == 781) {
+            return R.drawable.art_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.art_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.art_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.art_clouds;
+        }
+        return -1;
+    }
+
+    private static String legacyArtName(int weatherId) {
+        if (weatherId >= 200 && weatherId <= 232) {
+            return "storm";
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return "light_rain";
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return "rain";
+        } else if (weatherId == 511) {
+            return "snow";
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return "rain";
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return "snow";
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return "fog";
+        } else if (weatherId == 761 || weatherId == 781) {
+            return "storm";
+        } else if (weatherId == 800) {
+            return "clear";
+        } else if (weatherId == 801) {
+            return "light_clouds";
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return "clouds";
+        }
+        return null;
+    }
+}
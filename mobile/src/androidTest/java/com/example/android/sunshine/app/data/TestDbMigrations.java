@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/*
+    Builds databases the way older versions of the app left them, then opens them with the
+    current WeatherDbHelper and checks that the upgrade kept everything.
+ */
+public class TestDbMigrations extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestDbMigrations.class.getSimpleName();
+
+    private static final int NUM_LOCATIONS = 500;
+    private static final int DAYS_PER_LOCATION = 14;
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    // The schema as version 2 shipped it.  Never change these to match the current schema.
+    private static final String V2_CREATE_LOCATION_TABLE = "CREATE TABLE location (" +
+            "_id INTEGER PRIMARY KEY," +
+            "location_setting TEXT UNIQUE NOT NULL, " +
+            "city_name TEXT NOT NULL, " +
+            "coord_lat REAL NOT NULL, " +
+            "coord_long REAL NOT NULL  );";
+    private static final String V2_CREATE_WEATHER_TABLE = "CREATE TABLE weather (" +
+            "_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+            "location_id INTEGER NOT NULL, " +
+            "date INTEGER NOT NULL, " +
+            "short_desc TEXT NOT NULL, " +
+            "weather_id INTEGER NOT NULL," +
+            "min REAL NOT NULL, " +
+            "max REAL NOT NULL, " +
+            "humidity REAL NOT NULL, " +
+            "pressure REAL NOT NULL, " +
+            "wind REAL NOT NULL, " +
+            "degrees REAL NOT NULL, " +
+            " FOREIGN KEY (location_id) REFERENCES location (_id), " +
+            " UNIQUE (date, location_id) ON CONFLICT REPLACE);";
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        super.tearDown();
+    }
+
+    public void testUpgradeFromVersion2KeepsData() {
+        createVersion2Database(NUM_LOCATIONS);
+
+        SQLiteDatabase db = new WeatherDbHelper(mContext).getReadableDatabase();
+        assertEquals(WeatherDbHelper.DATABASE_VERSION, db.getVersion());
+        assertEquals(NUM_LOCATIONS, count(db, LocationEntry.TABLE_NAME));
+        assertEquals(NUM_LOCATIONS * DAYS_PER_LOCATION, count(db, WeatherEntry.TABLE_NAME));
+
+        Cursor cursor = db.query(WeatherEntry.TABLE_NAME, null,
+                WeatherEntry.COLUMN_DATE + " = ?",
+                new String[]{Long.toString(WeatherContract.normalizeDate(TestUtilities.TEST_DATE))},
+                null, null, WeatherEntry.COLUMN_LOC_KEY + " ASC", "1");
+        assertTrue(cursor.moveToFirst());
+        TestUtilities.validateCurrentRecord("The first day should survive the upgrade", cursor,
+                createWeatherValues(cursor.getLong(cursor.getColumnIndex(WeatherEntry.COLUMN_LOC_KEY)), 0));
+        cursor.close();
+        db.close();
+    }
+
+    /*
+        However a database got to the current version, it should end up with the same tables and
+        indexes as one created from scratch.
+     */
+    public void testMigratedSchemaMatchesFreshSchema() {
+        SQLiteDatabase db = new WeatherDbHelper(mContext).getReadableDatabase();
+        Set<String> fresh = readSchema(db);
+        db.close();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+
+        for (int version = WeatherDbHelper.OLDEST_MIGRATABLE_VERSION;
+             version < WeatherDbHelper.DATABASE_VERSION; version++) {
+            createVersion2Database(1);
+            db = openDatabase();
+            for (int step = WeatherDbHelper.OLDEST_MIGRATABLE_VERSION; step < version; step++) {
+                WeatherDbHelper.migrate(db, step);
+            }
+            db.setVersion(version);
+            db.close();
+
+            db = new WeatherDbHelper(mContext).getReadableDatabase();
+            assertEquals("Upgrading from version " + version + " gave a different schema",
+                    fresh, readSchema(db));
+            db.close();
+            mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        }
+    }
+
+    /*
+        Version 1 is from before migrations, so it's still wiped and recreated.
+     */
+    public void testUpgradeFromVersion1StartsOver() {
+        createVersion2Database(1);
+        SQLiteDatabase db = openDatabase();
+        db.setVersion(1);
+        db.close();
+
+        db = new WeatherDbHelper(mContext).getReadableDatabase();
+        assertEquals(0, count(db, LocationEntry.TABLE_NAME));
+        assertEquals(0, count(db, WeatherEntry.TABLE_NAME));
+        db.close();
+    }
+
+    /*
+        Logs how long it takes, after an update, from opening the database to having a forecast
+        to show.  Before migrations that meant a full sync of every location, since the upgrade
+        threw the forecasts away; now every stored day survives and the first location's
+        forecast is there as soon as the database opens.
+     */
+    public void testTimeToFirstForecastAfterUpgrade() {
+        createVersion2Database(NUM_LOCATIONS);
+
+        long start = SystemClock.elapsedRealtime();
+        SQLiteDatabase db = new WeatherDbHelper(mContext).getReadableDatabase();
+        long upgradedMillis = SystemClock.elapsedRealtime() - start;
+        Cursor cursor = db.query(WeatherEntry.TABLE_NAME, null,
+                WeatherEntry.COLUMN_LOC_KEY + " = ? AND " + WeatherEntry.COLUMN_DATE + " >= ?",
+                new String[]{"1", Long.toString(WeatherContract.normalizeDate(TestUtilities.TEST_DATE))},
+                null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals(DAYS_PER_LOCATION, cursor.getCount());
+        long firstForecastMillis = SystemClock.elapsedRealtime() - start;
+        cursor.moveToFirst();
+        for (int day = 0; day < DAYS_PER_LOCATION; day++, cursor.moveToNext()) {
+            TestUtilities.validateCurrentRecord("Error validating day " + day + " after the upgrade",
+                    cursor, createWeatherValues(1, day));
+        }
+        cursor.close();
+        assertEquals("Every forecast row should survive the upgrade",
+                NUM_LOCATIONS * DAYS_PER_LOCATION, count(db, WeatherEntry.TABLE_NAME));
+        db.close();
+
+        Log.i(LOG_TAG, String.format(Locale.US,
+                "%d locations, %d days: upgrade took %d ms, first forecast after %d ms",
+                NUM_LOCATIONS, NUM_LOCATIONS * DAYS_PER_LOCATION, upgradedMillis,
+                firstForecastMillis));
+    }
+
+    private void createVersion2Database(int numLocations) {
+        SQLiteDatabase db = openDatabase();
+        db.execSQL(V2_CREATE_LOCATION_TABLE);
+        db.execSQL(V2_CREATE_WEATHER_TABLE);
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < numLocations; i++) {
+                ContentValues location = new ContentValues();
+                location.put(LocationEntry.COLUMN_LOCATION_SETTING, "location_" + i);
+                location.put(LocationEntry.COLUMN_CITY_NAME, "City " + i);
+                location.put(LocationEntry.COLUMN_COORD_LAT, i % 90);
+                location.put(LocationEntry.COLUMN_COORD_LONG, i % 180);
+                long locationId = db.insert(LocationEntry.TABLE_NAME, null, location);
+                for (int day = 0; day < DAYS_PER_LOCATION; day++) {
+                    db.insert(WeatherEntry.TABLE_NAME, null, createWeatherValues(locationId, day));
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        db.setVersion(2);
+        db.close();
+    }
+
+    private SQLiteDatabase openDatabase() {
+        File path = mContext.getDatabasePath(WeatherDbHelper.DATABASE_NAME);
+        path.getParentFile().mkdirs();
+        return SQLiteDatabase.openOrCreateDatabase(path, null);
+    }
+
+    private static ContentValues createWeatherValues(long locationId, int day) {
+        ContentValues values = new ContentValues();
+        values.put(WeatherEntry.COLUMN_LOC_KEY, locationId);
+        values.put(WeatherEntry.COLUMN_DATE,
+                WeatherContract.normalizeDate(TestUtilities.TEST_DATE + day * DAY_IN_MILLIS));
+        values.put(WeatherEntry.COLUMN_SHORT_DESC, "Asteroids");
+        values.put(WeatherEntry.COLUMN_WEATHER_ID, 321);
+        values.put(WeatherEntry.COLUMN_MIN_TEMP, 65 - day);
+        values.put(WeatherEntry.COLUMN_MAX_TEMP, 75 + day);
+        values.put(WeatherEntry.COLUMN_HUMIDITY, 1.25);
+        values.put(WeatherEntry.COLUMN_PRESSURE, 1.5);
+        values.put(WeatherEntry.COLUMN_WIND_SPEED, 5.5);
+        values.put(WeatherEntry.COLUMN_DEGREES, 1.75);
+        return values;
+    }
+
+    private static int count(SQLiteDatabase db, String table) {
+        Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM " + table, null);
+        cursor.moveToFirst();
+        int count = cursor.getInt(0);
+        cursor.close();
+        return count;
+    }
+
+    // Every table and index, by type and name.
+    private static Set<String> readSchema(SQLiteDatabase db) {
+        Set<String> schema = new HashSet<>();
+        Cursor cursor = db.rawQuery("SELECT type, name FROM sqlite_master", null);
+        while (cursor.moveToNext()) {
+            schema.add(cursor.getString(0) + " " + cursor.getString(1));
+        }
+        cursor.close();
+        return schema;
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Locale;
+
+/*
+    Checks that forecasts for one location are read through the (location_id, date) index, and
+    times those reads against the join on the location setting with thousands of locations
+    stored.
+ */
+public class TestLocationQueries extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestLocationQueries.class.getSimpleName();
+
+    private static final int NUM_LOCATIONS = 2000;
+    private static final int DAYS_PER_LOCATION = 14;
+    private static final int NUM_QUERIES = 500;
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    // What the widgets and the wearable ask for: nothing from the location table.
+    private static final String[] WEATHER_COLUMNS = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP
+    };
+
+    // What the forecast list asks for, location columns included.
+    private static final String[] JOINED_COLUMNS = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            LocationEntry.COLUMN_COORD_LAT
+    };
+
+    private static final String SQL_JOIN_BY_SETTING = "SELECT "
+            + WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID + ", "
+            + WeatherEntry.COLUMN_DATE + ", " + WeatherEntry.COLUMN_WEATHER_ID + ", "
+            + WeatherEntry.COLUMN_MAX_TEMP + ", " + WeatherEntry.COLUMN_MIN_TEMP
+            + " FROM " + WeatherEntry.TABLE_NAME + " INNER JOIN " + LocationEntry.TABLE_NAME
+            + " ON " + WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_LOC_KEY
+            + " = " + LocationEntry.TABLE_NAME + "." + LocationEntry._ID
+            + " WHERE " + LocationEntry.TABLE_NAME + "." + LocationEntry.COLUMN_LOCATION_SETTING
+            + " = ? AND " + WeatherEntry.COLUMN_DATE + " >= ?"
+            + " ORDER BY " + WeatherEntry.COLUMN_DATE + " ASC";
+
+    private SQLiteDatabase mDb;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAllRecords();
+        mDb = new WeatherDbHelper(mContext).getWritableDatabase();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDb.close();
+        deleteAllRecords();
+        super.tearDown();
+    }
+
+    public void testQueryPlanUsesLocationDateIndex() {
+        String plan = explain("SELECT * FROM " + WeatherEntry.TABLE_NAME
+                + " WHERE " + WeatherEntry.COLUMN_LOC_KEY + " = ? AND "
+                + WeatherEntry.COLUMN_DATE + " >= ? ORDER BY " + WeatherEntry.COLUMN_DATE + " ASC");
+        assertTrue("The forecast query should search the location/date index: " + plan,
+                plan.contains(WeatherDbHelper.INDEX_WEATHER_LOCATION_DATE));
+        assertFalse("The index should already return the days in order: " + plan,
+                plan.contains("TEMP B-TREE"));
+    }
+
+    public void testProjectionsThatSkipTheJoin() {
+        assertTrue(WeatherProvider.canSkipJoin(WEATHER_COLUMNS));
+        assertTrue("Location columns come from the cached location row",
+                WeatherProvider.canSkipJoin(JOINED_COLUMNS));
+        assertFalse("A null projection asks for every column of both tables",
+                WeatherProvider.canSkipJoin(null));
+        assertFalse(WeatherProvider.canSkipJoin(new String[]{
+                "upper(" + LocationEntry.COLUMN_CITY_NAME + ")"}));
+    }
+
+    /*
+        Both paths through the provider, with and without the join, should see the same days.
+     */
+    public void testQueriesByIdMatchJoin() {
+        insertForecasts(3);
+        Uri uri = WeatherEntry.buildWeatherLocationWithStartDate("location_1",
+                TestUtilities.TEST_DATE + 2 * DAY_IN_MILLIS);
+
+        Cursor weatherOnly = mContext.getContentResolver().query(uri, WEATHER_COLUMNS, null, null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+        Cursor joined = mContext.getContentResolver().query(uri, JOINED_COLUMNS, null, null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals(DAYS_PER_LOCATION - 2, weatherOnly.getCount());
+        assertEquals(weatherOnly.getCount(), joined.getCount());
+        while (weatherOnly.moveToNext() && joined.moveToNext()) {
+            assertEquals(weatherOnly.getLong(0), joined.getLong(0));
+            assertEquals(weatherOnly.getLong(1), joined.getLong(1));
+            assertEquals("location_1", joined.getString(5));
+        }
+        weatherOnly.close();
+        joined.close();
+
+        // A location nobody has stored has no days.
+        Cursor unknown = mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocation("nowhere"), WEATHER_COLUMNS, null, null, null);
+        assertEquals(0, unknown.getCount());
+        unknown.close();
+    }
+
+    /*
+        Location columns served from the cached row follow the location when it's updated, and
+        the day queries come back to the join once it's deleted.
+     */
+    public void testCachedLocationFollowsUpdates() {
+        insertForecasts(2);
+        Uri uri = WeatherEntry.buildWeatherLocationWithStartDate("location_1",
+                TestUtilities.TEST_DATE);
+        String[] projection = {
+                WeatherEntry.COLUMN_DATE,
+                LocationEntry.COLUMN_LOCATION_SETTING,
+                LocationEntry.TABLE_NAME + "." + LocationEntry.COLUMN_CITY_NAME,
+                LocationEntry.COLUMN_COORD_LAT,
+                LocationEntry.COLUMN_COORD_LONG
+        };
+
+        Cursor before = mContext.getContentResolver().query(uri, projection, null, null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+        assertTrue(before.moveToFirst());
+        assertEquals("location_1", before.getString(1));
+        assertEquals("City 1", before.getString(2));
+        assertEquals(1.0, before.getDouble(3));
+        before.close();
+
+        ContentValues moved = new ContentValues();
+        moved.put(LocationEntry.COLUMN_CITY_NAME, "Mountain View's");
+        moved.put(LocationEntry.COLUMN_COORD_LAT, 37.386);
+        moved.put(LocationEntry.COLUMN_COORD_LONG, -122.084);
+        assertEquals(1, mContext.getContentResolver().update(LocationEntry.CONTENT_URI, moved,
+                LocationEntry.COLUMN_LOCATION_SETTING + " = ?", new String[]{"location_1"}));
+
+        Cursor after = mContext.getContentResolver().query(uri, projection, null, null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals(DAYS_PER_LOCATION, after.getCount());
+        while (after.moveToNext()) {
+            assertEquals("location_1", after.getString(1));
+            assertEquals("Mountain View's", after.getString(2));
+            assertEquals(37.386, after.getDouble(3));
+            assertEquals(-122.084, after.getDouble(4));
+        }
+        after.close();
+
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI,
+                LocationEntry.COLUMN_LOCATION_SETTING + " = ?", new String[]{"location_1"});
+        Cursor deleted = mContext.getContentResolver().query(uri, projection, null, null, null);
+        assertEquals(0, deleted.getCount());
+        deleted.close();
+    }
+
+    /*
+        Times reading one location's forecast with thousands of locations stored, through the old
+        join on the setting (with and without the new index) and through the provider, which
+        looks the id up once and skips the join.  The timings are only logged; what's checked is
+        that the join searches the index and that the provider's projection needs no join.
+     */
+    public void testLocationQueryBenchmark() {
+        insertForecasts(NUM_LOCATIONS);
+        String startDate = Long.toString(WeatherContract.normalizeDate(TestUtilities.TEST_DATE));
+
+        mDb.execSQL("DROP INDEX " + WeatherDbHelper.INDEX_WEATHER_LOCATION_DATE);
+        long joinWithoutIndexNanos = timeJoin(startDate);
+        mDb.execSQL("CREATE INDEX " + WeatherDbHelper.INDEX_WEATHER_LOCATION_DATE + " ON "
+                + WeatherEntry.TABLE_NAME + " ("
+                + WeatherEntry.COLUMN_LOC_KEY + ", " + WeatherEntry.COLUMN_DATE + ")");
+        long joinNanos = timeJoin(startDate);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            Cursor cursor = mContext.getContentResolver().query(
+                    WeatherEntry.buildWeatherLocationWithStartDate(
+                            "location_" + (i * 7919 % NUM_LOCATIONS), TestUtilities.TEST_DATE),
+                    WEATHER_COLUMNS, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+            assertEquals(DAYS_PER_LOCATION, cursor.getCount());
+            cursor.close();
+        }
+        long providerNanos = System.nanoTime() - start;
+
+        Log.i(LOG_TAG, String.format(Locale.US,
+                "%d queries over %d locations: join %.1f ms/query without the index, "
+                        + "%.1f ms/query with it, provider by id %.1f ms/query",
+                NUM_QUERIES, NUM_LOCATIONS,
+                joinWithoutIndexNanos / 1e6 / NUM_QUERIES, joinNanos / 1e6 / NUM_QUERIES,
+                providerNanos / 1e6 / NUM_QUERIES));
+
+        String plan = explain(SQL_JOIN_BY_SETTING);
+        assertTrue("The join should search the location/date index: " + plan,
+                plan.contains(WeatherDbHelper.INDEX_WEATHER_LOCATION_DATE));
+        assertTrue("The provider should read these columns without the join",
+                WeatherProvider.canSkipJoin(WEATHER_COLUMNS));
+    }
+
+    private long timeJoin(String startDate) {
+        long start = System.nanoTime();
+        for (int i = 0; i < NUM_QUERIES; i++) {
+            Cursor cursor = mDb.rawQuery(SQL_JOIN_BY_SETTING,
+                    new String[]{"location_" + (i * 7919 % NUM_LOCATIONS), startDate});
+            assertEquals(DAYS_PER_LOCATION, cursor.getCount());
+            cursor.close();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private String explain(String sql) {
+        Cursor cursor = mDb.rawQuery("EXPLAIN QUERY PLAN " + sql, new String[]{"1", "0"});
+        StringBuilder plan = new StringBuilder();
+        int detail = cursor.getColumnIndex("detail");
+        while (cursor.moveToNext()) {
+            plan.append(cursor.getString(detail)).append('\n');
+        }
+        cursor.close();
+        return plan.toString();
+    }
+
+    private void insertForecasts(int numLocations) {
+        WeatherRows rows = new WeatherRows(numLocations * DAYS_PER_LOCATION);
+        mDb.beginTransaction();
+        try {
+            for (int i = 0; i < numLocations; i++) {
+                ContentValues values = new ContentValues();
+                values.put(LocationEntry.COLUMN_LOCATION_SETTING, "location_" + i);
+                values.put(LocationEntry.COLUMN_CITY_NAME, "City " + i);
+                values.put(LocationEntry.COLUMN_COORD_LAT, i % 90);
+                values.put(LocationEntry.COLUMN_COORD_LONG, i % 180);
+                long locationId = mDb.insert(LocationEntry.TABLE_NAME, null, values);
+                for (int day = 0; day < DAYS_PER_LOCATION; day++) {
+                    rows.add(locationId, TestUtilities.TEST_DATE + day * DAY_IN_MILLIS,
+                            800, "Clouds", 10, 20, 60, 1012, 3.5, 270);
+                }
+            }
+            WeatherRowWriter writer = new WeatherRowWriter(mDb);
+            WeatherProvider.UpsertCounts counts = new WeatherProvider.UpsertCounts();
+            for (int i = 0; i < rows.size(); i++) {
+                writer.write(rows, i, counts);
+            }
+            writer.close();
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+}
@@ -16,8 +16,11 @@
 package com.example.android.sunshine.app.data;
 
 import android.content.ComponentName;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.pm.PackageManager;
 import android.content.pm.ProviderInfo;
 import android.database.Cursor;
@@ -30,6 +33,8 @@ import android.util.Log;
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
+import java.util.ArrayList;
+
 /*
     Note: This is not a complete set of tests of the Sunshine ContentProvider, but it does test
     that at least the basic functionality has been implemented correctly.
@@ -512,4 +517,230 @@ public class TestProvider extends AndroidTestCase {
         }
         cursor.close();
     }
+
+    /*
+        Bulk inserting a forecast we already have must not rewrite anything or tell anyone, and
+        a forecast with a few changed days must only touch those days.
+     */
+    public void testBulkInsertWritesOnlyChangedRows() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        ContentValues[] firstSync = createBulkInsertWeatherValues(locationRowId);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT,
+                mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, firstSync));
+        long[] firstIds = queryWeatherIds();
+
+        TestUtilities.TestContentObserver weatherObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(WeatherEntry.CONTENT_URI, true, weatherObserver);
+        int changed = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(locationRowId));
+        assertEquals("An identical forecast should not change any rows", 0, changed);
+
+        ContentValues[] secondSync = createBulkInsertWeatherValues(locationRowId);
+        secondSync[2].put(WeatherEntry.COLUMN_MAX_TEMP, 99);
+        secondSync[7].put(WeatherEntry.COLUMN_SHORT_DESC, "Meteors");
+        changed = mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, secondSync);
+        assertEquals("Only the two edited days should change", 2, changed);
+        weatherObserver.waitForNotificationOrFail();
+        mContext.getContentResolver().unregisterContentObserver(weatherObserver);
+
+        // Updated in place: same rows, same ids, new values.
+        long[] secondIds = queryWeatherIds();
+        assertEquals(firstIds.length, secondIds.length);
+        for (int i = 0; i < firstIds.length; i++) {
+            assertEquals("Row " + i + " was rewritten instead of updated", firstIds[i], secondIds[i]);
+        }
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                null, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        cursor.moveToFirst();
+        for (int i = 0; i < BULK_INSERT_RECORDS_TO_INSERT; i++, cursor.moveToNext()) {
+            TestUtilities.validateCurrentRecord("testBulkInsertWritesOnlyChangedRows.  Error validating WeatherEntry " + i,
+                    cursor, secondSync[i]);
+        }
+        cursor.close();
+    }
+
+    /*
+        Checks the inserted/updated/unchanged split reported by the upsert itself.
+     */
+    public void testUpsertCounts() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        ContentValues[] values = createBulkInsertWeatherValues(locationRowId);
+        ContentValues[] firstHalf = new ContentValues[BULK_INSERT_RECORDS_TO_INSERT / 2];
+        System.arraycopy(values, 0, firstHalf, 0, firstHalf.length);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, firstHalf);
+
+        values = createBulkInsertWeatherValues(locationRowId);
+        values[0].put(WeatherEntry.COLUMN_HUMIDITY, 50.0);
+
+        SQLiteDatabase db = new WeatherDbHelper(mContext).getWritableDatabase();
+        db.beginTransaction();
+        WeatherProvider.UpsertCounts counts;
+        try {
+            counts = WeatherProvider.upsertWeather(db, values);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        db.close();
+
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT / 2, counts.inserted);
+        assertEquals(1, counts.updated);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT / 2 - 1, counts.unchanged);
+    }
+
+    /*
+        A sync writes a new location, its days and the purge of old days as one batch.  The days
+        find the location through a back reference, identical days report no URI, observers hear
+        about each URI once, and a batch that fails leaves nothing behind.
+     */
+    public void testApplyBatch() throws Exception {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newInsert(LocationEntry.CONTENT_URI)
+                .withValues(TestUtilities.createNorthPoleLocationValues())
+                .build());
+        for (ContentValues values : createBulkInsertWeatherValues(0)) {
+            operations.add(ContentProviderOperation.newInsert(WeatherEntry.CONTENT_URI)
+                    .withValues(values)
+                    .withValueBackReference(WeatherEntry.COLUMN_LOC_KEY, 0)
+                    .build());
+        }
+        // Drops the first day again.
+        operations.add(ContentProviderOperation.newDelete(WeatherEntry.CONTENT_URI)
+                .withSelection(WeatherEntry.COLUMN_DATE + " <= ?",
+                        new String[]{Long.toString(WeatherContract.normalizeDate(TestUtilities.TEST_DATE))})
+                .build());
+        int deleteIndex = operations.size() - 1;
+
+        TestUtilities.TestContentObserver weatherObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(WeatherEntry.CONTENT_URI, true, weatherObserver);
+        ContentProviderResult[] results = mContext.getContentResolver().applyBatch(
+                WeatherContract.CONTENT_AUTHORITY, operations);
+        weatherObserver.waitForNotificationOrFail();
+        mContext.getContentResolver().unregisterContentObserver(weatherObserver);
+        assertEquals("Every weather insert and the delete should be notified as one change",
+                1, weatherObserver.mChangeCount);
+
+        long locationRowId = ContentUris.parseId(results[0].uri);
+        for (int i = 1; i < deleteIndex; i++) {
+            assertNotNull("Weather insert " + i + " should have a URI", results[i].uri);
+        }
+        assertEquals(1, results[deleteIndex].count.intValue());
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                null, WeatherEntry.COLUMN_LOC_KEY + " = ?",
+                new String[]{Long.toString(locationRowId)}, null);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT - 1, cursor.getCount());
+        cursor.close();
+
+        // The same batch again finds the location it already has, and only the first day (which
+        // the batch deleted) is new.
+        results = mContext.getContentResolver().applyBatch(
+                WeatherContract.CONTENT_AUTHORITY, operations);
+        assertEquals(locationRowId, ContentUris.parseId(results[0].uri));
+        assertNotNull(results[1].uri);
+        for (int i = 2; i < deleteIndex; i++) {
+            assertNull("Identical day " + i + " should not report a URI", results[i].uri);
+            assertEquals(0, results[i].count.intValue());
+        }
+
+        // A failing operation rolls back the whole batch.
+        ContentValues changed = createBulkInsertWeatherValues(locationRowId)[5];
+        changed.put(WeatherEntry.COLUMN_SHORT_DESC, "Meteors");
+        operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newInsert(WeatherEntry.CONTENT_URI)
+                .withValues(changed)
+                .build());
+        operations.add(ContentProviderOperation.newAssertQuery(LocationEntry.CONTENT_URI)
+                .withExpectedCount(2)
+                .build());
+        try {
+            mContext.getContentResolver().applyBatch(WeatherContract.CONTENT_AUTHORITY, operations);
+            fail("The assertion should have failed the batch");
+        } catch (OperationApplicationException expected) {
+        }
+        cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                null, WeatherEntry.COLUMN_SHORT_DESC + " = ?", new String[]{"Meteors"}, null);
+        assertEquals("The failed batch should have been rolled back", 0, cursor.getCount());
+        cursor.close();
+    }
+
+    /*
+        The sync stages each forecast's buffer and writes it with a single operation.  Its days
+        find a new location through a back reference, the result counts the days that changed,
+        and they land exactly as the ContentValues inserts would have stored them.
+     */
+    public void testApplyBatchWithStagedRows() throws Exception {
+        ContentValues[] days = createBulkInsertWeatherValues(0);
+        WeatherRows rows = new WeatherRows();
+        for (ContentValues day : days) {
+            rows.add(0,
+                    day.getAsLong(WeatherEntry.COLUMN_DATE),
+                    day.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID),
+                    day.getAsString(WeatherEntry.COLUMN_SHORT_DESC),
+                    day.getAsDouble(WeatherEntry.COLUMN_MIN_TEMP),
+                    day.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP),
+                    day.getAsDouble(WeatherEntry.COLUMN_HUMIDITY),
+                    day.getAsDouble(WeatherEntry.COLUMN_PRESSURE),
+                    day.getAsDouble(WeatherEntry.COLUMN_WIND_SPEED),
+                    day.getAsDouble(WeatherEntry.COLUMN_DEGREES));
+        }
+
+        Uri rowsUri = WeatherProvider.stageWeatherRows(rows);
+        try {
+            ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+            operations.add(ContentProviderOperation.newInsert(LocationEntry.CONTENT_URI)
+                    .withValues(TestUtilities.createNorthPoleLocationValues())
+                    .build());
+            operations.add(ContentProviderOperation.newUpdate(rowsUri)
+                    .withValueBackReference(WeatherEntry.COLUMN_LOC_KEY, 0)
+                    .build());
+
+            TestUtilities.TestContentObserver weatherObserver = TestUtilities.getTestContentObserver();
+            mContext.getContentResolver().registerContentObserver(WeatherEntry.CONTENT_URI, true, weatherObserver);
+            ContentProviderResult[] results = mContext.getContentResolver().applyBatch(
+                    WeatherContract.CONTENT_AUTHORITY, operations);
+            weatherObserver.waitForNotificationOrFail();
+            mContext.getContentResolver().unregisterContentObserver(weatherObserver);
+            assertEquals(BULK_INSERT_RECORDS_TO_INSERT, results[1].count.intValue());
+
+            long locationRowId = ContentUris.parseId(results[0].uri);
+            Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                    null, WeatherEntry.COLUMN_LOC_KEY + " = ?",
+                    new String[]{Long.toString(locationRowId)}, WeatherEntry.COLUMN_DATE + " ASC");
+            assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+            cursor.moveToFirst();
+            for (int i = 0; i < days.length; i++, cursor.moveToNext()) {
+                ContentValues expected = new ContentValues(days[i]);
+                expected.put(WeatherEntry.COLUMN_LOC_KEY, locationRowId);
+                expected.put(WeatherEntry.COLUMN_DATE,
+                        WeatherContract.normalizeDate(days[i].getAsLong(WeatherEntry.COLUMN_DATE)));
+                TestUtilities.validateCurrentRecord("Error validating staged day " + i,
+                        cursor, expected);
+            }
+            cursor.close();
+
+            // Nothing changed the second time.
+            results = mContext.getContentResolver().applyBatch(
+                    WeatherContract.CONTENT_AUTHORITY, operations);
+            assertEquals(0, results[1].count.intValue());
+        } finally {
+            WeatherProvider.unstageWeatherRows(rowsUri);
+        }
+    }
+
+    private long[] queryWeatherIds() {
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                new String[]{WeatherEntry._ID}, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        long[] ids = new long[cursor.getCount()];
+        for (int i = 0; cursor.moveToNext(); i++) {
+            ids[i] = cursor.getLong(0);
+        }
+        cursor.close();
+        return ids;
+    }
 }
@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.Locale;
+
+/*
+    Checks that the compiled-statement writer stores exactly what the ContentValues upsert does,
+    and compares the cost of the two (and of the plain insert loop bulkInsert used to run) on
+    large batches spread over many locations.
+ */
+public class TestWeatherRowWriter extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWeatherRowWriter.class.getSimpleName();
+
+    private static final int DAYS_PER_LOCATION = 14;
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    private static final int CONTENT_VALUES_SLICE = 1000;
+
+    private SQLiteDatabase mDb;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        mDb = new WeatherDbHelper(mContext).getWritableDatabase();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDb.close();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        super.tearDown();
+    }
+
+    public void testWriterMatchesContentValuesUpsert() {
+        WeatherRows rows = createRows(insertLocations(3));
+
+        WeatherProvider.UpsertCounts counts = writeRows(rows);
+        assertEquals(rows.size(), counts.inserted);
+
+        Cursor cursor = mDb.query(WeatherContract.WeatherEntry.TABLE_NAME, null, null, null, null,
+                null, WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " ASC, "
+                        + WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        assertEquals(rows.size(), cursor.getCount());
+        cursor.moveToFirst();
+        for (int i = 0; i < rows.size(); i++, cursor.moveToNext()) {
+            ContentValues expected = rows.toContentValues(i);
+            expected.put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                    WeatherContract.normalizeDate(rows.getDate(i)));
+            TestUtilities.validateCurrentRecord("Error validating row " + i, cursor, expected);
+        }
+        cursor.close();
+
+        // The same rows again change nothing.
+        counts = writeRows(rows);
+        assertEquals(0, counts.getChanged());
+        assertEquals(rows.size(), counts.unchanged);
+
+        // One changed day is an update, for both upserts.
+        WeatherRows changed = new WeatherRows();
+        changed.add(rows.getLocationId(0), rows.getDate(0), rows.getWeatherId(0), "Meteors",
+                rows.getMinTemp(0), rows.getMaxTemp(0), rows.getHumidity(0), rows.getPressure(0),
+                rows.getWindSpeed(0), rows.getDegrees(0));
+        counts = writeRows(changed);
+        assertEquals(1, counts.updated);
+
+        mDb.beginTransaction();
+        try {
+            counts = WeatherProvider.upsertWeather(mDb, new ContentValues[]{rows.toContentValues(0)});
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+        assertEquals("The ContentValues upsert should see the change the writer made",
+                1, counts.updated);
+    }
+
+    /*
+        Single inserts still get the row's _id back, whether the day was new or already stored.
+     */
+    public void testContentValuesWriteReturnsRowId() {
+        WeatherRows rows = createRows(insertLocations(1));
+        WeatherRowWriter writer = new WeatherRowWriter(mDb);
+        mDb.beginTransaction();
+        try {
+            WeatherProvider.UpsertCounts counts = new WeatherProvider.UpsertCounts();
+            long insertedId = writer.write(rows.toContentValues(0), counts);
+            long unchangedId = writer.write(rows.toContentValues(0), counts);
+            assertEquals(1, counts.inserted);
+            assertEquals(1, counts.unchanged);
+            assertTrue(insertedId > 0);
+            assertEquals(insertedId, unchangedId);
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+            writer.close();
+        }
+    }
+
+    /*
+        Logs how long each path takes to store 10k and 100k new rows.  The ContentValues paths
+        build a ContentValues per row, while the compiled upsert binds the buffer directly, as a
+        sync's batch does.  A single run says too little to assert on, so only the counts are
+        checked.
+     */
+    public void testIngestionBenchmark() {
+        for (int numRows : new int[]{10000, 100000}) {
+            WeatherRows rows = createRows(insertLocations(numRows / DAYS_PER_LOCATION));
+
+            long start = System.nanoTime();
+            mDb.beginTransaction();
+            try {
+                for (int i = 0; i < rows.size(); i++) {
+                    ContentValues value = rows.toContentValues(i);
+                    value.put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                            WeatherContract.normalizeDate(value.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE)));
+                    mDb.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
+                }
+                mDb.setTransactionSuccessful();
+            } finally {
+                mDb.endTransaction();
+            }
+            long insertNanos = System.nanoTime() - start;
+            mDb.delete(WeatherContract.WeatherEntry.TABLE_NAME, null, null);
+
+            start = System.nanoTime();
+            mDb.beginTransaction();
+            try {
+                // In slices, so we never hold 100k ContentValues at once.
+                for (int first = 0; first < rows.size(); first += CONTENT_VALUES_SLICE) {
+                    int count = Math.min(CONTENT_VALUES_SLICE, rows.size() - first);
+                    ContentValues[] slice = new ContentValues[count];
+                    for (int i = 0; i < count; i++) {
+                        slice[i] = rows.toContentValues(first + i);
+                    }
+                    WeatherProvider.upsertWeather(mDb, slice);
+                }
+                mDb.setTransactionSuccessful();
+            } finally {
+                mDb.endTransaction();
+            }
+            long upsertNanos = System.nanoTime() - start;
+            mDb.delete(WeatherContract.WeatherEntry.TABLE_NAME, null, null);
+
+            start = System.nanoTime();
+            WeatherProvider.UpsertCounts counts = writeRows(rows);
+            long writerNanos = System.nanoTime() - start;
+            assertEquals(rows.size(), counts.inserted);
+
+            // And a re-sync where every row is already stored.
+            start = System.nanoTime();
+            counts = writeRows(rows);
+            long unchangedNanos = System.nanoTime() - start;
+            assertEquals(rows.size(), counts.unchanged);
+
+            Log.i(LOG_TAG, String.format(Locale.US,
+                    "%d rows: ContentValues insert %d ms, ContentValues upsert %d ms, "
+                            + "compiled upsert %d ms (%d ms when unchanged)",
+                    rows.size(), insertNanos / 1000000, upsertNanos / 1000000,
+                    writerNanos / 1000000, unchangedNanos / 1000000));
+
+            mDb.delete(WeatherContract.WeatherEntry.TABLE_NAME, null, null);
+            mDb.delete(WeatherContract.LocationEntry.TABLE_NAME, null, null);
+        }
+    }
+
+    private WeatherProvider.UpsertCounts writeRows(WeatherRows rows) {
+        WeatherRowWriter writer = new WeatherRowWriter(mDb);
+        mDb.beginTransaction();
+        try {
+            WeatherProvider.UpsertCounts counts = new WeatherProvider.UpsertCounts();
+            for (int i = 0; i < rows.size(); i++) {
+                writer.write(rows, i, counts);
+            }
+            mDb.setTransactionSuccessful();
+            return counts;
+        } finally {
+            mDb.endTransaction();
+            writer.close();
+        }
+    }
+
+    private long[] insertLocations(int numLocations) {
+        long[] locationIds = new long[numLocations];
+        mDb.beginTransaction();
+        try {
+            for (int i = 0; i < numLocations; i++) {
+                ContentValues values = new ContentValues();
+                values.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, "location_" + i);
+                values.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, "City " + i);
+                values.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, i % 90);
+                values.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, i % 180);
+                locationIds[i] = mDb.insert(WeatherContract.LocationEntry.TABLE_NAME, null, values);
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+        return locationIds;
+    }
+
+    private static WeatherRows createRows(long[] locationIds) {
+        WeatherRows rows = new WeatherRows(locationIds.length * DAYS_PER_LOCATION);
+        for (long locationId : locationIds) {
+            for (int day = 0; day < DAYS_PER_LOCATION; day++) {
+                rows.add(locationId,
+                        TestUtilities.TEST_DATE + day * DAY_IN_MILLIS,
+                        800 + day % 5,
+                        "Clouds",
+                        10.5 + day,
+                        20.25 + day,
+                        60 + day,
+                        1012.5 - day,
+                        3.5 + 0.25 * day,
+                        270 + day);
+            }
+        }
+        return rows;
+    }
+}
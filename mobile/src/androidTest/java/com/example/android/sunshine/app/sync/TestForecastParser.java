@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import org.json.JSONException;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.Locale;
+
+/*
+    Checks that the streaming forecast parser produces exactly the rows the JSONObject parser
+    does, and compares what the two cost on 14 and 16 day responses.
+ */
+public class TestForecastParser extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestForecastParser.class.getSimpleName();
+
+    private static final int BENCHMARK_WARMUP = 20;
+    private static final int BENCHMARK_ITERATIONS = 200;
+
+    /*
+        Builds a response shaped like the one OpenWeatherMap returns for forecast/daily, including
+        the fields we don't store, so the streaming parser has something to skip.
+     */
+    static String createForecastJson(int numDays) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"city\":{\"id\":5375480,\"name\":\"Mountain View\",")
+                .append("\"coord\":{\"lon\":-122.083847,\"lat\":37.386051},")
+                .append("\"country\":\"US\",\"population\":0},")
+                .append("\"cod\":\"200\",\"message\":0.0123,\"cnt\":").append(numDays)
+                .append(",\"list\":[");
+        for (int i = 0; i < numDays; i++) {
+            if (i > 0) json.append(',');
+            json.append(String.format(Locale.US,
+                    "{\"dt\":%d,\"temp\":{\"day\":%.2f,\"min\":%.2f,\"max\":%.2f,\"night\":%.2f," +
+                            "\"eve\":%.2f,\"morn\":%.2f},\"pressure\":%.2f,\"humidity\":%d," +
+                            "\"weather\":[{\"id\":%d,\"main\":\"Clouds\",\"description\":" +
+                            "\"broken clouds\",\"icon\":\"04d\"}],\"speed\":%.2f,\"deg\":%d," +
+                            "\"clouds\":%d,\"rain\":0.25}",
+                    1450000000 + i * 86400, 18.5 + i, 10.25 + i, 21.75 + i, 12.0, 16.0, 11.0,
+                    1012.5 - i, 60 + i, 800 + (i % 5), 3.5 + 0.1 * i, 270 + i, 20 + i));
+        }
+        json.append("]}");
+        return json.toString();
+    }
+
+    public void testStreamingMatchesJsonObject() throws Exception {
+        for (int numDays : new int[]{14, 16}) {
+            String json = createForecastJson(numDays);
+            ForecastParser.Forecast expected = ForecastParser.parse(json);
+            ForecastParser.Forecast actual = ForecastParser.parse(toStream(json));
+
+            assertEquals(HttpURLConnection.HTTP_OK, actual.messageCode);
+            assertEquals(expected.cityName, actual.cityName);
+            assertEquals(expected.cityLatitude, actual.cityLatitude);
+            assertEquals(expected.cityLongitude, actual.cityLongitude);
+            assertEquals(numDays, actual.days.size());
+            for (int i = 0; i < numDays; i++) {
+                assertEquals("Day " + i + " date", expected.days.getDate(i), actual.days.getDate(i));
+                assertEquals("Day " + i + " weather id",
+                        expected.days.getWeatherId(i), actual.days.getWeatherId(i));
+                assertEquals("Day " + i + " description",
+                        expected.days.getShortDesc(i), actual.days.getShortDesc(i));
+                assertEquals("Day " + i + " min", expected.days.getMinTemp(i), actual.days.getMinTemp(i));
+                assertEquals("Day " + i + " max", expected.days.getMaxTemp(i), actual.days.getMaxTemp(i));
+                assertEquals("Day " + i + " humidity",
+                        expected.days.getHumidity(i), actual.days.getHumidity(i));
+                assertEquals("Day " + i + " pressure",
+                        expected.days.getPressure(i), actual.days.getPressure(i));
+                assertEquals("Day " + i + " wind speed",
+                        expected.days.getWindSpeed(i), actual.days.getWindSpeed(i));
+                assertEquals("Day " + i + " degrees", expected.days.getDegrees(i), actual.days.getDegrees(i));
+            }
+        }
+    }
+
+    /*
+        The JSONObject parser drops the fraction of a decimal humidity or weather id, so the
+        streaming one has to as well rather than fail the sync.
+     */
+    public void testStreamingTruncatesDecimalInts() throws Exception {
+        String json = createForecastJson(2)
+                .replace("\"humidity\":61,", "\"humidity\":87.5,")
+                .replace("\"id\":801,", "\"id\":801.0,");
+        ForecastParser.Forecast expected = ForecastParser.parse(json);
+        ForecastParser.Forecast actual = ForecastParser.parse(toStream(json));
+        assertEquals(87.0, expected.days.getHumidity(1));
+        assertEquals(expected.days.getHumidity(1), actual.days.getHumidity(1));
+        assertEquals(801, actual.days.getWeatherId(1));
+    }
+
+    public void testStreamingReportsErrorCode() throws Exception {
+        ForecastParser.Forecast forecast = ForecastParser.parse(
+                toStream("{\"cod\":\"404\",\"message\":\"Error: Not found city\"}"));
+        assertEquals(HttpURLConnection.HTTP_NOT_FOUND, forecast.messageCode);
+        assertEquals(0, forecast.days.size());
+    }
+
+    public void testStreamingRejectsIncompleteDay() throws Exception {
+        String json = createForecastJson(2).replace("\"humidity\":61,", "");
+        try {
+            ForecastParser.parse(toStream(json));
+            fail("A day without humidity should not parse");
+        } catch (JSONException expected) {
+        }
+    }
+
+    public void testStreamingRejectsMalformedDocument() throws Exception {
+        String json = createForecastJson(2).replace("\"pressure\":", "\"pressure\";");
+        try {
+            ForecastParser.parse(toStream(json));
+            fail("A document with a broken name separator should not parse");
+        } catch (JSONException expected) {
+        }
+    }
+
+    /*
+        Logs the time and the bytes allocated per parse for both paths.  Only the allocations
+        are checked, since a single timed run is too noisy to fail on; the streaming parser has
+        to allocate less.  The JSONObject numbers include building the String the way
+        onPerformSync used to.
+     */
+    public void testParserBenchmark() throws Exception {
+        for (int numDays : new int[]{14, 16}) {
+            final String json = createForecastJson(numDays);
+            final byte[] bytes = json.getBytes("UTF-8");
+
+            for (int i = 0; i < BENCHMARK_WARMUP; i++) {
+                ForecastParser.parse(new String(bytes, "UTF-8"));
+                ForecastParser.parse(new ByteArrayInputStream(bytes));
+            }
+
+            Debug.startAllocCounting();
+            Debug.resetThreadAllocSize();
+            long start = System.nanoTime();
+            for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+                ForecastParser.parse(new String(bytes, "UTF-8"));
+            }
+            long objectNanos = System.nanoTime() - start;
+            long objectBytes = Debug.getThreadAllocSize();
+
+            Debug.resetThreadAllocSize();
+            start = System.nanoTime();
+            for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+                ForecastParser.parse(new ByteArrayInputStream(bytes));
+            }
+            long streamNanos = System.nanoTime() - start;
+            long streamBytes = Debug.getThreadAllocSize();
+            Debug.stopAllocCounting();
+
+            Log.i(LOG_TAG, String.format(Locale.US,
+                    "%d days: JSONObject %.1f us / %d bytes, JsonReader %.1f us / %d bytes per parse",
+                    numDays,
+                    objectNanos / 1000.0 / BENCHMARK_ITERATIONS, objectBytes / BENCHMARK_ITERATIONS,
+                    streamNanos / 1000.0 / BENCHMARK_ITERATIONS, streamBytes / BENCHMARK_ITERATIONS));
+            assertTrue(numDays + " days: JsonReader allocated more than JSONObject",
+                    streamBytes < objectBytes);
+        }
+    }
+
+    private static InputStream toStream(String json) throws Exception {
+        return new ByteArrayInputStream(json.getBytes("UTF-8"));
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.utils.StubHttpServer;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/*
+    Runs the multi-location sync against a local stand-in for OpenWeatherMap that takes a while
+    to answer each request, like a real network would.
+ */
+public class TestMultiLocationSync extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestMultiLocationSync.class.getSimpleName();
+
+    private static final int NUM_LOCATIONS = 20;
+    private static final int NUM_DAYS = 14;
+    private static final long SERVER_LATENCY_MILLIS = 50;
+
+    private StubHttpServer mServer;
+    private List<SavedLocation> mLocations;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAllRecords();
+
+        mServer = new StubHttpServer(SERVER_LATENCY_MILLIS) {
+            @Override
+            protected Response serve(String target) {
+                try {
+                    return new Response(200, "application/json",
+                            TestForecastParser.createForecastJson(NUM_DAYS).getBytes("UTF-8"));
+                } catch (UnsupportedEncodingException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        mServer.start();
+
+        mLocations = new ArrayList<>();
+        for (int i = 0; i < NUM_LOCATIONS; i++) {
+            String setting = "test_location_" + i;
+            ContentValues values = new ContentValues();
+            values.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, setting);
+            values.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, "Test City " + i);
+            values.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, i);
+            values.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, -i);
+            Uri uri = mContext.getContentResolver().insert(
+                    WeatherContract.LocationEntry.CONTENT_URI, values);
+            mLocations.add(new SavedLocation(ContentUris.parseId(uri), setting, i == 0));
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        for (SavedLocation location : mLocations) {
+            ForecastValidators.clear(mContext, location.setting);
+        }
+        deleteAllRecords();
+        super.tearDown();
+    }
+
+    public void testSyncsEveryLocation() {
+        MultiLocationSyncEngine.Report report = createEngine(4).sync(mLocations);
+
+        assertEquals(NUM_LOCATIONS, mServer.getRequestCount());
+        assertEquals(NUM_LOCATIONS, report.results.size());
+        assertEquals(NUM_LOCATIONS * NUM_DAYS, report.rowsWritten);
+        assertNotNull("The preferred location's result should be reported",
+                report.getPreferredResult());
+
+        for (SavedLocation location : mLocations) {
+            Cursor cursor = mContext.getContentResolver().query(
+                    WeatherContract.WeatherEntry.buildWeatherLocation(location.setting),
+                    null, null, null, null);
+            assertEquals("Wrong number of days for " + location.setting,
+                    NUM_DAYS, cursor.getCount());
+            cursor.close();
+        }
+    }
+
+    /*
+        Each location's changed rows are counted on its own result, so a change to another
+        location doesn't look like a new forecast for the preferred one.
+     */
+    public void testRowsWrittenAreCountedPerLocation() {
+        createEngine(4).sync(mLocations);
+
+        // Only one of the other locations will find its forecast changed.
+        ContentValues stale = new ContentValues();
+        stale.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, "Stale");
+        int updated = mContext.getContentResolver().update(
+                WeatherContract.WeatherEntry.CONTENT_URI, stale,
+                WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND "
+                        + WeatherContract.WeatherEntry.COLUMN_DATE + " = (SELECT MIN("
+                        + WeatherContract.WeatherEntry.COLUMN_DATE + ") FROM "
+                        + WeatherContract.WeatherEntry.TABLE_NAME + ")",
+                new String[]{Long.toString(mLocations.get(1).id)});
+        assertEquals(1, updated);
+
+        MultiLocationSyncEngine.Report report = createEngine(4).sync(mLocations);
+        assertEquals(1, report.rowsWritten);
+        assertEquals(0, report.getPreferredResult().rowsWritten);
+    }
+
+    /*
+        Locations other than the preferred one are queried by the coordinates stored for them,
+        not by looking their names up again.
+     */
+    public void testSavedLocationsAreQueriedByCoordinates() {
+        ForecastFetcher fetcher = new ForecastFetcher(mContext, mServer.getBaseUrl() + "/forecast?");
+        for (SavedLocation location : SavedLocation.loadAll(mContext)) {
+            if (location.preferred) {
+                continue;
+            }
+            int i = Integer.parseInt(location.setting.substring("test_location_".length()));
+            assertTrue(location.hasCoordinates);
+            assertEquals((float) i, location.latitude);
+            assertEquals((float) -i, location.longitude);
+            Uri url = Uri.parse(fetcher.buildUrl(location));
+            assertEquals(String.valueOf((float) i), url.getQueryParameter("lat"));
+            assertNull(url.getQueryParameter("q"));
+        }
+    }
+
+    /*
+        The downloads are almost all waiting, so more threads should mean proportionally more
+        locations per second.  We only ask for twice the throughput from eight threads, to leave
+        room for slow emulators.
+     */
+    public void testThroughputScalesWithParallelism() {
+        MultiLocationSyncEngine.Report serial = createEngine(1).sync(mLocations);
+        MultiLocationSyncEngine.Report parallel = createEngine(8).sync(mLocations);
+
+        Log.i(LOG_TAG, String.format(Locale.US,
+                "%d locations: %.1f locations/s with 1 thread, %.1f locations/s with 8",
+                NUM_LOCATIONS, serial.getLocationsPerSecond(), parallel.getLocationsPerSecond()));
+        assertEquals(NUM_LOCATIONS, parallel.results.size());
+        assertTrue("Throughput didn't scale with parallelism",
+                parallel.getLocationsPerSecond() > 2 * serial.getLocationsPerSecond());
+    }
+
+    private MultiLocationSyncEngine createEngine(int parallelism) {
+        ForecastFetcher fetcher = new ForecastFetcher(mContext, mServer.getBaseUrl() + "/forecast?");
+        return new MultiLocationSyncEngine(mContext, fetcher, parallelism);
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+    }
+}
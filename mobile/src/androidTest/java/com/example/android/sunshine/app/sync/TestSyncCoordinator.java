@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.test.AndroidTestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    Drives the coordinator with a fake starter, standing in for the sync manager, to check how
+    many syncs bursts of requests turn into and that every request hears back.
+ */
+public class TestSyncCoordinator extends AndroidTestCase {
+
+    private static final int THREADS = 8;
+    private static final int REQUESTS_PER_THREAD = 50;
+    private static final long LONG_WINDOW_MILLIS = 60 * 1000;
+
+    static class CountingStarter implements SyncCoordinator.Starter {
+        final AtomicInteger started = new AtomicInteger();
+
+        @Override
+        public void requestSync(Context context) {
+            started.incrementAndGet();
+        }
+    }
+
+    static class CountingListener implements SyncCoordinator.Listener {
+        final AtomicInteger finished = new AtomicInteger();
+        final AtomicInteger lost = new AtomicInteger();
+
+        @Override
+        public void onSyncFinished(boolean synced) {
+            (synced ? finished : lost).incrementAndGet();
+        }
+    }
+
+    /*
+        Fires requests from several threads at once and returns when they're all in.
+     */
+    private void requestConcurrently(final SyncCoordinator coordinator,
+                                     final SyncCoordinator.Listener listener) throws Exception {
+        final CountDownLatch go = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(THREADS);
+        for (int t = 0; t < THREADS; t++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        go.await();
+                        for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+                            coordinator.requestSync(mContext, listener);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        go.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+
+    /*
+        A burst of requests before the sync starts asks for exactly one sync, and every request
+        is told when that sync is over.
+     */
+    public void testConcurrentRequestsStartOneSync() throws Exception {
+        CountingStarter starter = new CountingStarter();
+        SyncCoordinator coordinator = new SyncCoordinator(starter);
+        coordinator.setCoalesceWindow(LONG_WINDOW_MILLIS);
+        CountingListener listener = new CountingListener();
+
+        requestConcurrently(coordinator, listener);
+        assertEquals(1, starter.started.get());
+        assertEquals(THREADS * REQUESTS_PER_THREAD, coordinator.getRequestedCount());
+        assertEquals(THREADS * REQUESTS_PER_THREAD - 1, coordinator.getMergedCount());
+
+        coordinator.onSyncStarted();
+        assertEquals(0, listener.finished.get());
+        coordinator.onSyncFinished(mContext);
+        assertEquals(THREADS * REQUESTS_PER_THREAD, listener.finished.get());
+        assertEquals(1, coordinator.getExecutedCount());
+        assertEquals("Nothing should be left to sync", 1, starter.started.get());
+    }
+
+    /*
+        A burst of requests while a sync is running asks for exactly one trailing sync, and the
+        requests hear back when that one is over, not the one they arrived during.
+     */
+    public void testRequestsDuringSyncStartOneTrailingSync() throws Exception {
+        CountingStarter starter = new CountingStarter();
+        SyncCoordinator coordinator = new SyncCoordinator(starter);
+        coordinator.setCoalesceWindow(LONG_WINDOW_MILLIS);
+        CountingListener first = new CountingListener();
+        CountingListener trailing = new CountingListener();
+
+        coordinator.requestSync(mContext, first);
+        coordinator.onSyncStarted();
+        requestConcurrently(coordinator, trailing);
+        assertEquals(1, starter.started.get());
+
+        coordinator.onSyncFinished(mContext);
+        assertEquals(1, first.finished.get());
+        assertEquals(0, trailing.finished.get());
+        assertEquals("One trailing sync should have been asked for", 2, starter.started.get());
+
+        coordinator.onSyncStarted();
+        coordinator.onSyncFinished(mContext);
+        assertEquals(THREADS * REQUESTS_PER_THREAD, trailing.finished.get());
+        assertEquals(2, starter.started.get());
+    }
+
+    /*
+        If the sync manager never runs the sync we asked for, whoever was waiting for it is told
+        so once the window runs out, and the next request asks again.
+     */
+    public void testLostSyncReleasesWaiters() throws Exception {
+        CountingStarter starter = new CountingStarter();
+        SyncCoordinator coordinator = new SyncCoordinator(starter);
+        coordinator.setCoalesceWindow(100);
+        CountingListener stale = new CountingListener();
+        CountingListener fresh = new CountingListener();
+
+        coordinator.requestSync(mContext, stale);
+        coordinator.requestSync(mContext, stale);
+        Thread.sleep(200);
+        coordinator.requestSync(mContext, fresh);
+        assertEquals(2, stale.lost.get());
+        assertEquals(0, fresh.lost.get());
+        assertEquals(2, starter.started.get());
+
+        coordinator.onSyncStarted();
+        coordinator.onSyncFinished(mContext);
+        assertEquals(0, stale.finished.get());
+        assertEquals(1, fresh.finished.get());
+    }
+}
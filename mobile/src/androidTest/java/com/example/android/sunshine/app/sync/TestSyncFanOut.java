@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Checks that the sync's results are handed out without waiting on the consumers, that a slow
+    consumer neither holds up the others nor outlives its timeout, and what gets counted.
+ */
+public class TestSyncFanOut extends AndroidTestCase {
+
+    private static final long LONG_TIMEOUT_MILLIS = 10 * 1000;
+
+    private static Runnable waitFor(final CountDownLatch latch) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+    }
+
+    private SyncFanOut newFanOut() {
+        return new SyncFanOut((PowerManager) mContext.getSystemService(Context.POWER_SERVICE));
+    }
+
+    private static void waitForStats(final SyncFanOut fanOut, final String consumer,
+                                     final int completed, final int timedOut) {
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                SyncFanOut.Stats stats = fanOut.getStats(consumer);
+                return stats.completed == completed && stats.timedOut == timedOut;
+            }
+        }.run();
+    }
+
+    /*
+        Dispatching returns while a consumer is still busy, and the other consumers go ahead
+        without it.
+     */
+    public void testSlowConsumerHoldsUpNoOne() throws Exception {
+        SyncFanOut fanOut = newFanOut();
+        CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch fastDone = new CountDownLatch(1);
+
+        long start = SystemClock.elapsedRealtime();
+        fanOut.dispatch("slow", LONG_TIMEOUT_MILLIS, waitFor(release));
+        fanOut.dispatch("fast", LONG_TIMEOUT_MILLIS, new Runnable() {
+            @Override
+            public void run() {
+                fastDone.countDown();
+            }
+        });
+        assertTrue("Dispatching waited on a consumer",
+                SystemClock.elapsedRealtime() - start < 1000);
+
+        assertTrue(fastDone.await(5, TimeUnit.SECONDS));
+        waitForStats(fanOut, "fast", 1, 0);
+        assertEquals(0, fanOut.getStats("slow").completed);
+
+        release.countDown();
+        waitForStats(fanOut, "slow", 1, 0);
+    }
+
+    /*
+        A consumer that runs past its timeout is interrupted and counted, and the next run
+        gets the worker.
+     */
+    public void testTimedOutRunIsCancelled() {
+        SyncFanOut fanOut = newFanOut();
+        fanOut.dispatch("stuck", 200, waitFor(new CountDownLatch(1)));
+        waitForStats(fanOut, "stuck", 0, 1);
+        assertTrue(fanOut.getStats("stuck").lastLatencyMillis >= 200);
+
+        fanOut.dispatch("stuck", LONG_TIMEOUT_MILLIS, new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+        waitForStats(fanOut, "stuck", 1, 1);
+    }
+
+    /*
+        A run that ignores its interrupt, as a provider query or a blocking connect does, is
+        counted as timed out but keeps the worker until it returns; the next run waits for it.
+     */
+    public void testTimedOutRunIgnoringInterruptKeepsWorker() throws Exception {
+        SyncFanOut fanOut = newFanOut();
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch nextRan = new CountDownLatch(1);
+        fanOut.dispatch("stubborn", 200, new Runnable() {
+            @Override
+            public void run() {
+                boolean interrupted = false;
+                while (true) {
+                    try {
+                        release.await();
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        waitForStats(fanOut, "stubborn", 0, 1);
+
+        fanOut.dispatch("stubborn", LONG_TIMEOUT_MILLIS, new Runnable() {
+            @Override
+            public void run() {
+                nextRan.countDown();
+            }
+        });
+        assertFalse("The next run started while the timed out one was still going",
+                nextRan.await(500, TimeUnit.MILLISECONDS));
+        release.countDown();
+        assertTrue(nextRan.await(5, TimeUnit.SECONDS));
+        waitForStats(fanOut, "stubborn", 1, 1);
+    }
+
+    /*
+        While a consumer is busy only the newest of the runs dispatched to it waits; the ones
+        it replaced are dropped without running.
+     */
+    public void testNewerRunReplacesWaitingOne() {
+        SyncFanOut fanOut = newFanOut();
+        CountDownLatch release = new CountDownLatch(1);
+        final List<Integer> ran = Collections.synchronizedList(new ArrayList<Integer>());
+
+        fanOut.dispatch("widgets", LONG_TIMEOUT_MILLIS, waitFor(release));
+        for (int i = 1; i <= 3; i++) {
+            final int run = i;
+            fanOut.dispatch("widgets", LONG_TIMEOUT_MILLIS, new Runnable() {
+                @Override
+                public void run() {
+                    ran.add(run);
+                }
+            });
+        }
+        release.countDown();
+        waitForStats(fanOut, "widgets", 2, 0);
+
+        assertEquals(Collections.singletonList(3), ran);
+        assertEquals(2, fanOut.getStats("widgets").dropped);
+    }
+
+    /*
+        A consumer that throws is counted as failed and doesn't take its worker down with it.
+     */
+    public void testFailedRunIsCounted() {
+        SyncFanOut fanOut = newFanOut();
+        fanOut.dispatch("muzei", LONG_TIMEOUT_MILLIS, new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("No Muzei");
+            }
+        });
+        fanOut.dispatch("muzei", LONG_TIMEOUT_MILLIS, new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+        waitForStats(fanOut, "muzei", 1, 0);
+        assertEquals(1, fanOut.getStats("muzei").failed);
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.utils.PollingCheck;
+import com.google.android.gms.wearable.PutDataMapRequest;
+import com.google.android.gms.wearable.PutDataRequest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    Drives the wearable connection over a fake link, so it can be checked without a watch: how
+    often it connects, what goes out in each batch, and what it counts.
+ */
+public class TestWearableConnection extends AndroidTestCase {
+
+    private static final long LONG_IDLE_MILLIS = 60 * 1000;
+
+    static class FakeLink implements WearableConnection.Link {
+        volatile boolean connected;
+        int connectResult = CONNECTED;
+        boolean acceptPuts = true;
+        int connectCount;
+        volatile int disconnectCount;
+        final List<List<String>> batches = new ArrayList<>();
+        final List<String> messages = new ArrayList<>();
+
+        @Override
+        public boolean isConnected() {
+            return connected;
+        }
+
+        @Override
+        public int connect(long timeoutMillis) {
+            connectCount++;
+            connected = connectResult == CONNECTED;
+            return connectResult;
+        }
+
+        @Override
+        public void disconnect() {
+            connected = false;
+            disconnectCount++;
+        }
+
+        @Override
+        public boolean[] putAll(List<PutDataRequest> requests, long timeoutMillis) {
+            List<String> batch = new ArrayList<>();
+            for (PutDataRequest request : requests) {
+                batch.add(request.getUri().getPath() + "=" + new String(request.getData()));
+            }
+            batches.add(batch);
+            boolean[] accepted = new boolean[requests.size()];
+            Arrays.fill(accepted, acceptPuts);
+            return accepted;
+        }
+
+        @Override
+        public boolean sendMessage(String nodeId, String path, byte[] data, long timeoutMillis) {
+            messages.add(nodeId + path + "=" + new String(data));
+            return acceptPuts;
+        }
+    }
+
+    private static PutDataRequest request(String path, String value) {
+        return PutDataRequest.create(path).setData(value.getBytes());
+    }
+
+    /*
+        Writes queued between flushes go out in one batch over one connection, and the
+        connection is kept for the next flush.
+     */
+    public void testBatchesWritesOverOneConnection() {
+        FakeLink link = new FakeLink();
+        WearableConnection connection = new WearableConnection(link, LONG_IDLE_MILLIS);
+
+        connection.put(request("/weather", "a"), null);
+        connection.put(request("/other", "b"), null);
+        assertEquals(0, link.connectCount);
+        assertEquals(2, connection.flush());
+        assertEquals(Arrays.asList("/weather=a", "/other=b"), link.batches.get(0));
+
+        connection.put(request("/weather", "c"), null);
+        assertEquals(1, connection.flush());
+        assertEquals("The connection should have been kept warm", 1, link.connectCount);
+        assertEquals(2, link.batches.size());
+        assertEquals(3, connection.getSentCount());
+        assertEquals(0, connection.getPendingCount());
+    }
+
+    /*
+        A newer write to a path replaces the one waiting, and only the newer one's callback runs.
+     */
+    public void testNewerWriteReplacesWaitingOne() {
+        FakeLink link = new FakeLink();
+        WearableConnection connection = new WearableConnection(link, LONG_IDLE_MILLIS);
+        final List<String> sent = new ArrayList<>();
+
+        connection.put(request("/weather", "old"), new Runnable() {
+            @Override
+            public void run() {
+                sent.add("old");
+            }
+        });
+        connection.put(request("/weather", "new"), new Runnable() {
+            @Override
+            public void run() {
+                sent.add("new");
+            }
+        });
+        assertEquals(1, connection.flush());
+        assertEquals(Arrays.asList("/weather=new"), link.batches.get(0));
+        assertEquals(Arrays.asList("new"), sent);
+        assertEquals(1, connection.getReplacedCount());
+    }
+
+    /*
+        Writes wait out a failed connection and go on the next flush; with no Wear API at all
+        they're dropped instead.
+     */
+    public void testFailedConnectionKeepsWrites() {
+        FakeLink link = new FakeLink();
+        link.connectResult = WearableConnection.Link.FAILED;
+        WearableConnection connection = new WearableConnection(link, LONG_IDLE_MILLIS);
+
+        connection.put(request("/weather", "a"), null);
+        assertEquals(0, connection.flush());
+        assertEquals(1, connection.getPendingCount());
+
+        link.connectResult = WearableConnection.Link.CONNECTED;
+        assertEquals(1, connection.flush());
+        assertEquals(0, connection.getPendingCount());
+
+        link.connected = false;
+        link.connectResult = WearableConnection.Link.UNAVAILABLE;
+        connection.put(request("/weather", "b"), null);
+        assertEquals(0, connection.flush());
+        assertEquals(0, connection.getPendingCount());
+        assertEquals(1, connection.getDroppedCount());
+    }
+
+    /*
+        A write the Data Layer turns down is counted as dropped, and its callback doesn't run.
+     */
+    public void testRejectedWriteIsDropped() {
+        FakeLink link = new FakeLink();
+        link.acceptPuts = false;
+        WearableConnection connection = new WearableConnection(link, LONG_IDLE_MILLIS);
+        final boolean[] ran = new boolean[1];
+
+        connection.put(request("/weather", "a"), new Runnable() {
+            @Override
+            public void run() {
+                ran[0] = true;
+            }
+        });
+        assertEquals(0, connection.flush());
+        assertFalse(ran[0]);
+        assertEquals(1, connection.getDroppedCount());
+        assertEquals(0, connection.getSentCount());
+    }
+
+    /*
+        Messages go out at once over the same warm connection, and leave queued writes alone.
+     */
+    public void testMessagesShareTheConnection() {
+        FakeLink link = new FakeLink();
+        WearableConnection connection = new WearableConnection(link, LONG_IDLE_MILLIS);
+
+        connection.put(request("/weather", "a"), null);
+        assertTrue(connection.sendMessage("watch", "/reply", "b".getBytes()));
+        assertEquals(Arrays.asList("watch/reply=b"), link.messages);
+        assertEquals(1, connection.getPendingCount());
+
+        connection.flush();
+        assertEquals(1, link.connectCount);
+        assertEquals(2, connection.getSentCount());
+    }
+
+    /*
+        Once idle for long enough, the connection lets go.
+     */
+    public void testDisconnectsWhenIdle() {
+        final FakeLink link = new FakeLink();
+        WearableConnection connection = new WearableConnection(link, 50);
+
+        connection.put(request("/weather", "a"), null);
+        connection.flush();
+        new PollingCheck(5000) {
+            @Override
+            protected boolean check() {
+                return link.disconnectCount == 1;
+            }
+        }.run();
+        assertFalse(link.isConnected());
+    }
+}
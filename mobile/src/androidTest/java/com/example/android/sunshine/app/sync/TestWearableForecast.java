@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+import android.text.format.DateUtils;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.shared.ForecastPayload;
+
+/*
+    Checks the forecast the phone answers the watch with when it asks, read straight out of the
+    provider rather than downloaded.
+ */
+public class TestWearableForecast extends AndroidTestCase {
+
+    private static final String LOCATION_SETTING = "wearable_test";
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAllRecords();
+        ForecastValidators.clear(mContext, LOCATION_SETTING);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAllRecords();
+        super.tearDown();
+    }
+
+    /*
+        Only today and the days after it are sent, in order.
+     */
+    public void testReadsForecastFromToday() {
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        long locationId = insertLocation();
+        // Yesterday's row should be left out.
+        for (int day = -1; day < 3; day++) {
+            insertDay(locationId, today + day * DateUtils.DAY_IN_MILLIS, 20 + day, 10 + day,
+                    800 + day);
+        }
+
+        ForecastPayload payload = WearableForecast.fromProvider(mContext, LOCATION_SETTING,
+                System.currentTimeMillis());
+        assertNotNull(payload);
+        assertEquals(3, payload.getDayCount());
+        assertEquals(today, payload.getFirstDate());
+        for (int day = 0; day < 3; day++) {
+            assertEquals(20.0 + day, payload.getHigh(day));
+            assertEquals(10.0 + day, payload.getLow(day));
+            assertEquals(800 + day, payload.getConditionId(day));
+        }
+    }
+
+    /*
+        With nothing stored there's nothing to answer with, and nothing counts as fresh.
+     */
+    public void testNothingStored() {
+        long now = System.currentTimeMillis();
+        assertNull(WearableForecast.fromProvider(mContext, LOCATION_SETTING, now));
+        assertFalse(WearableForecast.isFresh(mContext, LOCATION_SETTING, now));
+    }
+
+    private long insertLocation() {
+        ContentValues values = new ContentValues();
+        values.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, LOCATION_SETTING);
+        values.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, "Wearable Test");
+        values.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, 64.7488);
+        values.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, -147.353);
+        Uri uri = mContext.getContentResolver().insert(
+                WeatherContract.LocationEntry.CONTENT_URI, values);
+        return ContentUris.parseId(uri);
+    }
+
+    private void insertDay(long locationId, long date, double high, double low, int weatherId) {
+        ContentValues values = new ContentValues();
+        values.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
+        values.put(WeatherContract.WeatherEntry.COLUMN_DATE, date);
+        values.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, 1.1);
+        values.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, 1.2);
+        values.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, 1.3);
+        values.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
+        values.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
+        values.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, "Clear");
+        values.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, 5.5);
+        values.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
+        mContext.getContentResolver().insert(WeatherContract.WeatherEntry.CONTENT_URI, values);
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.graphics.Bitmap;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.R;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/*
+    Renders large icons over a fake loader, so the deadline and the icon cache can be checked
+    without a network.
+ */
+public class TestWeatherNotifier extends AndroidTestCase {
+
+    private static final long DEADLINE_MILLIS = 200;
+    private static final int SIZE = 64;
+    private static final String CLEAR_ART = "http://pack.example.com/clear.png";
+
+    static class FakeIconLoader implements WeatherNotifier.IconLoader {
+        // Loads that never finish, like a download on a network that's gone quiet.
+        boolean hang;
+        final List<String> loaded = new ArrayList<>();
+        final List<FutureTask<Bitmap>> loads = new ArrayList<>();
+
+        @Override
+        public Future<Bitmap> load(String artUrl, final int width, final int height) {
+            loaded.add(artUrl);
+            FutureTask<Bitmap> load = new FutureTask<>(new Callable<Bitmap>() {
+                @Override
+                public Bitmap call() {
+                    return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                }
+            });
+            if (!hang) {
+                load.run();
+            }
+            loads.add(load);
+            return load;
+        }
+    }
+
+    /*
+        An art pack icon that doesn't arrive by the deadline is given up on and our own art,
+        scaled to the icon's size, goes out instead.
+     */
+    public void testSlowIconFallsBackAtDeadline() {
+        FakeIconLoader loader = new FakeIconLoader();
+        loader.hang = true;
+        WeatherNotifier notifier = new WeatherNotifier(mContext, loader, DEADLINE_MILLIS);
+
+        long start = System.currentTimeMillis();
+        Bitmap icon = notifier.getLargeIcon(CLEAR_ART, R.drawable.art_clear, SIZE, SIZE);
+        long took = System.currentTimeMillis() - start;
+
+        assertNotNull(icon);
+        assertTrue("Waited " + took + "ms for the icon", took < DEADLINE_MILLIS + 1000);
+        assertTrue(icon.getWidth() <= SIZE && icon.getHeight() <= SIZE);
+        assertTrue("The late load should have been cancelled", loader.loads.get(0).isCancelled());
+        assertEquals(1, notifier.getFallbackCount());
+
+        // It's tried again next time, rather than the fallback being kept in its place.
+        loader.hang = false;
+        Bitmap remote = notifier.getLargeIcon(CLEAR_ART, R.drawable.art_clear, SIZE, SIZE);
+        assertEquals(2, loader.loaded.size());
+        assertNotSame(icon, remote);
+    }
+
+    /*
+        Icons are kept by art pack, art and size, so conditions sharing art share an icon, and
+        another art pack or size gets its own.
+     */
+    public void testIconsAreCachedByArtPackAndSize() {
+        FakeIconLoader loader = new FakeIconLoader();
+        WeatherNotifier notifier = new WeatherNotifier(mContext, loader, DEADLINE_MILLIS);
+
+        Bitmap icon = notifier.getLargeIcon(CLEAR_ART, R.drawable.art_clear, SIZE, SIZE);
+        assertSame(icon, notifier.getLargeIcon(CLEAR_ART, R.drawable.art_clear, SIZE, SIZE));
+        assertEquals(1, loader.loaded.size());
+
+        notifier.getLargeIcon("http://other.example.com/clear.png", R.drawable.art_clear,
+                SIZE, SIZE);
+        notifier.getLargeIcon(CLEAR_ART, R.drawable.art_clear, SIZE * 2, SIZE * 2);
+        assertEquals(3, loader.loaded.size());
+        assertEquals(0, notifier.getFallbackCount());
+    }
+
+    /*
+        With our own art in use nothing is loaded, and the scaled art is only made once.
+     */
+    public void testLocalArtIsScaledOnce() {
+        FakeIconLoader loader = new FakeIconLoader();
+        WeatherNotifier notifier = new WeatherNotifier(mContext, loader, DEADLINE_MILLIS);
+
+        Bitmap icon = notifier.getLargeIcon(null, R.drawable.art_clear, SIZE, SIZE);
+        assertNotNull(icon);
+        assertTrue(icon.getWidth() <= SIZE && icon.getHeight() <= SIZE);
+        assertSame(icon, notifier.getLargeIcon(null, R.drawable.art_clear, SIZE, SIZE));
+        assertEquals(0, loader.loaded.size());
+    }
+}
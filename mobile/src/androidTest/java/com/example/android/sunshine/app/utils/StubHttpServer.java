@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.utils;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    A minimal HTTP/1.0 server on the loopback interface, standing in for the services the app
+    talks to.  Every request is answered after a fixed delay, to give the tests something that
+    behaves like a slow network, and with whatever serve() returns for its path and query.
+ */
+public abstract class StubHttpServer {
+    public static final String LOG_TAG = StubHttpServer.class.getSimpleName();
+
+    public static class Response {
+        final int code;
+        final String contentType;
+        final byte[] body;
+
+        public Response(int code, String contentType, byte[] body) {
+            this.code = code;
+            this.contentType = contentType;
+            this.body = body;
+        }
+    }
+
+    private final long mLatencyMillis;
+    private final AtomicInteger mRequestCount = new AtomicInteger();
+    private final ExecutorService mExecutor = Executors.newCachedThreadPool();
+    private ServerSocket mServerSocket;
+
+    public StubHttpServer(long latencyMillis) {
+        mLatencyMillis = latencyMillis;
+    }
+
+    /*
+        Called on a server thread for every request; target is the path and query of the request
+        line, e.g. "/forecast?q=94043".
+     */
+    protected abstract Response serve(String target);
+
+    public void start() throws IOException {
+        mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                while (!mServerSocket.isClosed()) {
+                    try {
+                        final Socket socket = mServerSocket.accept();
+                        mExecutor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                handle(socket);
+                            }
+                        });
+                    } catch (IOException e) {
+                        // Closed by shutdown().
+                    }
+                }
+            }
+        });
+    }
+
+    public void shutdown() {
+        try {
+            mServerSocket.close();
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error closing server socket", e);
+        }
+        mExecutor.shutdownNow();
+    }
+
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + mServerSocket.getLocalPort();
+    }
+
+    public int getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    private void handle(Socket socket) {
+        try {
+            BufferedReader in = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+            String requestLine = in.readLine();
+            // Skip the headers; none of the stand-ins look at them.
+            String header;
+            while ((header = in.readLine()) != null && header.length() > 0) {
+            }
+            if (requestLine == null) {
+                return;
+            }
+            mRequestCount.incrementAndGet();
+            Thread.sleep(mLatencyMillis);
+
+            Response response = serve(requestLine.split(" ")[1]);
+            OutputStream out = socket.getOutputStream();
+            out.write(("HTTP/1.0 " + response.code + " Stub\r\n"
+                    + "Content-Type: " + response.contentType + "\r\n"
+                    + "Content-Length: " + response.body.length + "\r\n"
+                    + "Connection: close\r\n\r\n").getBytes("US-ASCII"));
+            out.write(response.body);
+            out.flush();
+        } catch (IOException | InterruptedException e) {
+            Log.e(LOG_TAG, "Error serving request", e);
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Error closing socket", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.load.resource.drawable.GlideDrawable;
+import com.bumptech.glide.request.FutureTarget;
+import com.bumptech.glide.request.animation.GlideAnimation;
+import com.bumptech.glide.request.target.SimpleTarget;
+import com.bumptech.glide.request.target.Target;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Fetches remote weather art before it's shown, so that with an art pack other than our own
+ * the list, the detail view, the widgets and the notification don't each wait on the network.
+ *
+ * After a sync, {@link #warmDiskCache(Context)} downloads the art for every condition in the
+ * stored forecast, which with an art pack is only a handful of images.  While the list
+ * scrolls, a {@link ScrollPreloader} loads the art of the next few rows into memory at the
+ * size their icons show it, so they're ready by the time they scroll into view.
+ *
+ * Every load of remote art uses {@link #ART_CACHE_STRATEGY}, which keeps the downloaded image
+ * as well as each resized one; that's what lets one download serve every size it's shown at.
+ */
+public class ArtPreloader {
+    private static final String LOG_TAG = ArtPreloader.class.getSimpleName();
+
+    public static final DiskCacheStrategy ART_CACHE_STRATEGY = DiskCacheStrategy.ALL;
+
+    // How long to wait for each image when warming the cache.
+    static final long WARM_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(15);
+
+    // How many rows past the edge of the screen to load, in the direction of the scroll.
+    static final int ROWS_AHEAD = 5;
+
+    private static final String[] WARM_PROJECTION = {
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID
+    };
+    private static final int INDEX_WEATHER_ID = 0;
+
+    /**
+     * Downloads the art for every condition in the preferred location's stored forecast into
+     * the disk cache, unless our own art is in use.  Blocks until it's done, so it's only called
+     * from background threads such as the sync's workers.
+     *
+     * @return how many images were downloaded or found already cached.
+     */
+    public static int warmDiskCache(Context context) {
+        if (Utility.usingLocalGraphics(context)) {
+            return 0;
+        }
+        Uri uri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                Utility.getPreferredLocation(context), System.currentTimeMillis());
+        Cursor cursor = context.getContentResolver().query(uri, WARM_PROJECTION, null, null,
+                null);
+        if (cursor == null) {
+            return 0;
+        }
+        // Conditions share art, so there are far fewer images than days.
+        Set<String> artUrls = new LinkedHashSet<>();
+        try {
+            while (cursor.moveToNext()) {
+                String artUrl = Utility.getArtUrlForWeatherCondition(context,
+                        cursor.getInt(INDEX_WEATHER_ID));
+                if (artUrl != null) {
+                    artUrls.add(artUrl);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return warmDiskCache(context, artUrls);
+    }
+
+    static int warmDiskCache(Context context, Collection<String> artUrls) {
+        int warmed = 0;
+        for (String artUrl : artUrls) {
+            FutureTarget<File> download = Glide.with(context.getApplicationContext())
+                    .load(artUrl)
+                    .downloadOnly(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL);
+            try {
+                download.get(WARM_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                warmed++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException | TimeoutException e) {
+                // The views will try again when they need it.
+                Log.w(LOG_TAG, "Couldn't fetch art from " + artUrl, e);
+            } finally {
+                download.clear();
+            }
+        }
+        return warmed;
+    }
+
+    /**
+     * Loads the art of the rows just past the edge of the forecast list, in whichever direction
+     * it's scrolling, at the list icons' size.  The today row's larger art is left to load as
+     * it's shown, since it's at the top and so on screen first anyway.
+     */
+    public static class ScrollPreloader extends RecyclerView.OnScrollListener {
+        private final RequestManager mRequests;
+        private final ForecastAdapter mAdapter;
+
+        // A new load into a target cancels the one before, so there are only ever as many
+        // preloads going as there are targets.
+        private final PreloadTarget[] mTargets = new PreloadTarget[ROWS_AHEAD];
+        private int mNextTarget;
+
+        // How far the preloading has got in the direction the list is scrolling.
+        private boolean mScrollingDown = true;
+        private int mPreloadedUpTo = -1;
+
+        private volatile int mReadyCount;
+
+        /**
+         * @param requests ties the preloads to the list's lifecycle.
+         * @param iconSize the size, in pixels, of the list's icons.
+         */
+        public ScrollPreloader(RequestManager requests, ForecastAdapter adapter, int iconSize) {
+            mRequests = requests;
+            mAdapter = adapter;
+            for (int i = 0; i < mTargets.length; i++) {
+                mTargets[i] = new PreloadTarget(this, iconSize);
+            }
+        }
+
+        /**
+         * Starts over, for when the list has new rows.
+         */
+        public void reset() {
+            mScrollingDown = true;
+            mPreloadedUpTo = -1;
+        }
+
+        @Override
+        public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+            // RecyclerView also calls this with no movement after a layout, which is a good time
+            // to get the rows below the first screen ready.
+            if (!(recyclerView.getLayoutManager() instanceof LinearLayoutManager)) {
+                return;
+            }
+            LinearLayoutManager layoutManager =
+                    (LinearLayoutManager) recyclerView.getLayoutManager();
+            boolean scrollingDown = dy >= 0;
+            if (scrollingDown != mScrollingDown) {
+                mScrollingDown = scrollingDown;
+                mPreloadedUpTo = scrollingDown ? -1 : Integer.MAX_VALUE;
+            }
+
+            if (scrollingDown) {
+                int last = layoutManager.findLastVisibleItemPosition();
+                if (last == RecyclerView.NO_POSITION) {
+                    return;
+                }
+                int to = Math.min(last + ROWS_AHEAD, mAdapter.getItemCount() - 1);
+                for (int position = Math.max(last + 1, mPreloadedUpTo + 1); position <= to;
+                     position++) {
+                    preloadRow(position);
+                }
+                mPreloadedUpTo = Math.max(mPreloadedUpTo, to);
+            } else {
+                int first = layoutManager.findFirstVisibleItemPosition();
+                if (first == RecyclerView.NO_POSITION) {
+                    return;
+                }
+                int to = Math.max(first - ROWS_AHEAD, 0);
+                for (int position = Math.min(first - 1, mPreloadedUpTo - 1); position >= to;
+                     position--) {
+                    preloadRow(position);
+                }
+                mPreloadedUpTo = Math.min(mPreloadedUpTo, to);
+            }
+        }
+
+        /**
+         * Preloads the art of the row at this position, if it shows remote art.
+         */
+        void preloadRow(int position) {
+            preload(mAdapter.getListArtUrl(position));
+        }
+
+        /**
+         * Loads art into memory the way {@link ForecastAdapter} will ask for it, so that the
+         * request it makes later finds it there.
+         */
+        void preload(String artUrl) {
+            if (artUrl == null) {
+                return;
+            }
+            PreloadTarget target = mTargets[mNextTarget];
+            mNextTarget = (mNextTarget + 1) % mTargets.length;
+            mRequests.load(artUrl)
+                    .diskCacheStrategy(ART_CACHE_STRATEGY)
+                    // What Glide applies for an ImageView's default scale type.
+                    .fitCenter()
+                    .priority(Priority.LOW)
+                    .into(target);
+        }
+
+        /**
+         * @return how many preloads have finished loading.
+         */
+        int getReadyCount() {
+            return mReadyCount;
+        }
+    }
+
+    /**
+     * Holds on to preloaded art until the target's next load, which keeps it in Glide's
+     * memory cache for the row that's about to need it.
+     */
+    private static class PreloadTarget extends SimpleTarget<GlideDrawable> {
+        private final ScrollPreloader mPreloader;
+
+        PreloadTarget(ScrollPreloader preloader, int size) {
+            super(size, size);
+            mPreloader = preloader;
+        }
+
+        @Override
+        public void onResourceReady(GlideDrawable resource,
+                                    GlideAnimation<? super GlideDrawable> glideAnimation) {
+            // Nothing to show; having it loaded is the point.
+            mPreloader.mReadyCount++;
+        }
+    }
+}
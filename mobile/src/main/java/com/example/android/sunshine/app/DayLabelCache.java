@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.support.v4.util.LruCache;
+import android.text.format.DateUtils;
+import android.text.format.Time;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * The day labels the forecast list, the detail view and the widgets show, such as "Today, June
+ * 8", "Tomorrow", "Wednesday" or "Mon Jun 13".
+ *
+ * Only the couple of weeks of the forecast are ever on screen, so each label is worked out once
+ * and then read back from here.  A label only depends on the day it's for, on what day it is
+ * today, on its kind and on the locale, so the cache holds the labels of one today and one
+ * locale, keyed by day and kind.  It's emptied when the day rolls over at midnight, and when
+ * the locale, the time zone or the clock changes.
+ *
+ * Working out what day it is means knowing the time zone's offset, which is read again at
+ * midnight and at least once an hour so a daylight saving change is noticed.
+ */
+public class DayLabelCache {
+
+    // Room for every kind of label for each day of a forecast, with some to spare.
+    private static final int MAX_LABELS = 64;
+    private static final long MAX_OFFSET_AGE_MILLIS = DateUtils.HOUR_IN_MILLIS;
+
+    private static final int KIND_FRIENDLY = 0;
+    private static final int KIND_FRIENDLY_LONG_TODAY = 1;
+    private static final int KIND_FULL_FRIENDLY = 2;
+    private static final int KIND_DAY_NAME = 3;
+    private static final int KIND_MONTH_DAY = 4;
+    private static final int KIND_COUNT = 5;
+
+    private static DayLabelCache sInstance;
+
+    private final Context mContext;
+    private final LruCache<Long, String> mLabels = new LruCache<>(MAX_LABELS);
+
+    // What the labels in the cache were worked out for.
+    private Locale mLocale;
+    private int mGmtOffsetSeconds;
+    private int mCurrentJulianDay;
+    private long mCheckAgainAt;
+
+    private int mMissCount;
+
+    public static synchronized DayLabelCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new DayLabelCache(context.getApplicationContext());
+            IntentFilter filter = new IntentFilter();
+            filter.addAction(Intent.ACTION_DATE_CHANGED);
+            filter.addAction(Intent.ACTION_TIME_CHANGED);
+            filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+            filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+            final DayLabelCache cache = sInstance;
+            sInstance.mContext.registerReceiver(new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    cache.invalidate();
+                }
+            }, filter);
+        }
+        return sInstance;
+    }
+
+    DayLabelCache(Context context) {
+        mContext = context;
+    }
+
+    /**
+     * See {@link Utility#getFriendlyDayString}.
+     */
+    public String getFriendlyDayString(long dateInMillis, boolean displayLongToday) {
+        return getLabel(dateInMillis,
+                displayLongToday ? KIND_FRIENDLY_LONG_TODAY : KIND_FRIENDLY);
+    }
+
+    /**
+     * See {@link Utility#getFullFriendlyDayString}.
+     */
+    public String getFullFriendlyDayString(long dateInMillis) {
+        return getLabel(dateInMillis, KIND_FULL_FRIENDLY);
+    }
+
+    /**
+     * See {@link Utility#getDayName}.
+     */
+    public String getDayName(long dateInMillis) {
+        return getLabel(dateInMillis, KIND_DAY_NAME);
+    }
+
+    /**
+     * See {@link Utility#getFormattedMonthDay}.
+     */
+    public String getFormattedMonthDay(long dateInMillis) {
+        return getLabel(dateInMillis, KIND_MONTH_DAY);
+    }
+
+    /**
+     * Forgets every label, and what day it is.
+     */
+    public synchronized void invalidate() {
+        mLocale = null;
+        mCheckAgainAt = 0;
+        mLabels.evictAll();
+    }
+
+    /**
+     * @return how many labels have been worked out rather than read from the cache.
+     */
+    synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    private synchronized String getLabel(long dateInMillis, int kind) {
+        checkToday();
+        return lookUp(dateInMillis, kind);
+    }
+
+    // Labels made of other labels look those up through here, so they're all for the same day.
+    private String lookUp(long dateInMillis, int kind) {
+        int julianDay = Time.getJulianDay(dateInMillis, mGmtOffsetSeconds);
+        Long key = (long) julianDay * KIND_COUNT + kind;
+        String label = mLabels.get(key);
+        if (label == null) {
+            label = buildLabel(dateInMillis, julianDay, kind);
+            mLabels.put(key, label);
+            mMissCount++;
+        }
+        return label;
+    }
+
+    /**
+     * Makes sure the cache is for today, in this locale and time zone, and empties it if not.
+     */
+    private void checkToday() {
+        Locale locale = Locale.getDefault();
+        long now = System.currentTimeMillis();
+        if (locale.equals(mLocale) && now < mCheckAgainAt) {
+            return;
+        }
+        int gmtOffsetSeconds = TimeZone.getDefault().getOffset(now) / 1000;
+        int currentJulianDay = Time.getJulianDay(now, gmtOffsetSeconds);
+        if (!locale.equals(mLocale) || gmtOffsetSeconds != mGmtOffsetSeconds
+                || currentJulianDay != mCurrentJulianDay) {
+            mLabels.evictAll();
+            mLocale = locale;
+            mGmtOffsetSeconds = gmtOffsetSeconds;
+            mCurrentJulianDay = currentJulianDay;
+        }
+        long midnight = (currentJulianDay + 1 - Time.EPOCH_JULIAN_DAY) * DateUtils.DAY_IN_MILLIS
+                - gmtOffsetSeconds * 1000L;
+        mCheckAgainAt = Math.min(midnight, now + MAX_OFFSET_AGE_MILLIS);
+    }
+
+    private String buildLabel(long dateInMillis, int julianDay, int kind) {
+        switch (kind) {
+            case KIND_FRIENDLY:
+            case KIND_FRIENDLY_LONG_TODAY:
+                // The day string for forecast uses the following logic:
+                // For today: "Today, June 8"
+                // For tomorrow:  "Tomorrow"
+                // For the next 5 days: "Wednesday" (just the day name)
+                // For all days after that: "Mon Jun 8"
+                if (kind == KIND_FRIENDLY_LONG_TODAY && julianDay == mCurrentJulianDay) {
+                    return mContext.getString(R.string.format_full_friendly_date,
+                            mContext.getString(R.string.today),
+                            lookUp(dateInMillis, KIND_MONTH_DAY));
+                } else if (julianDay < mCurrentJulianDay + 7) {
+                    // If the input date is less than a week in the future, just return the day
+                    // name.
+                    return lookUp(dateInMillis, KIND_DAY_NAME);
+                } else {
+                    // Otherwise, use the form "Mon Jun 3"
+                    return new SimpleDateFormat("EEE MMM dd").format(dateInMillis);
+                }
+            case KIND_FULL_FRIENDLY:
+                return mContext.getString(R.string.format_full_friendly_date,
+                        lookUp(dateInMillis, KIND_DAY_NAME), lookUp(dateInMillis, KIND_MONTH_DAY));
+            case KIND_DAY_NAME:
+                // If the date is today, return the localized version of "Today" instead of the
+                // actual day name.
+                if (julianDay == mCurrentJulianDay) {
+                    return mContext.getString(R.string.today);
+                } else if (julianDay == mCurrentJulianDay + 1) {
+                    return mContext.getString(R.string.tomorrow);
+                } else {
+                    // Otherwise, the format is just the day of the week (e.g "Wednesday").
+                    return new SimpleDateFormat("EEEE").format(dateInMillis);
+                }
+            case KIND_MONTH_DAY:
+                return new SimpleDateFormat("MMMM dd").format(dateInMillis);
+            default:
+                throw new IllegalArgumentException("Unknown label kind: " + kind);
+        }
+    }
+}
@@ -30,13 +30,17 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
-import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.shared.LongIntMap;
+
+import java.util.Collections;
+import java.util.List;
 
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
  * from a {@link android.database.Cursor} to a {@link android.support.v7.widget.RecyclerView}.
  */
-public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder> {
+public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder>
+        implements ItemChoiceManager.PositionIndex {
 
     private static final int VIEW_TYPE_TODAY = 0;
     private static final int VIEW_TYPE_FUTURE_DAY = 1;
@@ -45,6 +49,10 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     private boolean mUseTodayLayout = true;
 
     private Cursor mCursor;
+    // Formatted in the background by ForecastCursorLoader, one for each row of mCursor.
+    private ForecastCursorLoader.ForecastCursor mRows;
+    // Where each row's id is, rebuilt once per cursor.
+    private final LongIntMap mPositions = new LongIntMap();
     final private Context mContext;
     final private ForecastAdapterOnClickHandler mClickHandler;
     final private View mEmptyView;
@@ -73,9 +81,7 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            int dateColumnIndex = mCursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-            mClickHandler.onClick(mCursor.getLong(dateColumnIndex), this);
+            mClickHandler.onClick(mRows.getRowModel(adapterPosition).date, this);
             mICM.onClick(this);
         }
     }
@@ -88,6 +94,8 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         mContext = context;
         mClickHandler = dh;
         mEmptyView = emptyView;
+        // Rows keep their ids across loads, so the selection can follow them.
+        setHasStableIds(true);
         mICM = new ItemChoiceManager(this);
         mICM.setChoiceMode(choiceMode);
     }
@@ -124,26 +132,29 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
-        int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+        // Everything shown but the day label was formatted when the cursor was loaded, and the
+        // label comes from the day label cache, so binding a row during a scroll only hands the
+        // views what they show.
+        ForecastRowModel row = mRows.getRowModel(position);
         int defaultImage;
-        boolean useLongToday;
+        String dateText;
 
         switch (getItemViewType(position)) {
             case VIEW_TYPE_TODAY:
-                defaultImage = Utility.getArtResourceForWeatherCondition(weatherId);
-                useLongToday = true;
+                defaultImage = row.artResId;
+                dateText = Utility.getFriendlyDayString(mContext, row.date, true);
                 break;
             default:
-                defaultImage = Utility.getIconResourceForWeatherCondition(weatherId);
-                useLongToday = false;
+                defaultImage = row.iconResId;
+                dateText = Utility.getFriendlyDayString(mContext, row.date, false);
         }
 
-        if ( Utility.usingLocalGraphics(mContext) ) {
+        if ( row.artUrl == null ) {
             forecastAdapterViewHolder.mIconView.setImageResource(defaultImage);
         } else {
             Glide.with(mContext)
-                    .load(Utility.getArtUrlForWeatherCondition(mContext, weatherId))
+                    .load(row.artUrl)
+                    .diskCacheStrategy(ArtPreloader.ART_CACHE_STRATEGY)
                     .error(defaultImage)
                     .crossFade()
                     .into(forecastAdapterViewHolder.mIconView);
@@ -151,36 +162,22 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
         // this enables better animations. even if we lose state due to a device rotation,
         // the animator can use this to re-find the original view
-        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, "iconView" + position);
-
-        // Read date from cursor
-        long dateInMillis = mCursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+        ViewCompat.setTransitionName(forecastAdapterViewHolder.mIconView, row.transitionName);
 
-        // Find TextView and set formatted date on it
-        forecastAdapterViewHolder.mDateView.setText(Utility.getFriendlyDayString(mContext, dateInMillis, useLongToday));
+        forecastAdapterViewHolder.mDateView.setText(dateText);
 
-        // Read weather forecast from cursor
-        String description = Utility.getStringForWeatherCondition(mContext, weatherId);
-
-        // Find TextView and set weather forecast on it
-        forecastAdapterViewHolder.mDescriptionView.setText(description);
-        forecastAdapterViewHolder.mDescriptionView.setContentDescription(mContext.getString(R.string.a11y_forecast, description));
+        forecastAdapterViewHolder.mDescriptionView.setText(row.description);
+        forecastAdapterViewHolder.mDescriptionView.setContentDescription(row.descriptionA11y);
 
         // For accessibility, we don't want a content description for the icon field
         // because the information is repeated in the description view and the icon
         // is not individually selectable
 
-        // Read high temperature from cursor
-        double high = mCursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
-        String highString = Utility.formatTemperature(mContext, high);
-        forecastAdapterViewHolder.mHighTempView.setText(highString);
-        forecastAdapterViewHolder.mHighTempView.setContentDescription(mContext.getString(R.string.a11y_high_temp, highString));
+        forecastAdapterViewHolder.mHighTempView.setText(row.highText);
+        forecastAdapterViewHolder.mHighTempView.setContentDescription(row.highA11y);
 
-        // Read low temperature from cursor
-        double low = mCursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
-        String lowString = Utility.formatTemperature(mContext, low);
-        forecastAdapterViewHolder.mLowTempView.setText(lowString);
-        forecastAdapterViewHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, lowString));
+        forecastAdapterViewHolder.mLowTempView.setText(row.lowText);
+        forecastAdapterViewHolder.mLowTempView.setContentDescription(row.lowA11y);
 
         mICM.onBindViewHolder(forecastAdapterViewHolder, position);
     }
@@ -206,22 +203,76 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         return (position == 0 && mUseTodayLayout) ? VIEW_TYPE_TODAY : VIEW_TYPE_FUTURE_DAY;
     }
 
+    @Override
+    public long getItemId(int position) {
+        return mRows.getRowModel(position).date;
+    }
+
+    @Override
+    public int getPositionForId(long id) {
+        return mPositions.get(id, RecyclerView.NO_POSITION);
+    }
+
+    /**
+     * @return the remote art a row shows at the list icons' size, or null if it shows our own
+     * art or is the today row.
+     */
+    String getListArtUrl(int position) {
+        if (position < 0 || position >= getItemCount()
+                || getItemViewType(position) == VIEW_TYPE_TODAY) {
+            return null;
+        }
+        return mRows.getRowModel(position).artUrl;
+    }
+
     @Override
     public int getItemCount() {
         if ( null == mCursor ) return 0;
         return mCursor.getCount();
     }
 
+    /**
+     * Shows a new load.  Only the rows that differ from the last load are rebound, so a sync
+     * that changed one day, or a reload that changed nothing, leaves the other rows alone.
+     *
+     * @param newCursor a forecast cursor, or null.  One from {@link ForecastCursorLoader}
+     *                  already has its rows formatted; any other has them formatted here.
+     */
     public void swapCursor(Cursor newCursor) {
+        List<ForecastRowModel> oldRows = getRowModels(mRows);
         mCursor = newCursor;
-        notifyDataSetChanged();
+        if (newCursor == null || newCursor instanceof ForecastCursorLoader.ForecastCursor) {
+            mRows = (ForecastCursorLoader.ForecastCursor) newCursor;
+        } else {
+            mRows = new ForecastCursorLoader.ForecastCursor(newCursor,
+                    ForecastRowModel.fromCursor(mContext, newCursor));
+        }
+        List<ForecastRowModel> newRows = getRowModels(mRows);
+        mPositions.clear();
+        for (int i = 0; i < newRows.size(); i++) {
+            mPositions.put(newRows.get(i).date, i);
+        }
+        mICM.confirmCheckedPositionsById(oldRows.size());
+        ForecastRowDiff.dispatch(oldRows, newRows, this);
         mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
 
+    private static List<ForecastRowModel> getRowModels(ForecastCursorLoader.ForecastCursor rows) {
+        return rows == null ? Collections.<ForecastRowModel>emptyList() : rows.getRowModels();
+    }
+
     public Cursor getCursor() {
         return mCursor;
     }
 
+    /**
+     * Rebinds every row, for when the day has rolled over or the clock changed, so the rows on
+     * screen don't keep yesterday's "Today".
+     */
+    public void refreshDayLabels() {
+        notifyItemRangeChanged(0, getItemCount());
+    }
+
     public void selectView(RecyclerView.ViewHolder viewHolder) {
         if ( viewHolder instanceof ForecastAdapterViewHolder ) {
             ForecastAdapterViewHolder vfh = (ForecastAdapterViewHolder)viewHolder;
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.net.Uri;
+import android.support.v4.content.CursorLoader;
+
+import java.util.List;
+
+/**
+ * A {@link CursorLoader} for the forecast list that also builds each row's
+ * {@link ForecastRowModel} while it's still on the loader's background thread.  The cursor it
+ * delivers carries the models along, so the adapter never has to format anything itself.
+ */
+class ForecastCursorLoader extends CursorLoader {
+
+    /**
+     * The forecast cursor, with a display model for each of its rows.
+     */
+    static class ForecastCursor extends CursorWrapper {
+        private final List<ForecastRowModel> mRows;
+
+        ForecastCursor(Cursor cursor, List<ForecastRowModel> rows) {
+            super(cursor);
+            mRows = rows;
+        }
+
+        ForecastRowModel getRowModel(int position) {
+            return mRows.get(position);
+        }
+
+        List<ForecastRowModel> getRowModels() {
+            return mRows;
+        }
+    }
+
+    ForecastCursorLoader(Context context, Uri uri, String[] projection, String selection,
+                         String[] selectionArgs, String sortOrder) {
+        super(context, uri, projection, selection, selectionArgs, sortOrder);
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        Cursor cursor = super.loadInBackground();
+        if (cursor == null) {
+            return null;
+        }
+        // The wrapper passes content observers through, so the loader still reloads when the
+        // forecast, the units or the art pack change.
+        return new ForecastCursor(cursor, ForecastRowModel.fromCursor(getContext(), cursor));
+    }
+}
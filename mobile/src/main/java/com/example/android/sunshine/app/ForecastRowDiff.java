@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v7.widget.RecyclerView;
+
+import java.util.List;
+
+/**
+ * Tells an adapter which rows of the forecast list a new load actually changed, instead of
+ * having it rebind them all.
+ *
+ * Both loads are sorted by date, so one pass over the two side by side, like a merge, is
+ * enough: a row only in the old load was removed, a row only in the new one was inserted, and
+ * a row in both was changed if it shows something different.  Neighbouring notifications of
+ * the same kind go out as one range.
+ */
+final class ForecastRowDiff {
+
+    private static final int NONE = 0;
+    private static final int INSERT = 1;
+    private static final int REMOVE = 2;
+    private static final int CHANGE = 3;
+
+    private final RecyclerView.Adapter<?> mAdapter;
+
+    // The range waiting to be sent, which the next notification may extend.
+    private int mType = NONE;
+    private int mStart;
+    private int mCount;
+
+    private ForecastRowDiff(RecyclerView.Adapter<?> adapter) {
+        mAdapter = adapter;
+    }
+
+    /**
+     * Notifies the adapter of the difference between two loads, each sorted by date.  The
+     * adapter must already be showing the new rows.
+     */
+    static void dispatch(List<ForecastRowModel> oldRows, List<ForecastRowModel> newRows,
+                         RecyclerView.Adapter<?> adapter) {
+        ForecastRowDiff diff = new ForecastRowDiff(adapter);
+        int oldIndex = 0;
+        int newIndex = 0;
+        // Where the adapter's list stands with the notifications sent so far.
+        int position = 0;
+        while (oldIndex < oldRows.size() || newIndex < newRows.size()) {
+            int order;
+            if (oldIndex == oldRows.size()) {
+                order = 1;
+            } else if (newIndex == newRows.size()) {
+                order = -1;
+            } else {
+                order = compare(oldRows.get(oldIndex), newRows.get(newIndex));
+            }
+
+            if (order < 0) {
+                diff.add(REMOVE, position);
+                oldIndex++;
+            } else if (order > 0) {
+                diff.add(INSERT, position);
+                newIndex++;
+                position++;
+            } else {
+                if (!oldRows.get(oldIndex).hasSameContentsAs(newRows.get(newIndex))) {
+                    diff.add(CHANGE, position);
+                }
+                oldIndex++;
+                newIndex++;
+                position++;
+            }
+        }
+        diff.flush();
+    }
+
+    private static int compare(ForecastRowModel oldRow, ForecastRowModel newRow) {
+        if (oldRow.isSameRowAs(newRow)) {
+            return 0;
+        }
+        if (oldRow.date != newRow.date) {
+            return oldRow.date < newRow.date ? -1 : 1;
+        }
+        // Same day, another location: order by location, so each row is only dropped or
+        // added once.
+        String oldLocation = oldRow.locationSetting == null ? "" : oldRow.locationSetting;
+        String newLocation = newRow.locationSetting == null ? "" : newRow.locationSetting;
+        return oldLocation.compareTo(newLocation) < 0 ? -1 : 1;
+    }
+
+    private void add(int type, int position) {
+        if (type == mType) {
+            // Removed rows all go from the same position; inserted and changed ones follow on.
+            int next = type == REMOVE ? mStart : mStart + mCount;
+            if (position == next) {
+                mCount++;
+                return;
+            }
+        }
+        flush();
+        mType = type;
+        mStart = position;
+        mCount = 1;
+    }
+
+    private void flush() {
+        switch (mType) {
+            case INSERT:
+                mAdapter.notifyItemRangeInserted(mStart, mCount);
+                break;
+            case REMOVE:
+                mAdapter.notifyItemRangeRemoved(mStart, mCount);
+                break;
+            case CHANGE:
+                mAdapter.notifyItemRangeChanged(mStart, mCount);
+                break;
+        }
+        mType = NONE;
+    }
+}
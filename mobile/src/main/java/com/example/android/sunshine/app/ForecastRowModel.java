@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.text.TextUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Everything a row of the forecast list shows, worked out ahead of time.  Formatting a row
+ * means reading preferences, formatting dates and looking up strings; doing it in
+ * {@link ForecastAdapter#onBindViewHolder} did it again for every row that scrolled into view,
+ * on the main thread.  {@link ForecastCursorLoader} builds these once per load, in the
+ * background, and binding only copies the fields into the views.
+ *
+ * The day labels are the exception: "Today" and "Tomorrow" move on at midnight whatever the
+ * forecast, so binding reads them from {@link DayLabelCache} instead.
+ */
+class ForecastRowModel {
+    // Together these tell rows apart across loads.  The list only ever shows one location, so
+    // the date alone is the adapter's item id.
+    final long date;
+    final String locationSetting;
+
+    final int weatherId;
+
+    // The first row may use the "today" layout, which has its own date format and art.
+    final boolean first;
+    final int iconResId;
+    final int artResId;
+
+    // Null when the local art pack is used.
+    final String artUrl;
+
+    final String description;
+    final String descriptionA11y;
+    final String highText;
+    final String highA11y;
+    final String lowText;
+    final String lowA11y;
+
+    final String transitionName;
+
+    private ForecastRowModel(Context context, Cursor cursor, int position, boolean metric,
+                             boolean localGraphics) {
+        date = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+        locationSetting = cursor.getString(ForecastFragment.COL_LOCATION_SETTING);
+        weatherId = cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+
+        first = position == 0;
+        iconResId = Utility.getIconResourceForWeatherCondition(weatherId);
+        artResId = Utility.getArtResourceForWeatherCondition(weatherId);
+        artUrl = localGraphics ? null : Utility.getArtUrlForWeatherCondition(context, weatherId);
+
+        description = Utility.getStringForWeatherCondition(context, weatherId);
+        descriptionA11y = context.getString(R.string.a11y_forecast, description);
+        highText = Utility.formatTemperature(context,
+                cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP), metric);
+        highA11y = context.getString(R.string.a11y_high_temp, highText);
+        lowText = Utility.formatTemperature(context,
+                cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP), metric);
+        lowA11y = context.getString(R.string.a11y_low_temp, lowText);
+
+        // This enables better animations. Even if we lose state due to a device rotation,
+        // the animator can use this to re-find the original view.  It follows the day rather
+        // than the position, so a row keeps it when days are added or dropped around it.
+        transitionName = "iconView" + date;
+    }
+
+    /**
+     * @return whether this row is for the same day and location as the other, whatever the
+     * weather.
+     */
+    boolean isSameRowAs(ForecastRowModel other) {
+        return date == other.date && TextUtils.equals(locationSetting, other.locationSetting);
+    }
+
+    /**
+     * @return whether this row shows exactly what the other does, so a view bound to one
+     * doesn't need binding again for the other.
+     */
+    boolean hasSameContentsAs(ForecastRowModel other) {
+        return first == other.first
+                && iconResId == other.iconResId
+                && artResId == other.artResId
+                && TextUtils.equals(artUrl, other.artUrl)
+                && TextUtils.equals(description, other.description)
+                && TextUtils.equals(highText, other.highText)
+                && TextUtils.equals(lowText, other.lowText)
+                && TextUtils.equals(transitionName, other.transitionName);
+    }
+
+    /**
+     * Builds the model for every row of a forecast cursor, which must have the columns of
+     * {@link ForecastFragment}'s projection.  Reads the preferences once for the lot.
+     */
+    static List<ForecastRowModel> fromCursor(Context context, Cursor cursor) {
+        if (cursor == null || !cursor.moveToFirst()) {
+            return Collections.emptyList();
+        }
+        boolean metric = Utility.isMetric(context);
+        boolean localGraphics = Utility.usingLocalGraphics(context);
+        List<ForecastRowModel> rows = new ArrayList<>(cursor.getCount());
+        do {
+            rows.add(new ForecastRowModel(context, cursor, cursor.getPosition(), metric,
+                    localGraphics));
+        } while (cursor.moveToNext());
+        return Collections.unmodifiableList(rows);
+    }
+}
@@ -19,7 +19,6 @@ import android.os.Build;
 import android.os.Bundle;
 import android.os.Parcel;
 import android.os.Parcelable;
-import android.support.v4.util.LongSparseArray;
 import android.support.v4.view.ViewCompat;
 import android.support.v7.widget.RecyclerView;
 import android.util.Log;
@@ -27,11 +26,26 @@ import android.util.SparseBooleanArray;
 import android.widget.AbsListView;
 import android.widget.Checkable;
 
+import com.example.android.sunshine.shared.LongIntMap;
+
 /**
  * The ItemChoiceManager class keeps track of which positions have been selected.  Note that it
  * doesn't take advantage of new adapter features to track changes in the underlying data.
  */
 public class ItemChoiceManager {
+
+    /**
+     * Implemented by adapters that keep an index of their ids, so a checked item that moved can
+     * be found with a lookup rather than a search around where it used to be.
+     */
+    public interface PositionIndex {
+        /**
+         * @return the position of the item with the id, or RecyclerView.NO_POSITION if there
+         * isn't one.
+         */
+        int getPositionForId(long id);
+    }
+
     private final String LOG_TAG = MainActivity.class.getSimpleName();
     private final String SELECTED_ITEMS_KEY = "SIK";
     private int mChoiceMode;
@@ -72,7 +86,7 @@ public class ItemChoiceManager {
      * If there is a value for a given key, the checked state for that ID is true
      * and the value holds the last known position in the adapter for that id.
      */
-    LongSparseArray<Integer> mCheckedIdStates = new LongSparseArray<Integer>();
+    LongIntMap mCheckedIdStates = new LongIntMap();
 
     public void onClick(RecyclerView.ViewHolder vh) {
         if (mChoiceMode == AbsListView.CHOICE_MODE_NONE)
@@ -162,30 +176,43 @@ public class ItemChoiceManager {
             final long id = mCheckedIdStates.keyAt(checkedIndex);
             final int lastPos = mCheckedIdStates.valueAt(checkedIndex);
 
-            final long lastPosId = mAdapter.getItemId(lastPos);
-            if (id != lastPosId) {
-                // Look around to see if the ID is nearby. If not, uncheck it.
-                final int start = Math.max(0, lastPos - CHECK_POSITION_SEARCH_DISTANCE);
-                final int end = Math.min(lastPos + CHECK_POSITION_SEARCH_DISTANCE, oldItemCount);
-                boolean found = false;
-                for (int searchPos = start; searchPos < end; searchPos++) {
-                    final long searchId = mAdapter.getItemId(searchPos);
-                    if (id == searchId) {
-                        found = true;
-                        mCheckStates.put(searchPos, true);
-                        mCheckedIdStates.setValueAt(checkedIndex, searchPos);
-                        break;
-                    }
-                }
+            final int position;
+            if (mAdapter instanceof PositionIndex) {
+                position = ((PositionIndex) mAdapter).getPositionForId(id);
+            } else {
+                position = searchPositionForId(id, lastPos, oldItemCount);
+            }
 
-                if (!found) {
-                    mCheckedIdStates.delete(id);
-                    checkedIndex--;
-                }
+            if (position == RecyclerView.NO_POSITION) {
+                // The item's gone, so uncheck it.
+                mCheckedIdStates.delete(id);
+                checkedIndex--;
             } else {
-                mCheckStates.put(lastPos, true);
+                mCheckStates.put(position, true);
+                mCheckedIdStates.setValueAt(checkedIndex, position);
+            }
+        }
+    }
+
+    /**
+     * Looks for an ID where it last was and then nearby, for adapters without a
+     * {@link PositionIndex}.
+     */
+    private int searchPositionForId(long id, int lastPos, int oldItemCount) {
+        final int itemCount = mAdapter.getItemCount();
+        if (lastPos < itemCount && mAdapter.getItemId(lastPos) == id) {
+            return lastPos;
+        }
+        // Look around to see if the ID is nearby.
+        final int start = Math.max(0, lastPos - CHECK_POSITION_SEARCH_DISTANCE);
+        final int end = Math.min(Math.min(lastPos + CHECK_POSITION_SEARCH_DISTANCE, oldItemCount),
+                itemCount);
+        for (int searchPos = start; searchPos < end; searchPos++) {
+            if (mAdapter.getItemId(searchPos) == id) {
+                return searchPos;
             }
         }
+        return RecyclerView.NO_POSITION;
     }
 
     public void onBindViewHolder(RecyclerView.ViewHolder vh, int position) {
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The settings the app reads over and over, for every row, widget and notification, as one
+ * immutable object.  Reading them used to mean looking up the preferences and their keys on
+ * every call; now it's one volatile read of {@link #get}'s result, which is replaced as a whole
+ * whenever a preference changes, so a reader never sees half of an update.
+ *
+ * Code that reacts to preference changes should listen through {@link #registerListener}
+ * rather than on the SharedPreferences directly: those listeners run after the snapshot has
+ * been rebuilt, so they read the new values.
+ */
+public class PreferenceSnapshot {
+
+    public final String locationSetting;
+    public final boolean metric;
+    public final boolean latLonAvailable;
+    public final float latitude;
+    public final float longitude;
+    // The art pack's URL format.
+    public final String artPack;
+    public final boolean localGraphics;
+    @SunshineSyncAdapter.LocationStatus
+    public final int locationStatus;
+
+    private static volatile PreferenceSnapshot sCurrent;
+    private static SharedPreferences sPreferences;
+    // SharedPreferences only holds on to its listeners weakly, so this one is kept here.
+    private static SharedPreferences.OnSharedPreferenceChangeListener sRebuilder;
+    private static final CopyOnWriteArrayList<SharedPreferences.OnSharedPreferenceChangeListener>
+            sListeners = new CopyOnWriteArrayList<>();
+
+    @SuppressWarnings("ResourceType")
+    private PreferenceSnapshot(Context context, SharedPreferences prefs) {
+        locationSetting = prefs.getString(context.getString(R.string.pref_location_key),
+                context.getString(R.string.pref_location_default));
+        String metricUnits = context.getString(R.string.pref_units_metric);
+        metric = prefs.getString(context.getString(R.string.pref_units_key), metricUnits)
+                .equals(metricUnits);
+        String latitudeKey = context.getString(R.string.pref_location_latitude);
+        String longitudeKey = context.getString(R.string.pref_location_longitude);
+        latLonAvailable = prefs.contains(latitudeKey) && prefs.contains(longitudeKey);
+        latitude = prefs.getFloat(latitudeKey, Utility.DEFAULT_LATLONG);
+        longitude = prefs.getFloat(longitudeKey, Utility.DEFAULT_LATLONG);
+        String sunshineArtPack = context.getString(R.string.pref_art_pack_sunshine);
+        artPack = prefs.getString(context.getString(R.string.pref_art_pack_key), sunshineArtPack);
+        localGraphics = artPack.equals(sunshineArtPack);
+        locationStatus = prefs.getInt(context.getString(R.string.pref_location_status_key),
+                SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN);
+    }
+
+    /**
+     * @return the current settings.  Only the first call reads the preferences.
+     */
+    public static PreferenceSnapshot get(Context context) {
+        PreferenceSnapshot snapshot = sCurrent;
+        if (snapshot != null) {
+            return snapshot;
+        }
+        synchronized (PreferenceSnapshot.class) {
+            if (sCurrent == null) {
+                final Context appContext = context.getApplicationContext();
+                sPreferences = PreferenceManager.getDefaultSharedPreferences(appContext);
+                sRebuilder = new SharedPreferences.OnSharedPreferenceChangeListener() {
+                    @Override
+                    public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+                        sCurrent = new PreferenceSnapshot(appContext, prefs);
+                        for (SharedPreferences.OnSharedPreferenceChangeListener listener : sListeners) {
+                            listener.onSharedPreferenceChanged(prefs, key);
+                        }
+                    }
+                };
+                sPreferences.registerOnSharedPreferenceChangeListener(sRebuilder);
+                sCurrent = new PreferenceSnapshot(appContext, sPreferences);
+            }
+            return sCurrent;
+        }
+    }
+
+    /**
+     * Rebuilds the snapshot right away.  Change listeners are called on the main thread, so
+     * code that commits a preference on another thread and reads it back straight after calls
+     * this in between.
+     */
+    public static void refresh(Context context) {
+        synchronized (PreferenceSnapshot.class) {
+            get(context);
+            sCurrent = new PreferenceSnapshot(context.getApplicationContext(), sPreferences);
+        }
+    }
+
+    /**
+     * Registers a listener for changes to the default preferences, called once the snapshot
+     * has caught up with the change.
+     */
+    public static void registerListener(Context context,
+            SharedPreferences.OnSharedPreferenceChangeListener listener) {
+        get(context);
+        sListeners.addIfAbsent(listener);
+    }
+
+    public static void unregisterListener(
+            SharedPreferences.OnSharedPreferenceChangeListener listener) {
+        sListeners.remove(listener);
+    }
+}
@@ -55,16 +55,15 @@ public class SettingsActivity extends PreferenceActivity
     // Registers a shared preference change listener that gets notified when preferences change
     @Override
     protected void onResume() {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(this);
-        sp.registerOnSharedPreferenceChangeListener(this);
+        // Through the snapshot, so it has caught up by the time we hear of a change.
+        PreferenceSnapshot.registerListener(this, this);
         super.onResume();
     }
 
     // Unregisters a shared preference change listener
     @Override
     protected void onPause() {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(this);
-        sp.unregisterOnSharedPreferenceChangeListener(this);
+        PreferenceSnapshot.unregisterListener(this);
         super.onPause();
     }
 
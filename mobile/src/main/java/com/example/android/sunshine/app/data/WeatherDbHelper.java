@@ -18,6 +18,8 @@ package com.example.android.sunshine.app.data;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.SystemClock;
+import android.util.Log;
 
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
@@ -26,12 +28,21 @@ import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
  * Manages a local database for weather data.
  */
 public class WeatherDbHelper extends SQLiteOpenHelper {
+    private static final String LOG_TAG = WeatherDbHelper.class.getSimpleName();
 
-    // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    // If you change the database schema, you must increment the database version, and add a
+    // step to migrate() that brings the previous version up to it.
+    static final int DATABASE_VERSION = 3;
+
+    // The oldest version migrate() knows how to move forward.  Anything older is wiped.
+    static final int OLDEST_MIGRATABLE_VERSION = 2;
 
     static final String DATABASE_NAME = "weather.db";
 
+    // Serves "location_id = ? AND date >= ? ORDER BY date", which is how every screen reads the
+    // forecast.  The UNIQUE (date, location_id) index can't, since it starts with the date.
+    static final String INDEX_WEATHER_LOCATION_DATE = "weather_location_date";
+
     public WeatherDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
     }
@@ -81,18 +92,48 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
 
         sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+        createWeatherLocationDateIndex(sqLiteDatabase);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
-        // This database is only a cache for online data, so its upgrade policy is
-        // to simply to discard the data and start over
-        // Note that this only fires if you change the version number for your database.
-        // It does NOT depend on the version number for your application.
-        // If you want to update the schema without wiping data, commenting out the next 2 lines
-        // should be your top priority before modifying this method.
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
-        onCreate(sqLiteDatabase);
+        // The data is only a cache of online data, but wiping it means every user opens the
+        // updated app to an empty forecast until all their locations have synced again.  So the
+        // schema is moved forward one version at a time, in place, keeping what's stored.
+        // SQLiteOpenHelper runs all of this in one transaction, so a failed step leaves the
+        // old database as it was.
+        long start = SystemClock.elapsedRealtime();
+        if (oldVersion < OLDEST_MIGRATABLE_VERSION) {
+            // From before we kept track of the schema; start over.
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+            onCreate(sqLiteDatabase);
+        } else {
+            for (int version = oldVersion; version < newVersion; version++) {
+                migrate(sqLiteDatabase, version);
+            }
+        }
+        Log.i(LOG_TAG, "Upgraded from version " + oldVersion + " to " + newVersion + " in "
+                + (SystemClock.elapsedRealtime() - start) + " ms");
+    }
+
+    /**
+     * Brings the schema from fromVersion to fromVersion + 1 without losing any data.
+     */
+    static void migrate(SQLiteDatabase db, int fromVersion) {
+        switch (fromVersion) {
+            case 2:
+                // 3: index the days of each location by date.
+                createWeatherLocationDateIndex(db);
+                break;
+            default:
+                throw new IllegalStateException("No migration from version " + fromVersion);
+        }
+    }
+
+    private static void createWeatherLocationDateIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_WEATHER_LOCATION_DATE + " ON " +
+                WeatherEntry.TABLE_NAME + " (" +
+                WeatherEntry.COLUMN_LOC_KEY + ", " + WeatherEntry.COLUMN_DATE + ");");
     }
 }
@@ -17,22 +17,67 @@ package com.example.android.sunshine.app.data;
 
 import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class WeatherProvider extends ContentProvider {
+    private static final String LOG_TAG = WeatherProvider.class.getSimpleName();
 
     // The URI Matcher used by this content provider.
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
 
+    /**
+     * What applyBatch keeps track of while it runs on a thread.
+     */
+    private static class Batch {
+        // Notified once the batch has committed.
+        final Set<Uri> changedUris = new LinkedHashSet<>();
+        // Shared by all the weather inserts of the batch.
+        WeatherRowWriter writer;
+        // Set by insert when a weather row was already stored as is.
+        boolean insertUnchanged;
+
+        @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+        WeatherRowWriter getWriter(SQLiteDatabase db) {
+            if (writer == null) {
+                writer = new WeatherRowWriter(db);
+            }
+            return writer;
+        }
+    }
+
+    private final ThreadLocal<Batch> mBatch = new ThreadLocal<>();
+
+    // Buffers of weather rows staged for a batch, by the id at the end of their URI.
+    private static final Map<Long, WeatherRows> sStagedRows = new ConcurrentHashMap<>();
+    private static final AtomicLong sLastStagedRowsId = new AtomicLong();
+
     static final int WEATHER = 100;
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
+    static final int WEATHER_ROWS = 103;
     static final int LOCATION = 300;
 
     private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
@@ -68,6 +113,85 @@ public class WeatherProvider extends ContentProvider {
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
 
+    //location.location_setting = ?, without the weather join
+    private static final String sLocationSettingOnlySelection =
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? ";
+
+    //weather.location_id = ? AND date = ?
+    private static final String sLocationIdAndDaySelection =
+            WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
+
+    //weather.location_id = ?
+    private static final String sLocationIdSelection =
+            WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? ";
+
+    //weather.location_id = ? AND date >= ?
+    private static final String sLocationIdWithStartDateSelection =
+            WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? ";
+
+    // Every column of the weather table, bare and qualified, to tell whether a projection needs
+    // the location table at all.
+    private static final Set<String> sWeatherColumns = new HashSet<>();
+
+    // The location table's columns, bare and qualified, each mapped to its bare name.  A bare
+    // _id is the weather row's, as it always was with the join.
+    private static final Map<String, String> sLocationColumns = new HashMap<>();
+
+    static {
+        String[] columns = {
+                WeatherContract.WeatherEntry._ID,
+                WeatherContract.WeatherEntry.COLUMN_LOC_KEY,
+                WeatherContract.WeatherEntry.COLUMN_DATE,
+                WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+                WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+                WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+                WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+                WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+                WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+                WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+                WeatherContract.WeatherEntry.COLUMN_DEGREES
+        };
+        for (String column : columns) {
+            sWeatherColumns.add(column);
+            sWeatherColumns.add(WeatherContract.WeatherEntry.TABLE_NAME + "." + column);
+        }
+
+        String[] locationColumns = {
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+                WeatherContract.LocationEntry.COLUMN_CITY_NAME,
+                WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+                WeatherContract.LocationEntry.COLUMN_COORD_LONG
+        };
+        for (String column : locationColumns) {
+            sLocationColumns.put(column, column);
+            sLocationColumns.put(WeatherContract.LocationEntry.TABLE_NAME + "." + column, column);
+        }
+        sLocationColumns.put(WeatherContract.LocationEntry.TABLE_NAME + "."
+                + WeatherContract.LocationEntry._ID, WeatherContract.LocationEntry._ID);
+    }
+
+    /**
+     * A stored location, with each of its columns written out as an SQL literal so a query of
+     * its days can select them straight from the weather table.
+     */
+    private static class CachedLocation {
+        final long id;
+        final Map<String, String> literals = new HashMap<>();
+
+        CachedLocation(long id) {
+            this.id = id;
+        }
+    }
+
+    // location_setting -> its location row, filled in as settings are queried.  Everything that
+    // writes the location table goes through this provider, which clears it whenever a location
+    // is updated or deleted, and bumps the generation so a lookup that raced the write doesn't
+    // put the old row back.
+    private final Map<String, CachedLocation> mLocations = new ConcurrentHashMap<>();
+    private final AtomicInteger mLocationsGeneration = new AtomicInteger();
+
     private Cursor getWeatherByLocationSetting(Uri uri, String[] projection, String sortOrder) {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long startDate = WeatherContract.WeatherEntry.getStartDateFromUri(uri);
@@ -75,6 +199,23 @@ public class WeatherProvider extends ContentProvider {
         String[] selectionArgs;
         String selection;
 
+        // Once we know the location's id, the (location_id, date) index finds its days and
+        // hands them back in date order.  Location columns come from the cached row, so the
+        // join is only needed for projections we can't make sense of.
+        CachedLocation location = getLocation(locationSetting);
+        if (location != null) {
+            if (startDate == 0) {
+                selection = sLocationIdSelection;
+                selectionArgs = new String[]{Long.toString(location.id)};
+            } else {
+                selection = sLocationIdWithStartDateSelection;
+                selectionArgs = new String[]{Long.toString(location.id),
+                        Long.toString(startDate)};
+            }
+            return queryWeatherForLocation(location, projection, selection, selectionArgs,
+                    sortOrder);
+        }
+
         if (startDate == 0) {
             selection = sLocationSettingSelection;
             selectionArgs = new String[]{locationSetting};
@@ -98,6 +239,12 @@ public class WeatherProvider extends ContentProvider {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long date = WeatherContract.WeatherEntry.getDateFromUri(uri);
 
+        CachedLocation location = getLocation(locationSetting);
+        if (location != null) {
+            return queryWeatherForLocation(location, projection, sLocationIdAndDaySelection,
+                    new String[]{Long.toString(location.id), Long.toString(date)}, sortOrder);
+        }
+
         return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
                 projection,
                 sLocationSettingAndDaySelection,
@@ -128,6 +275,7 @@ public class WeatherProvider extends ContentProvider {
         matcher.addURI(authority, WeatherContract.PATH_WEATHER, WEATHER);
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*", WEATHER_WITH_LOCATION);
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*/#", WEATHER_WITH_LOCATION_AND_DATE);
+        matcher.addURI(authority, WeatherContract.PATH_WEATHER_ROWS + "/#", WEATHER_ROWS);
 
         matcher.addURI(authority, WeatherContract.PATH_LOCATION, LOCATION);
         return matcher;
@@ -162,6 +310,8 @@ public class WeatherProvider extends ContentProvider {
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
             case WEATHER:
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
+            case WEATHER_ROWS:
+                return WeatherContract.WeatherEntry.CONTENT_TYPE;
             case LOCATION:
                 return WeatherContract.LocationEntry.CONTENT_TYPE;
             default:
@@ -229,19 +379,35 @@ public class WeatherProvider extends ContentProvider {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
         Uri returnUri;
+        boolean changed;
 
         switch (match) {
             case WEATHER: {
-                normalizeDate(values);
-                long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
+                // There is only ever one row per location and day, so an insert for a day we
+                // already have updates it, or leaves it alone if nothing changed.
+                UpsertCounts counts = new UpsertCounts();
+                long _id = writeWeatherRow(db, values, counts);
                 if ( _id > 0 )
                     returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
+                changed = counts.getChanged() > 0;
+                Batch batch = mBatch.get();
+                if (!changed && batch != null) {
+                    batch.insertUnchanged = true;
+                }
                 break;
             }
             case LOCATION: {
-                long _id = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, values);
+                // Location settings are unique, so inserting one we already have hands back the
+                // existing row.  That lets a batch insert a location and refer back to it
+                // without querying for it first.
+                long _id = findLocation(db,
+                        values.getAsString(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING));
+                changed = _id == -1;
+                if (changed) {
+                    _id = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, values);
+                }
                 if ( _id > 0 )
                     returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
                 else
@@ -251,7 +417,9 @@ public class WeatherProvider extends ContentProvider {
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        getContext().getContentResolver().notifyChange(uri, null);
+        if (changed) {
+            notifyChange(uri);
+        }
         return returnUri;
     }
 
@@ -270,18 +438,19 @@ public class WeatherProvider extends ContentProvider {
             case LOCATION:
                 rowsDeleted = db.delete(
                         WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
+                invalidateLocations();
                 break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         // Because a null deletes all rows
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
         return rowsDeleted;
     }
 
-    private void normalizeDate(ContentValues values) {
+    private static void normalizeDate(ContentValues values) {
         // normalize the date value
         if (values.containsKey(WeatherContract.WeatherEntry.COLUMN_DATE)) {
             long dateValue = values.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
@@ -305,12 +474,28 @@ public class WeatherProvider extends ContentProvider {
             case LOCATION:
                 rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values, selection,
                         selectionArgs);
+                invalidateLocations();
                 break;
+            case WEATHER_ROWS: {
+                WeatherRows rows = sStagedRows.get(ContentUris.parseId(uri));
+                if (rows == null) {
+                    throw new IllegalArgumentException("No weather rows staged for " + uri);
+                }
+                Long locationId = values == null
+                        ? null : values.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+                if (locationId != null) {
+                    rows.setLocationId(locationId);
+                }
+                rowsUpdated = writeWeatherRows(db, rows).getChanged();
+                // Observers watch the weather, not the buffer it came in.
+                uri = WeatherContract.WeatherEntry.CONTENT_URI;
+                break;
+            }
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
         return rowsUpdated;
     }
@@ -322,26 +507,367 @@ public class WeatherProvider extends ContentProvider {
         switch (match) {
             case WEATHER:
                 db.beginTransaction();
-                int returnCount = 0;
+                UpsertCounts counts;
                 try {
-                    for (ContentValues value : values) {
-                        normalizeDate(value);
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
-                        if (_id != -1) {
-                            returnCount++;
-                        }
-                    }
+                    counts = upsertWeather(db, values);
                     db.setTransactionSuccessful();
                 } finally {
                     db.endTransaction();
                 }
-                getContext().getContentResolver().notifyChange(uri, null);
-                return returnCount;
+                Log.d(LOG_TAG, "Weather bulk insert: " + counts.inserted + " inserted, "
+                        + counts.updated + " updated, " + counts.unchanged + " unchanged");
+                // A sync that brings back the same forecast shouldn't make every loader, widget
+                // and wallpaper reload.
+                if (counts.getChanged() > 0) {
+                    notifyChange(uri);
+                }
+                return counts.getChanged();
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    /**
+     * How the rows handed to {@link #upsertWeather} were dealt with.
+     */
+    static class UpsertCounts {
+        int inserted;
+        int updated;
+        int unchanged;
+
+        int getChanged() {
+            return inserted + updated;
+        }
+    }
+
+    /**
+     * Writes weather rows, comparing each against the row already stored for the same location
+     * and day.  New days are inserted, days whose values differ are updated in place, and days
+     * that are identical are left alone.  Unlike an insert that relies on ON CONFLICT REPLACE,
+     * this never deletes a row just to write it back, so row ids stay stable too.
+     *
+     * Should be called inside a transaction.
+     */
+    static UpsertCounts upsertWeather(SQLiteDatabase db, ContentValues[] values) {
+        UpsertCounts counts = new UpsertCounts();
+        for (ContentValues value : values) {
+            upsertWeather(db, value, counts);
+        }
+        return counts;
+    }
+
+    /**
+     * Upserts a single row the way {@link #upsertWeather(SQLiteDatabase, ContentValues[])} does.
+     *
+     * @return the row's _id, or -1 if it couldn't be inserted.
+     */
+    static long upsertWeather(SQLiteDatabase db, ContentValues value, UpsertCounts counts) {
+        normalizeDate(value);
+        Cursor stored = db.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                null,
+                sLocationIdAndDaySelection,
+                new String[]{
+                        value.getAsString(WeatherContract.WeatherEntry.COLUMN_LOC_KEY),
+                        value.getAsString(WeatherContract.WeatherEntry.COLUMN_DATE)},
+                null,
+                null,
+                null);
+        try {
+            if (!stored.moveToFirst()) {
+                long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
+                if (_id != -1) {
+                    counts.inserted++;
+                }
+                return _id;
+            }
+            long _id = stored.getLong(stored.getColumnIndex(WeatherContract.WeatherEntry._ID));
+            if (matchesStoredRow(stored, value)) {
+                counts.unchanged++;
+            } else {
+                db.update(WeatherContract.WeatherEntry.TABLE_NAME, value,
+                        WeatherContract.WeatherEntry._ID + " = ?",
+                        new String[]{Long.toString(_id)});
+                counts.updated++;
+            }
+            return _id;
+        } finally {
+            stored.close();
+        }
+    }
+
+    /**
+     * Upserts one row, through the batch's compiled statements when there's a batch running.
+     */
+    private long writeWeatherRow(SQLiteDatabase db, ContentValues values, UpsertCounts counts) {
+        Batch batch = mBatch.get();
+        if (batch != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                && WeatherRowWriter.isCompleteRow(values)) {
+            return batch.getWriter(db).write(values, counts);
+        }
+        return upsertWeather(db, values, counts);
+    }
+
+    /**
+     * Upserts every row of a staged buffer.  In a batch they're bound straight from the buffer
+     * into its compiled statements; devices too old for those, and updates made outside a batch,
+     * go through ContentValues.
+     */
+    private UpsertCounts writeWeatherRows(SQLiteDatabase db, WeatherRows rows) {
+        UpsertCounts counts = new UpsertCounts();
+        Batch batch = mBatch.get();
+        db.beginTransaction();
+        try {
+            if (batch != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                WeatherRowWriter writer = batch.getWriter(db);
+                for (int i = 0; i < rows.size(); i++) {
+                    writer.write(rows, i, counts);
+                }
+            } else {
+                for (int i = 0; i < rows.size(); i++) {
+                    upsertWeather(db, rows.toContentValues(i), counts);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return counts;
+    }
+
+    /**
+     * Stages a buffer of weather rows for a batch.  An update of the returned URI writes all of
+     * its rows, the way inserting each of them would, and counts the ones that were new or
+     * changed.  Its values only need the rows' location key, which may be a back reference to a
+     * location inserted earlier in the batch.
+     *
+     * The buffer itself never leaves this process, which is fine since the provider isn't
+     * exported.  Unstage it once the batch is over, whether or not it went through.
+     */
+    public static Uri stageWeatherRows(WeatherRows rows) {
+        long id = sLastStagedRowsId.incrementAndGet();
+        sStagedRows.put(id, rows);
+        return ContentUris.withAppendedId(WeatherContract.BASE_CONTENT_URI.buildUpon()
+                .appendPath(WeatherContract.PATH_WEATHER_ROWS).build(), id);
+    }
+
+    public static void unstageWeatherRows(Uri uri) {
+        sStagedRows.remove(ContentUris.parseId(uri));
+    }
+
+    /**
+     * @return the stored location with this setting, or null if there is none.  Settings that
+     * were found are remembered.
+     */
+    private CachedLocation getLocation(String locationSetting) {
+        if (locationSetting == null) {
+            return null;
+        }
+        CachedLocation cached = mLocations.get(locationSetting);
+        if (cached != null) {
+            return cached;
+        }
+        int generation = mLocationsGeneration.get();
+        Cursor cursor = mOpenHelper.getReadableDatabase().query(
+                WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{
+                        WeatherContract.LocationEntry._ID,
+                        WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+                        WeatherContract.LocationEntry.COLUMN_CITY_NAME,
+                        WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+                        WeatherContract.LocationEntry.COLUMN_COORD_LONG
+                },
+                sLocationSettingOnlySelection,
+                new String[]{locationSetting},
+                null,
+                null,
+                null);
+        CachedLocation location = null;
+        try {
+            if (cursor.moveToFirst()) {
+                // The location table's columns are all NOT NULL.
+                location = new CachedLocation(cursor.getLong(0));
+                location.literals.put(WeatherContract.LocationEntry._ID,
+                        Long.toString(location.id));
+                location.literals.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+                        DatabaseUtils.sqlEscapeString(cursor.getString(1)));
+                location.literals.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME,
+                        DatabaseUtils.sqlEscapeString(cursor.getString(2)));
+                location.literals.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+                        Double.toString(cursor.getDouble(3)));
+                location.literals.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG,
+                        Double.toString(cursor.getDouble(4)));
+            }
+        } finally {
+            cursor.close();
+        }
+        if (location != null && mLocationsGeneration.get() == generation) {
+            mLocations.put(locationSetting, location);
+        }
+        return location;
+    }
+
+    private void invalidateLocations() {
+        mLocationsGeneration.incrementAndGet();
+        mLocations.clear();
+    }
+
+    /**
+     * Queries the days of one location by its id.  Location columns are selected as the cached
+     * row's values, so the location table is only joined if the projection asks for something
+     * else.
+     */
+    private Cursor queryWeatherForLocation(CachedLocation location, String[] projection,
+                                           String selection, String[] selectionArgs,
+                                           String sortOrder) {
+        if (canSkipJoin(projection)) {
+            String[] columns = new String[projection.length];
+            for (int i = 0; i < projection.length; i++) {
+                String column = sLocationColumns.get(projection[i]);
+                columns[i] = column == null || sWeatherColumns.contains(projection[i])
+                        ? projection[i]
+                        : location.literals.get(column) + " AS " + column;
+            }
+            return mOpenHelper.getReadableDatabase().query(WeatherContract.WeatherEntry.TABLE_NAME,
+                    columns,
+                    selection,
+                    selectionArgs,
+                    null,
+                    null,
+                    sortOrder);
+        }
+        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+                projection,
+                selection,
+                selectionArgs,
+                null,
+                null,
+                sortOrder);
+    }
+
+    /**
+     * @return true if every column of the projection is either the weather table's or one the
+     * cached location row can stand in for.
+     */
+    static boolean canSkipJoin(String[] projection) {
+        if (projection == null) {
+            return false;
+        }
+        for (String column : projection) {
+            if (!sWeatherColumns.contains(column) && !sLocationColumns.containsKey(column)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the _id of the location with this setting, or -1 if there is none.
+     */
+    private static long findLocation(SQLiteDatabase db, String locationSetting) {
+        if (locationSetting == null) {
+            return -1;
+        }
+        Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{WeatherContract.LocationEntry._ID},
+                sLocationSettingOnlySelection,
+                new String[]{locationSetting},
+                null,
+                null,
+                null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Runs the whole batch in one transaction.  Nothing is notified until it has committed, and
+     * then each URI that changed is notified once, however many operations touched it; if any
+     * operation fails, the batch is rolled back and nobody hears about it.
+     *
+     * Weather inserts that find the identical row already stored report a count of 0 instead of
+     * a URI, so the caller can tell how much of its forecast was actually new.  Updates of
+     * {@link #stageWeatherRows staged rows} report how many of them were new or changed.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        final ContentProviderResult[] results = new ContentProviderResult[operations.size()];
+        final Batch batch = new Batch();
+        mBatch.set(batch);
+        boolean successful = false;
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < operations.size(); i++) {
+                batch.insertUnchanged = false;
+                results[i] = operations.get(i).apply(this, results, i);
+                if (batch.insertUnchanged) {
+                    results[i] = new ContentProviderResult(0);
+                }
+            }
+            db.setTransactionSuccessful();
+            successful = true;
+        } finally {
+            db.endTransaction();
+            if (!successful) {
+                // A location the batch added may have been looked up before it was rolled back.
+                invalidateLocations();
+            }
+            mBatch.remove();
+            if (batch.writer != null) {
+                batch.writer.close();
+            }
+        }
+        for (Uri uri : batch.changedUris) {
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+        return results;
+    }
+
+    /**
+     * Notifies observers of the URI, or holds the notification back until the running batch
+     * has committed.
+     */
+    private void notifyChange(Uri uri) {
+        Batch batch = mBatch.get();
+        if (batch != null) {
+            batch.changedUris.add(uri);
+        } else {
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+    }
+
+    /**
+     * @return true if every column in values holds the same value in the cursor's current row.
+     */
+    private static boolean matchesStoredRow(Cursor stored, ContentValues values) {
+        for (String column : values.keySet()) {
+            int index = stored.getColumnIndex(column);
+            if (index == -1) {
+                return false;
+            }
+            Object value = values.get(column);
+            if (value == null || stored.isNull(index)) {
+                if (value != null || !stored.isNull(index)) {
+                    return false;
+                }
+            } else if (value instanceof Double || value instanceof Float) {
+                if (stored.getDouble(index) != ((Number) value).doubleValue()) {
+                    return false;
+                }
+            } else if (value instanceof Number) {
+                if (stored.getLong(index) != ((Number) value).longValue()) {
+                    return false;
+                }
+            } else if (!value.toString().equals(stored.getString(index))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     // You do not need to call this method. This is a method specifically to assist the testing
     // framework in running smoothly. You can read more at:
     // http://developer.android.com/reference/android/content/ContentProvider.html#shutdown()
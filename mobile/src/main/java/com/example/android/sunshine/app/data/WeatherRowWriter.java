@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.annotation.TargetApi;
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
+import android.text.format.Time;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/**
+ * Upserts weather rows with two statements compiled once per batch and rebound for every row:
+ * an UPDATE keyed on (date, location) that only touches a row whose values differ, and an
+ * INSERT OR IGNORE for days that aren't stored yet.  Both are served by the UNIQUE
+ * (date, location_id) index, and a row takes at most the two of them.
+ *
+ * This does the same as {@link WeatherProvider#upsertWeather}.  The weather inserts of a batch
+ * share one writer, which saves compiling and parsing the same SQL for every row, and rows the
+ * sync parsed into a {@link WeatherRows} buffer are bound straight from its arrays.
+ */
+@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+class WeatherRowWriter {
+
+    // The value columns, in the order they're bound.  The key columns come after them.
+    private static final String[] VALUE_COLUMNS = {
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES
+    };
+
+    // Bind positions, shared by both statements.  They're numbered parameters, so the UPDATE
+    // can compare against the same values it assigns.
+    private static final int BIND_WEATHER_ID = 1;
+    private static final int BIND_SHORT_DESC = 2;
+    private static final int BIND_MIN_TEMP = 3;
+    private static final int BIND_MAX_TEMP = 4;
+    private static final int BIND_HUMIDITY = 5;
+    private static final int BIND_PRESSURE = 6;
+    private static final int BIND_WIND_SPEED = 7;
+    private static final int BIND_DEGREES = 8;
+    private static final int BIND_DATE = 9;
+    private static final int BIND_LOCATION_ID = 10;
+
+    private static final String SQL_UPDATE_CHANGED;
+    private static final String SQL_INSERT_NEW;
+    private static final String SQL_FIND_ID;
+
+    static {
+        StringBuilder differences = new StringBuilder();
+        StringBuilder assignments = new StringBuilder();
+        StringBuilder columns = new StringBuilder();
+        StringBuilder placeholders = new StringBuilder();
+        for (int i = 0; i < VALUE_COLUMNS.length; i++) {
+            String column = VALUE_COLUMNS[i];
+            String parameter = "?" + (i + 1);
+            differences.append(i > 0 ? " OR " : "").append(column).append(" IS NOT ")
+                    .append(parameter);
+            assignments.append(i > 0 ? ", " : "").append(column).append(" = ").append(parameter);
+            columns.append(column).append(", ");
+            placeholders.append(parameter).append(", ");
+        }
+        String key = WeatherEntry.COLUMN_DATE + " = ?" + BIND_DATE + " AND "
+                + WeatherEntry.COLUMN_LOC_KEY + " = ?" + BIND_LOCATION_ID;
+
+        SQL_UPDATE_CHANGED = "UPDATE " + WeatherEntry.TABLE_NAME + " SET " + assignments
+                + " WHERE " + key + " AND (" + differences + ")";
+        // The table replaces on conflict; OR IGNORE overrides that, so a day that is already
+        // stored is never deleted and written back.
+        SQL_INSERT_NEW = "INSERT OR IGNORE INTO " + WeatherEntry.TABLE_NAME + " (" + columns
+                + WeatherEntry.COLUMN_DATE + ", " + WeatherEntry.COLUMN_LOC_KEY + ") VALUES ("
+                + placeholders + "?" + BIND_DATE + ", ?" + BIND_LOCATION_ID + ")";
+        SQL_FIND_ID = "SELECT " + WeatherEntry._ID + " FROM " + WeatherEntry.TABLE_NAME
+                + " WHERE " + WeatherEntry.COLUMN_DATE + " = ? AND "
+                + WeatherEntry.COLUMN_LOC_KEY + " = ?";
+    }
+
+    // What writeRow did with a row.
+    private static final int ROW_INSERTED = 1;
+    private static final int ROW_UPDATED = 2;
+    private static final int ROW_UNCHANGED = 3;
+
+    private final SQLiteDatabase mDb;
+    private final SQLiteStatement mUpdateChanged;
+    private final SQLiteStatement mInsertNew;
+    // Only compiled for the inserts that need the row's _id back.
+    private SQLiteStatement mFindId;
+    private long mInsertedId;
+
+    // Reused to normalize dates without creating a Time per row.
+    private final Time mTime = new Time();
+
+    WeatherRowWriter(SQLiteDatabase db) {
+        mDb = db;
+        mUpdateChanged = db.compileStatement(SQL_UPDATE_CHANGED);
+        mInsertNew = db.compileStatement(SQL_INSERT_NEW);
+    }
+
+    /**
+     * @return true if the values hold every column of a weather row, which is what
+     * {@link #write(ContentValues, WeatherProvider.UpsertCounts)} needs.
+     */
+    static boolean isCompleteRow(ContentValues values) {
+        for (String column : VALUE_COLUMNS) {
+            if (values.get(column) == null) {
+                return false;
+            }
+        }
+        return values.get(WeatherEntry.COLUMN_DATE) != null
+                && values.get(WeatherEntry.COLUMN_LOC_KEY) != null;
+    }
+
+    /**
+     * Upserts a single complete row, for inserts that come through a batch.
+     *
+     * @return the row's _id.
+     */
+    long write(ContentValues values, WeatherProvider.UpsertCounts counts) {
+        long locationId = values.getAsLong(WeatherEntry.COLUMN_LOC_KEY);
+        long date = normalizeDate(values.getAsLong(WeatherEntry.COLUMN_DATE));
+        int result = writeRow(locationId, date,
+                values.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID),
+                values.getAsString(WeatherEntry.COLUMN_SHORT_DESC),
+                values.getAsDouble(WeatherEntry.COLUMN_MIN_TEMP),
+                values.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP),
+                values.getAsDouble(WeatherEntry.COLUMN_HUMIDITY),
+                values.getAsDouble(WeatherEntry.COLUMN_PRESSURE),
+                values.getAsDouble(WeatherEntry.COLUMN_WIND_SPEED),
+                values.getAsDouble(WeatherEntry.COLUMN_DEGREES));
+        count(counts, result);
+        if (result == ROW_INSERTED) {
+            return mInsertedId;
+        }
+        if (mFindId == null) {
+            mFindId = mDb.compileStatement(SQL_FIND_ID);
+        }
+        mFindId.bindLong(1, date);
+        mFindId.bindLong(2, locationId);
+        return mFindId.simpleQueryForLong();
+    }
+
+    /**
+     * Upserts row i of the buffer, bound straight from its arrays.  Nobody asks for the row's
+     * _id, so unlike {@link #write(ContentValues, WeatherProvider.UpsertCounts)} this never
+     * looks it up.
+     */
+    void write(WeatherRows rows, int i, WeatherProvider.UpsertCounts counts) {
+        count(counts, writeRow(rows.getLocationId(i), normalizeDate(rows.getDate(i)),
+                rows.getWeatherId(i),
+                rows.getShortDesc(i),
+                rows.getMinTemp(i),
+                rows.getMaxTemp(i),
+                rows.getHumidity(i),
+                rows.getPressure(i),
+                rows.getWindSpeed(i),
+                rows.getDegrees(i)));
+    }
+
+    void close() {
+        mUpdateChanged.close();
+        mInsertNew.close();
+        if (mFindId != null) {
+            mFindId.close();
+        }
+    }
+
+    /**
+     * Stores a row whose date is already normalized.  Most of a sync's days are already
+     * stored, so the UPDATE goes first; the INSERT only runs when it changed nothing.
+     */
+    private int writeRow(long locationId, long date, int weatherId, String shortDesc,
+                         double minTemp, double maxTemp, double humidity, double pressure,
+                         double windSpeed, double degrees) {
+        bindRow(mUpdateChanged, locationId, date, weatherId, shortDesc, minTemp, maxTemp,
+                humidity, pressure, windSpeed, degrees);
+        if (mUpdateChanged.executeUpdateDelete() > 0) {
+            return ROW_UPDATED;
+        }
+
+        bindRow(mInsertNew, locationId, date, weatherId, shortDesc, minTemp, maxTemp,
+                humidity, pressure, windSpeed, degrees);
+        mInsertedId = mInsertNew.executeInsert();
+        // Ignored because the day is stored, and the UPDATE found nothing to change in it.
+        return mInsertedId != -1 ? ROW_INSERTED : ROW_UNCHANGED;
+    }
+
+    private static void count(WeatherProvider.UpsertCounts counts, int result) {
+        switch (result) {
+            case ROW_INSERTED:
+                counts.inserted++;
+                break;
+            case ROW_UPDATED:
+                counts.updated++;
+                break;
+            case ROW_UNCHANGED:
+                counts.unchanged++;
+                break;
+        }
+    }
+
+    private static void bindRow(SQLiteStatement statement, long locationId, long date,
+                                int weatherId, String shortDesc, double minTemp, double maxTemp,
+                                double humidity, double pressure, double windSpeed,
+                                double degrees) {
+        statement.bindLong(BIND_WEATHER_ID, weatherId);
+        statement.bindString(BIND_SHORT_DESC, shortDesc);
+        statement.bindDouble(BIND_MIN_TEMP, minTemp);
+        statement.bindDouble(BIND_MAX_TEMP, maxTemp);
+        statement.bindDouble(BIND_HUMIDITY, humidity);
+        statement.bindDouble(BIND_PRESSURE, pressure);
+        statement.bindDouble(BIND_WIND_SPEED, windSpeed);
+        statement.bindDouble(BIND_DEGREES, degrees);
+        statement.bindLong(BIND_DATE, date);
+        statement.bindLong(BIND_LOCATION_ID, locationId);
+    }
+
+    /**
+     * Same as {@link WeatherContract#normalizeDate(long)}.
+     */
+    private long normalizeDate(long date) {
+        mTime.set(date);
+        int julianDay = Time.getJulianDay(date, mTime.gmtoff);
+        return mTime.setJulianDay(julianDay);
+    }
+}
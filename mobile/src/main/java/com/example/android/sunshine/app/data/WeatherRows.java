@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+
+import java.util.Arrays;
+
+/**
+ * A growable buffer of weather rows, one primitive array per column.  The forecast parser fills
+ * it directly and the provider's {@link WeatherRowWriter} binds it straight into its compiled
+ * statements, so a synced day is never boxed into a ContentValues on its way to the database.
+ */
+public class WeatherRows {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int mSize;
+    private long[] mLocationIds;
+    private long[] mDates;
+    private int[] mWeatherIds;
+    private String[] mShortDescs;
+    private double[] mMinTemps;
+    private double[] mMaxTemps;
+    private double[] mHumidities;
+    private double[] mPressures;
+    private double[] mWindSpeeds;
+    private double[] mDegrees;
+
+    public WeatherRows() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public WeatherRows(int capacity) {
+        capacity = Math.max(1, capacity);
+        mLocationIds = new long[capacity];
+        mDates = new long[capacity];
+        mWeatherIds = new int[capacity];
+        mShortDescs = new String[capacity];
+        mMinTemps = new double[capacity];
+        mMaxTemps = new double[capacity];
+        mHumidities = new double[capacity];
+        mPressures = new double[capacity];
+        mWindSpeeds = new double[capacity];
+        mDegrees = new double[capacity];
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Appends a row.
+     *
+     * @return the index of the new row.
+     */
+    public int add(long locationId, long date, int weatherId, String shortDesc,
+                   double minTemp, double maxTemp, double humidity, double pressure,
+                   double windSpeed, double degrees) {
+        ensureCapacity(mSize + 1);
+        int i = mSize++;
+        mLocationIds[i] = locationId;
+        mDates[i] = date;
+        mWeatherIds[i] = weatherId;
+        mShortDescs[i] = shortDesc;
+        mMinTemps[i] = minTemp;
+        mMaxTemps[i] = maxTemp;
+        mHumidities[i] = humidity;
+        mPressures[i] = pressure;
+        mWindSpeeds[i] = windSpeed;
+        mDegrees[i] = degrees;
+        return i;
+    }
+
+    /**
+     * Fills in the location key on every row.
+     */
+    public void setLocationId(long locationId) {
+        Arrays.fill(mLocationIds, 0, mSize, locationId);
+    }
+
+    public long getLocationId(int i) {
+        return mLocationIds[i];
+    }
+
+    public long getDate(int i) {
+        return mDates[i];
+    }
+
+    public int getWeatherId(int i) {
+        return mWeatherIds[i];
+    }
+
+    public String getShortDesc(int i) {
+        return mShortDescs[i];
+    }
+
+    public double getMinTemp(int i) {
+        return mMinTemps[i];
+    }
+
+    public double getMaxTemp(int i) {
+        return mMaxTemps[i];
+    }
+
+    public double getHumidity(int i) {
+        return mHumidities[i];
+    }
+
+    public double getPressure(int i) {
+        return mPressures[i];
+    }
+
+    public double getWindSpeed(int i) {
+        return mWindSpeeds[i];
+    }
+
+    public double getDegrees(int i) {
+        return mDegrees[i];
+    }
+
+    /**
+     * @return row i the way the rest of the provider API expects it, for the devices that
+     * can't run a {@link WeatherRowWriter}.
+     */
+    public ContentValues toContentValues(int i) {
+        ContentValues values = new ContentValues();
+        values.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, mLocationIds[i]);
+        values.put(WeatherContract.WeatherEntry.COLUMN_DATE, mDates[i]);
+        values.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, mWeatherIds[i]);
+        values.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, mShortDescs[i]);
+        values.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, mMinTemps[i]);
+        values.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, mMaxTemps[i]);
+        values.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, mHumidities[i]);
+        values.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, mPressures[i]);
+        values.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, mWindSpeeds[i]);
+        values.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, mDegrees[i]);
+        return values;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= mLocationIds.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, mLocationIds.length * 2);
+        mLocationIds = Arrays.copyOf(mLocationIds, newCapacity);
+        mDates = Arrays.copyOf(mDates, newCapacity);
+        mWeatherIds = Arrays.copyOf(mWeatherIds, newCapacity);
+        mShortDescs = Arrays.copyOf(mShortDescs, newCapacity);
+        mMinTemps = Arrays.copyOf(mMinTemps, newCapacity);
+        mMaxTemps = Arrays.copyOf(mMaxTemps, newCapacity);
+        mHumidities = Arrays.copyOf(mHumidities, newCapacity);
+        mPressures = Arrays.copyOf(mPressures, newCapacity);
+        mWindSpeeds = Arrays.copyOf(mWindSpeeds, newCapacity);
+        mDegrees = Arrays.copyOf(mDegrees, newCapacity);
+    }
+}
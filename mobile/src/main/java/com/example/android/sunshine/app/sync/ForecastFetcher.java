@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import org.json.JSONException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Downloads and parses the forecast for one location.  It doesn't touch the forecast rows, so
+ * several fetches can run at once; storing the results is up to the caller.
+ */
+class ForecastFetcher {
+    private static final String LOG_TAG = ForecastFetcher.class.getSimpleName();
+
+    // Construct the URL for the OpenWeatherMap query
+    // Possible parameters are avaiable at OWM's forecast API page, at
+    // http://openweathermap.org/API#forecast
+    static final String FORECAST_BASE_URL =
+            "http://api.openweathermap.org/data/2.5/forecast/daily?";
+    private static final String QUERY_PARAM = "q";
+    private static final String LAT_PARAM = "lat";
+    private static final String LON_PARAM = "lon";
+    private static final String FORMAT_PARAM = "mode";
+    private static final String UNITS_PARAM = "units";
+    private static final String DAYS_PARAM = "cnt";
+    private static final String APPID_PARAM = "APPID";
+
+    private static final String FORMAT = "json";
+    private static final String UNITS = "metric";
+    private static final int NUM_DAYS = 14;
+    private static final String APPID = "a5ee412adb1db65d6b2e87aec1c8bc26";
+
+    /**
+     * What came of fetching one location.
+     */
+    static class Result {
+        final SavedLocation location;
+        @SunshineSyncAdapter.LocationStatus
+        int status = SunshineSyncAdapter.LOCATION_STATUS_OK;
+        // Only set when there is a new forecast to store.
+        ForecastParser.Forecast forecast;
+        // To be saved once the forecast has been stored.
+        ForecastValidators validators;
+        // How many of the forecast's days were new or changed once it was stored.
+        int rowsWritten;
+
+        Result(SavedLocation location) {
+            this.location = location;
+        }
+    }
+
+    private final Context mContext;
+    private final String mBaseUrl;
+
+    ForecastFetcher(Context context) {
+        this(context, FORECAST_BASE_URL);
+    }
+
+    /**
+     * @param baseUrl Where to send the forecast requests.  Tests point this at a local server.
+     */
+    ForecastFetcher(Context context, String baseUrl) {
+        mContext = context;
+        mBaseUrl = baseUrl;
+    }
+
+    String buildUrl(SavedLocation location) {
+        Uri.Builder uriBuilder = Uri.parse(mBaseUrl).buildUpon();
+
+        // Instead of always building the query based off of the location string, we want to
+        // potentially build a query using a lat/lon value. This will be the case when we are
+        // syncing based off of a new location from the Place Picker API. So we need to check
+        // if we have a lat/lon to work with, and use those when we do. Otherwise, the weather
+        // service may not understand the location address provided by the Place Picker API
+        // and the user could end up with no weather! The horror!
+        if (location.hasCoordinates) {
+            uriBuilder.appendQueryParameter(LAT_PARAM, String.valueOf(location.latitude))
+                    .appendQueryParameter(LON_PARAM, String.valueOf(location.longitude));
+        } else {
+            uriBuilder.appendQueryParameter(QUERY_PARAM, location.setting);
+        }
+
+        return uriBuilder.appendQueryParameter(FORMAT_PARAM, FORMAT)
+                .appendQueryParameter(UNITS_PARAM, UNITS)
+                .appendQueryParameter(DAYS_PARAM, Integer.toString(NUM_DAYS))
+                .appendQueryParameter(APPID_PARAM, APPID)
+                .build()
+                .toString();
+    }
+
+    /**
+     * Fetches the forecast for the location, unless what we have is still fresh or the server
+     * says it hasn't changed.  Never throws: failures are reported through the result's status.
+     */
+    Result fetch(SavedLocation location) {
+        Result result = new Result(location);
+
+        // These two need to be declared outside the try/catch
+        // so that they can be closed in the finally block.
+        HttpURLConnection urlConnection = null;
+        BufferedReader reader = null;
+
+        try {
+            String requestUrl = buildUrl(location);
+            URL url = new URL(requestUrl);
+
+            // If we still have the last response for this exact request, its validators tell us
+            // whether we need to ask again at all.  They are only worth anything while the rows
+            // they describe are still in the database.
+            long now = System.currentTimeMillis();
+            ForecastValidators validators = ForecastValidators.load(mContext, location.setting);
+            if (validators != null
+                    && !(validators.appliesTo(requestUrl) && hasForecastForToday(location.setting))) {
+                ForecastValidators.clear(mContext, location.setting);
+                validators = null;
+            }
+            if (validators != null && validators.isFresh(now)) {
+                Log.d(LOG_TAG, "Forecast for " + location.setting + " is still fresh, skipping");
+                return result;
+            }
+
+            // Create the request to OpenWeatherMap, and open the connection
+            urlConnection = (HttpURLConnection) url.openConnection();
+            urlConnection.setRequestMethod("GET");
+            if (validators != null) {
+                validators.addConditionalHeaders(urlConnection);
+            }
+            urlConnection.connect();
+
+            if (validators != null
+                    && urlConnection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                // Nothing changed since the last sync: no parsing, no database writes and
+                // nobody to tell about it.
+                Log.d(LOG_TAG, "Forecast for " + location.setting + " not modified");
+                validators.revalidated(urlConnection, now).save(mContext, location.setting);
+                return result;
+            }
+
+            InputStream inputStream = urlConnection.getInputStream();
+            if (inputStream == null) {
+                // Nothing to do.
+                return result;
+            }
+
+            ForecastParser.Forecast forecast;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                // Parse the days straight off the connection instead of buffering the document.
+                // An empty stream surfaces here as an EOFException.
+                forecast = ForecastParser.parse(inputStream);
+            } else {
+                // Read the input stream into a String
+                StringBuffer buffer = new StringBuffer();
+                reader = new BufferedReader(new InputStreamReader(inputStream));
+
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
+                    // But it does make debugging a *lot* easier if you print out the completed
+                    // buffer for debugging.
+                    buffer.append(line).append('\n');
+                }
+
+                if (buffer.length() == 0) {
+                    // Stream was empty.  No point in parsing.
+                    result.status = SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN;
+                    return result;
+                }
+                forecast = ForecastParser.parse(buffer.toString());
+            }
+
+            // do we have an error?
+            switch (forecast.messageCode) {
+                case HttpURLConnection.HTTP_OK:
+                    result.forecast = forecast;
+                    result.validators =
+                            ForecastValidators.fromResponse(requestUrl, urlConnection, now);
+                    break;
+                case HttpURLConnection.HTTP_NOT_FOUND:
+                    result.status = SunshineSyncAdapter.LOCATION_STATUS_INVALID;
+                    break;
+                default:
+                    result.status = SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN;
+                    break;
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error ", e);
+            // If the code didn't successfully get the weather data, there's no point in attempting
+            // to store it.
+            result.status = SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN;
+        } catch (JSONException e) {
+            Log.e(LOG_TAG, e.getMessage(), e);
+            result.status = SunshineSyncAdapter.LOCATION_STATUS_SERVER_INVALID;
+        } finally {
+            if (urlConnection != null) {
+                urlConnection.disconnect();
+            }
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (final IOException e) {
+                    Log.e(LOG_TAG, "Error closing stream", e);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return true if the database holds today's forecast for the location.
+     */
+    private boolean hasForecastForToday(String locationSetting) {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
+                        locationSetting, System.currentTimeMillis()),
+                new String[]{WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID},
+                null,
+                null,
+                null);
+        if (cursor == null) {
+            return false;
+        }
+        boolean hasForecast = cursor.moveToFirst();
+        cursor.close();
+        return hasForecast;
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.net.HttpURLConnection;
+import java.util.Locale;
+
+/**
+ * The HTTP cache validators OpenWeatherMap handed us the last time we downloaded the forecast
+ * for a location.  They are kept in their own preferences file, one set per location setting,
+ * and let a sync either skip the request entirely (the response is still within its max-age)
+ * or ask the server for a 304 instead of a full forecast.
+ */
+class ForecastValidators {
+    private static final String PREFS_NAME = "forecast_validators";
+
+    private static final String KEY_URL = "url_";
+    private static final String KEY_ETAG = "etag_";
+    private static final String KEY_LAST_MODIFIED = "last_modified_";
+    private static final String KEY_EXPIRES = "expires_";
+    private static final String KEY_FETCHED = "fetched_";
+
+    private static final String HEADER_CACHE_CONTROL = "Cache-Control";
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    // The request the validators belong to.  If the query changes (say, a new lat/lon for the
+    // same location setting) they no longer apply.
+    final String url;
+    final String etag;
+    final String lastModified;
+    // Milliseconds since the epoch at which the stored response stops being fresh, 0 if the
+    // server didn't say.
+    final long expires;
+    // When we last received a 200 or 304 for this location.
+    final long fetched;
+
+    private ForecastValidators(String url, String etag, String lastModified, long expires,
+                               long fetched) {
+        this.url = url;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.expires = expires;
+        this.fetched = fetched;
+    }
+
+    /**
+     * @return the validators stored for the location, or null if there are none.
+     */
+    static ForecastValidators load(Context context, String locationSetting) {
+        SharedPreferences prefs = getPreferences(context);
+        String url = prefs.getString(KEY_URL + locationSetting, null);
+        if (url == null) {
+            return null;
+        }
+        return new ForecastValidators(url,
+                prefs.getString(KEY_ETAG + locationSetting, null),
+                prefs.getString(KEY_LAST_MODIFIED + locationSetting, null),
+                prefs.getLong(KEY_EXPIRES + locationSetting, 0),
+                prefs.getLong(KEY_FETCHED + locationSetting, 0));
+    }
+
+    /**
+     * Reads the validators off a 200 response.
+     */
+    static ForecastValidators fromResponse(String url, HttpURLConnection connection, long now) {
+        return new ForecastValidators(url,
+                connection.getHeaderField(HEADER_ETAG),
+                connection.getHeaderField(HEADER_LAST_MODIFIED),
+                getExpires(connection, now),
+                now);
+    }
+
+    /**
+     * A 304 confirms the validators we sent; it may carry a new ETag and max-age though.
+     */
+    ForecastValidators revalidated(HttpURLConnection connection, long now) {
+        String newEtag = connection.getHeaderField(HEADER_ETAG);
+        String newLastModified = connection.getHeaderField(HEADER_LAST_MODIFIED);
+        return new ForecastValidators(url,
+                newEtag != null ? newEtag : etag,
+                newLastModified != null ? newLastModified : lastModified,
+                getExpires(connection, now),
+                now);
+    }
+
+    boolean appliesTo(String requestUrl) {
+        return url.equals(requestUrl);
+    }
+
+    boolean isFresh(long now) {
+        return now < expires;
+    }
+
+    /**
+     * Adds the conditional request headers.  Must be called before the connection is opened.
+     */
+    void addConditionalHeaders(HttpURLConnection connection) {
+        if (etag != null) {
+            connection.setRequestProperty(HEADER_IF_NONE_MATCH, etag);
+        }
+        if (lastModified != null) {
+            connection.setRequestProperty(HEADER_IF_MODIFIED_SINCE, lastModified);
+        }
+    }
+
+    void save(Context context, String locationSetting) {
+        getPreferences(context).edit()
+                .putString(KEY_URL + locationSetting, url)
+                .putString(KEY_ETAG + locationSetting, etag)
+                .putString(KEY_LAST_MODIFIED + locationSetting, lastModified)
+                .putLong(KEY_EXPIRES + locationSetting, expires)
+                .putLong(KEY_FETCHED + locationSetting, fetched)
+                .apply();
+    }
+
+    static void clear(Context context, String locationSetting) {
+        getPreferences(context).edit()
+                .remove(KEY_URL + locationSetting)
+                .remove(KEY_ETAG + locationSetting)
+                .remove(KEY_LAST_MODIFIED + locationSetting)
+                .remove(KEY_EXPIRES + locationSetting)
+                .remove(KEY_FETCHED + locationSetting)
+                .apply();
+    }
+
+    private static SharedPreferences getPreferences(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Works out when the response stops being fresh: Cache-Control max-age wins over Expires,
+     * and no-cache or no-store mean we always have to ask.
+     */
+    private static long getExpires(HttpURLConnection connection, long now) {
+        String cacheControl = connection.getHeaderField(HEADER_CACHE_CONTROL);
+        if (cacheControl != null) {
+            for (String directive : cacheControl.split(",")) {
+                directive = directive.trim().toLowerCase(Locale.US);
+                if (directive.equals("no-cache") || directive.equals("no-store")) {
+                    return 0;
+                }
+                if (directive.startsWith("max-age=")) {
+                    try {
+                        return now + 1000L * Long.parseLong(directive.substring(8).trim());
+                    } catch (NumberFormatException e) {
+                        return 0;
+                    }
+                }
+            }
+        }
+        // getExpiration returns 0 when the header is missing or can't be parsed.
+        return connection.getExpiration();
+    }
+}
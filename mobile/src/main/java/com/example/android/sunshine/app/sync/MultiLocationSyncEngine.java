@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.net.Uri;
+import android.os.RemoteException;
+import android.os.SystemClock;
+import android.text.format.Time;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherProvider;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Syncs every saved location at once.  The downloads run on a fixed pool of threads, since they
+ * spend nearly all their time waiting on the network; the rows they produce are then written in
+ * a single batch, which the provider runs as one transaction with one change notification.
+ */
+class MultiLocationSyncEngine {
+    private static final String LOG_TAG = MultiLocationSyncEngine.class.getSimpleName();
+
+    static final int DEFAULT_PARALLELISM = 4;
+
+    /**
+     * What a sync did, location by location.
+     */
+    static class Report {
+        // In the same order as the locations that were synced.  Locations whose download was
+        // cut short by the sync being cancelled are missing.
+        final List<ForecastFetcher.Result> results = new ArrayList<>();
+        // Rows that were new or changed; identical days aren't rewritten.
+        int rowsWritten;
+        long elapsedMillis;
+
+        /**
+         * @return the result for the preferred location, or null if it wasn't synced.
+         */
+        ForecastFetcher.Result getPreferredResult() {
+            for (ForecastFetcher.Result result : results) {
+                if (result.location.preferred) {
+                    return result;
+                }
+            }
+            return null;
+        }
+
+        double getLocationsPerSecond() {
+            return results.size() * 1000.0 / Math.max(1, elapsedMillis);
+        }
+    }
+
+    private final Context mContext;
+    private final ForecastFetcher mFetcher;
+    private final int mParallelism;
+
+    MultiLocationSyncEngine(Context context, ForecastFetcher fetcher, int parallelism) {
+        mContext = context;
+        mFetcher = fetcher;
+        mParallelism = Math.max(1, parallelism);
+    }
+
+    Report sync(List<SavedLocation> locations) {
+        Report report = new Report();
+        long start = SystemClock.elapsedRealtime();
+        if (locations.isEmpty()) {
+            return report;
+        }
+
+        ExecutorService executor =
+                Executors.newFixedThreadPool(Math.min(mParallelism, locations.size()));
+        try {
+            List<Future<ForecastFetcher.Result>> futures = new ArrayList<>(locations.size());
+            for (final SavedLocation location : locations) {
+                futures.add(executor.submit(new Callable<ForecastFetcher.Result>() {
+                    @Override
+                    public ForecastFetcher.Result call() {
+                        return mFetcher.fetch(location);
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    report.results.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    Log.e(LOG_TAG, "Error fetching " + locations.get(i).setting, e);
+                    ForecastFetcher.Result failed = new ForecastFetcher.Result(locations.get(i));
+                    failed.status = SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN;
+                    report.results.add(failed);
+                }
+            }
+        } catch (InterruptedException e) {
+            // The sync was cancelled.  Store whatever already came in.
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        report.rowsWritten = store(report.results);
+        report.elapsedMillis = SystemClock.elapsedRealtime() - start;
+        Log.d(LOG_TAG, String.format(Locale.US,
+                "Synced %d locations in %d ms (%.1f locations/s, parallelism %d), %d rows written",
+                report.results.size(), report.elapsedMillis, report.getLocationsPerSecond(),
+                mParallelism, report.rowsWritten));
+        return report;
+    }
+
+    /**
+     * Writes every new forecast, the locations they belong to and the purge of the days that are
+     * over as one batch.  The provider applies it in a single transaction, so a sync lands
+     * completely or not at all, and observers hear about it once per URI when it's done.  Each
+     * forecast's days go in as one operation on its staged buffer, so the provider binds them
+     * straight from the parsed arrays.
+     *
+     * @return the number of rows that were new or differed from what was stored.
+     */
+    private int store(List<ForecastFetcher.Result> results) {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        // Which operation wrote each result's days, to count them afterwards.
+        List<ForecastFetcher.Result> stored = new ArrayList<>();
+        List<Integer> weatherOperations = new ArrayList<>();
+        List<Uri> staged = new ArrayList<>();
+        try {
+            for (ForecastFetcher.Result result : results) {
+                if (result.forecast == null) {
+                    continue;
+                }
+                SavedLocation location = result.location;
+                ForecastParser.Forecast forecast = result.forecast;
+
+                // A location we haven't stored yet is inserted first, and its days refer back to
+                // it.  The provider hands back the existing row if someone added it in the
+                // meantime.
+                int locationOperation = -1;
+                if (location.id == SavedLocation.NO_ID) {
+                    locationOperation = operations.size();
+                    operations.add(ContentProviderOperation
+                            .newInsert(WeatherContract.LocationEntry.CONTENT_URI)
+                            .withValue(WeatherContract.LocationEntry.COLUMN_CITY_NAME, forecast.cityName)
+                            .withValue(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, location.setting)
+                            .withValue(WeatherContract.LocationEntry.COLUMN_COORD_LAT, forecast.cityLatitude)
+                            .withValue(WeatherContract.LocationEntry.COLUMN_COORD_LONG, forecast.cityLongitude)
+                            .build());
+                }
+
+                Uri rows = WeatherProvider.stageWeatherRows(forecast.days);
+                staged.add(rows);
+                ContentProviderOperation.Builder write = ContentProviderOperation.newUpdate(rows);
+                if (locationOperation != -1) {
+                    write.withValueBackReference(
+                            WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationOperation);
+                } else {
+                    write.withValue(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, location.id);
+                }
+                stored.add(result);
+                weatherOperations.add(operations.size());
+                operations.add(write.build());
+            }
+            if (operations.isEmpty()) {
+                return 0;
+            }
+
+            // delete old data so we don't build up an endless history
+            Time dayTime = new Time();
+            dayTime.setToNow();
+            int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
+            operations.add(ContentProviderOperation
+                    .newDelete(WeatherContract.WeatherEntry.CONTENT_URI)
+                    .withSelection(WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
+                            new String[] {Long.toString(new Time().setJulianDay(julianStartDay-1))})
+                    .build());
+
+            ContentProviderResult[] applied;
+            try {
+                applied = mContext.getContentResolver().applyBatch(
+                        WeatherContract.CONTENT_AUTHORITY, operations);
+            } catch (RemoteException | OperationApplicationException e) {
+                // Nothing was written, so keep the old validators and download it all again next
+                // time.
+                Log.e(LOG_TAG, "Error storing " + operations.size() + " operations", e);
+                return 0;
+            }
+
+            // Each forecast's operation counts the days that weren't already stored as they are.
+            int rowsChanged = 0;
+            for (int r = 0; r < stored.size(); r++) {
+                stored.get(r).rowsWritten = applied[weatherOperations.get(r)].count;
+                rowsChanged += stored.get(r).rowsWritten;
+            }
+
+            // Only now that the rows are in is it safe to revalidate against them next time.
+            for (ForecastFetcher.Result result : results) {
+                if (result.forecast != null) {
+                    result.validators.save(mContext, result.location.setting);
+                }
+            }
+            return rowsChanged;
+        } finally {
+            for (Uri rows : staged) {
+                WeatherProvider.unstageWeatherRows(rows);
+            }
+        }
+    }
+}
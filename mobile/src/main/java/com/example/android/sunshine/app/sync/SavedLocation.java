@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A location we keep a forecast for.  The saved locations are simply the rows of the location
+ * table: every location the user has picked stays there, so we keep syncing it and switching
+ * back to it is instant.
+ */
+class SavedLocation {
+    static final long NO_ID = -1;
+
+    private static final String[] LOCATION_COLUMNS = {
+            WeatherContract.LocationEntry._ID,
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+            WeatherContract.LocationEntry.COLUMN_COORD_LONG
+    };
+
+    // these indices must match the projection
+    private static final int COL_LOCATION_ID = 0;
+    private static final int COL_LOCATION_SETTING = 1;
+    private static final int COL_COORD_LAT = 2;
+    private static final int COL_COORD_LONG = 3;
+
+    // The row id in the location table, or NO_ID if we have never stored a forecast for it.
+    final long id;
+    final String setting;
+    // The preferred location's come from the Place Picker, if it was picked there.  The others
+    // are queried by the coordinates stored for them, so a name that geocodes differently
+    // later can't move them somewhere else.
+    final boolean hasCoordinates;
+    final float latitude;
+    final float longitude;
+    final boolean preferred;
+
+    SavedLocation(long id, String setting, boolean preferred) {
+        this(id, setting, preferred, false, 0, 0);
+    }
+
+    SavedLocation(long id, String setting, boolean preferred, boolean hasCoordinates,
+                  float latitude, float longitude) {
+        this.id = id;
+        this.setting = setting;
+        this.preferred = preferred;
+        this.hasCoordinates = hasCoordinates;
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
+    /**
+     * @return the preferred location first, followed by every other location in the database.
+     */
+    static List<SavedLocation> loadAll(Context context) {
+        String preferredSetting = Utility.getPreferredLocation(context);
+        long preferredId = NO_ID;
+
+        List<SavedLocation> locations = new ArrayList<>();
+        Cursor cursor = context.getContentResolver().query(
+                WeatherContract.LocationEntry.CONTENT_URI,
+                LOCATION_COLUMNS,
+                null,
+                null,
+                WeatherContract.LocationEntry._ID + " ASC");
+        if (cursor != null) {
+            while (cursor.moveToNext()) {
+                long id = cursor.getLong(COL_LOCATION_ID);
+                String setting = cursor.getString(COL_LOCATION_SETTING);
+                if (setting.equals(preferredSetting)) {
+                    preferredId = id;
+                } else if (cursor.isNull(COL_COORD_LAT) || cursor.isNull(COL_COORD_LONG)) {
+                    locations.add(new SavedLocation(id, setting, false));
+                } else {
+                    locations.add(new SavedLocation(id, setting, false, true,
+                            cursor.getFloat(COL_COORD_LAT), cursor.getFloat(COL_COORD_LONG)));
+                }
+            }
+            cursor.close();
+        }
+
+        SavedLocation preferred;
+        if (Utility.isLocationLatLonAvailable(context)) {
+            preferred = new SavedLocation(preferredId, preferredSetting, true, true,
+                    Utility.getLocationLatitude(context), Utility.getLocationLongitude(context));
+        } else {
+            preferred = new SavedLocation(preferredId, preferredSetting, true);
+        }
+        locations.add(0, preferred);
+        return locations;
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collapses bursts of immediate sync requests into as few network syncs as possible.
+ *
+ * A request that arrives while an earlier one is still waiting to start, and within the
+ * coalescing window of it, simply joins that sync: it hasn't read the settings yet, so it will
+ * pick up whatever caused the new request.  A request that arrives while a sync is already
+ * running can't join it, since that sync may have read stale settings, so it is held back and
+ * a single trailing sync is started once the running one finishes.  Every further request
+ * until then joins the trailing sync.
+ *
+ * A caller that needs to know when its request has been served passes a {@link Listener},
+ * which is called once the sync that served it, whichever one that turned out to be, is over.
+ * The sync manager may never run the sync we asked for (no account, or sync turned off), so
+ * listeners still waiting when the next request finds the coalescing window has run out are
+ * told their sync was lost, rather than being held until a sync finally starts.
+ */
+public class SyncCoordinator {
+    private static final String LOG_TAG = SyncCoordinator.class.getSimpleName();
+
+    public static final long DEFAULT_COALESCE_WINDOW_MILLIS = 5 * 1000;
+
+    private static final int STATE_IDLE = 0;
+    private static final int STATE_REQUESTED = 1;
+    private static final int STATE_RUNNING = 2;
+    private static final int STATE_RUNNING_WITH_TRAILING = 3;
+
+    public interface Listener {
+        /**
+         * Called on the sync thread once the sync that served a request is over, whatever its
+         * outcome, or on a requesting thread if the sync it was waiting for never started.
+         *
+         * @param synced false if the request was given up on without a sync running for it.
+         */
+        void onSyncFinished(boolean synced);
+    }
+
+    /**
+     * Actually asks for a sync; the sync manager, except in tests.
+     */
+    interface Starter {
+        void requestSync(Context context);
+    }
+
+    private static SyncCoordinator sInstance;
+
+    private final Starter mStarter;
+    // Waiting for the next sync to start, and waiting for the running one to finish.
+    private final List<Listener> mWaiting = new ArrayList<>();
+    private final List<Listener> mRunning = new ArrayList<>();
+
+    private long mCoalesceWindowMillis = DEFAULT_COALESCE_WINDOW_MILLIS;
+    private int mState = STATE_IDLE;
+    private long mRequestedAt;
+
+    private long mRequestedCount;
+    private long mMergedCount;
+    private long mExecutedCount;
+
+    public static synchronized SyncCoordinator getInstance() {
+        if (sInstance == null) {
+            sInstance = new SyncCoordinator(new Starter() {
+                @Override
+                public void requestSync(Context context) {
+                    SunshineSyncAdapter.requestExpeditedSync(context);
+                }
+            });
+        }
+        return sInstance;
+    }
+
+    SyncCoordinator(Starter starter) {
+        mStarter = starter;
+    }
+
+    /**
+     * Sets how long a requested sync keeps accepting new requests before it is considered
+     * lost (for instance, if the sync manager never ran it) and a fresh one is requested.
+     */
+    public synchronized void setCoalesceWindow(long millis) {
+        mCoalesceWindowMillis = millis;
+    }
+
+    /**
+     * Asks for an immediate sync, unless one that will satisfy this request is already pending.
+     *
+     * @param context The context used to access the account service
+     */
+    public void requestSync(Context context) {
+        requestSync(context, null);
+    }
+
+    /**
+     * Asks for an immediate sync, unless one that will satisfy this request is already pending.
+     *
+     * @param context The context used to access the account service
+     * @param listener told when the sync that served this request is over.
+     */
+    public void requestSync(Context context, @Nullable Listener listener) {
+        boolean start;
+        List<Listener> lost = null;
+        synchronized (this) {
+            mRequestedCount++;
+            switch (mState) {
+                case STATE_REQUESTED:
+                    if (SystemClock.elapsedRealtime() - mRequestedAt < mCoalesceWindowMillis) {
+                        mMergedCount++;
+                        start = false;
+                    } else {
+                        // The sync we asked for never started, so whoever was waiting for it
+                        // hears so, and this request asks afresh.
+                        lost = new ArrayList<>(mWaiting);
+                        mWaiting.clear();
+                        mRequestedAt = SystemClock.elapsedRealtime();
+                        start = true;
+                    }
+                    break;
+                case STATE_RUNNING:
+                    mState = STATE_RUNNING_WITH_TRAILING;
+                    start = false;
+                    break;
+                case STATE_RUNNING_WITH_TRAILING:
+                    mMergedCount++;
+                    start = false;
+                    break;
+                default:
+                    mState = STATE_REQUESTED;
+                    mRequestedAt = SystemClock.elapsedRealtime();
+                    start = true;
+            }
+            if (listener != null) {
+                mWaiting.add(listener);
+            }
+        }
+        if (lost != null) {
+            for (Listener waiter : lost) {
+                waiter.onSyncFinished(false);
+            }
+        }
+        if (start) {
+            mStarter.requestSync(context);
+        }
+    }
+
+    /**
+     * Called by the sync adapter as a sync (requested or periodic) begins.
+     */
+    synchronized void onSyncStarted() {
+        mExecutedCount++;
+        if (mState != STATE_RUNNING_WITH_TRAILING) {
+            mState = STATE_RUNNING;
+            // Whatever was waiting is served by this sync, even a periodic one.
+            mRunning.addAll(mWaiting);
+            mWaiting.clear();
+        }
+    }
+
+    /**
+     * Called by the sync adapter when a sync is over, whatever its outcome.
+     */
+    void onSyncFinished(Context context) {
+        boolean startTrailing;
+        List<Listener> served;
+        synchronized (this) {
+            served = new ArrayList<>(mRunning);
+            mRunning.clear();
+            startTrailing = mState == STATE_RUNNING_WITH_TRAILING;
+            if (startTrailing) {
+                mState = STATE_REQUESTED;
+                mRequestedAt = SystemClock.elapsedRealtime();
+            } else {
+                mState = STATE_IDLE;
+            }
+            Log.d(LOG_TAG, "Sync finished. Requested: " + mRequestedCount
+                    + ", merged: " + mMergedCount + ", executed: " + mExecutedCount);
+        }
+        for (Listener listener : served) {
+            listener.onSyncFinished(true);
+        }
+        if (startTrailing) {
+            mStarter.requestSync(context);
+        }
+    }
+
+    /**
+     * @return how many times an immediate sync has been asked for.
+     */
+    public synchronized long getRequestedCount() {
+        return mRequestedCount;
+    }
+
+    /**
+     * @return how many requests were folded into a sync that was already going to happen.
+     */
+    public synchronized long getMergedCount() {
+        return mMergedCount;
+    }
+
+    /**
+     * @return how many syncs actually ran, periodic ones included.
+     */
+    public synchronized long getExecutedCount() {
+        return mExecutedCount;
+    }
+}
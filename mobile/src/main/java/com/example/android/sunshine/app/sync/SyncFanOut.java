@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hands what a sync has to tell everyone else (the widgets, Muzei, the notification, the watch)
+ * to workers of their own once the new forecast is stored, so the sync itself only takes as
+ * long as the network and the database.
+ *
+ * Each consumer gets a single thread and room for one more run behind the one in progress.
+ * A newer run replaces one still waiting, since it would only redo the same work with newer
+ * data.  A run that hasn't finished within its consumer's timeout, counted from when it was
+ * dispatched, is cancelled: never started if it's still waiting, interrupted if it's running.
+ * An interrupt only stops work that checks for one, and provider queries and blocking connects
+ * don't; such a run is counted as timed out but goes on holding its consumer's worker until it
+ * returns, and the next run waits behind it.  How long each run took, from dispatch to finish
+ * or timeout, is kept per consumer.
+ *
+ * The runs happen after onPerformSync has returned and the sync's wake lock is gone, so each
+ * holds a partial wake lock of its own from dispatch until it's done, capped at its timeout.
+ */
+public class SyncFanOut {
+    private static final String LOG_TAG = SyncFanOut.class.getSimpleName();
+
+    // How long an idle consumer's thread is kept for the next sync.
+    static final long IDLE_THREAD_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * How a consumer's runs have gone.
+     */
+    public static class Stats {
+        public int completed;
+        public int failed;
+        public int timedOut;
+        // Replaced by a newer run before they started.
+        public int dropped;
+        public long lastLatencyMillis;
+        public long maxLatencyMillis;
+        public long totalLatencyMillis;
+
+        Stats copy() {
+            Stats copy = new Stats();
+            copy.completed = completed;
+            copy.failed = failed;
+            copy.timedOut = timedOut;
+            copy.dropped = dropped;
+            copy.lastLatencyMillis = lastLatencyMillis;
+            copy.maxLatencyMillis = maxLatencyMillis;
+            copy.totalLatencyMillis = totalLatencyMillis;
+            return copy;
+        }
+    }
+
+    private static SyncFanOut sInstance;
+
+    private final PowerManager mPowerManager;
+    private final Map<String, Consumer> mConsumers = new HashMap<>();
+    private final ScheduledExecutorService mWatchdog =
+            Executors.newSingleThreadScheduledExecutor();
+
+    public static synchronized SyncFanOut getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new SyncFanOut((PowerManager) context.getApplicationContext()
+                    .getSystemService(Context.POWER_SERVICE));
+        }
+        return sInstance;
+    }
+
+    SyncFanOut(PowerManager powerManager) {
+        mPowerManager = powerManager;
+    }
+
+    /**
+     * Queues a run of a consumer on its worker and returns right away.
+     *
+     * @param consumer names the worker; runs for the same consumer never overlap.
+     * @param timeoutMillis how long after now the run is cancelled if it isn't done, and the
+     *                      longest it keeps the device awake.
+     */
+    public void dispatch(String consumer, long timeoutMillis, Runnable work) {
+        getConsumer(consumer).dispatch(work, timeoutMillis);
+    }
+
+    /**
+     * @return a copy of how the consumer's runs have gone so far.
+     */
+    public Stats getStats(String consumer) {
+        Consumer c = getConsumer(consumer);
+        synchronized (c) {
+            return c.stats.copy();
+        }
+    }
+
+    private synchronized Consumer getConsumer(String name) {
+        Consumer consumer = mConsumers.get(name);
+        if (consumer == null) {
+            consumer = new Consumer(name);
+            mConsumers.put(name, consumer);
+        }
+        return consumer;
+    }
+
+    private class Consumer implements RejectedExecutionHandler {
+        final String name;
+        final Stats stats = new Stats();
+        final ThreadPoolExecutor worker;
+
+        Consumer(String name) {
+            this.name = name;
+            worker = new ThreadPoolExecutor(1, 1, IDLE_THREAD_MILLIS, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(1), this);
+            worker.allowCoreThreadTimeOut(true);
+        }
+
+        void dispatch(Runnable work, long timeoutMillis) {
+            // Not reference counted, so the release when the run is done is harmless if the
+            // timeout already let go of it.
+            PowerManager.WakeLock wakeLock = mPowerManager.newWakeLock(
+                    PowerManager.PARTIAL_WAKE_LOCK, LOG_TAG + ":" + name);
+            wakeLock.setReferenceCounted(false);
+            wakeLock.acquire(timeoutMillis);
+            final Run run = new Run(this, work, wakeLock);
+            worker.execute(run);
+            mWatchdog.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    run.cancel(true);
+                }
+            }, timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void rejectedExecution(Runnable newer, ThreadPoolExecutor executor) {
+            // The queue only holds one, so this replaces whatever is waiting.
+            Runnable waiting = executor.getQueue().poll();
+            if (waiting instanceof Run) {
+                ((Run) waiting).dropped = true;
+                ((Run) waiting).cancel(false);
+            }
+            executor.execute(newer);
+        }
+
+        synchronized void record(Run run) {
+            // A cancelled run was either replaced while it waited or ran out of time.
+            if (run.isCancelled() && run.dropped) {
+                stats.dropped++;
+                return;
+            }
+            long latency = SystemClock.elapsedRealtime() - run.dispatchedAt;
+            stats.lastLatencyMillis = latency;
+            stats.maxLatencyMillis = Math.max(stats.maxLatencyMillis, latency);
+            stats.totalLatencyMillis += latency;
+            if (run.isCancelled()) {
+                stats.timedOut++;
+                Log.w(LOG_TAG, name + " timed out after " + latency + "ms");
+                return;
+            }
+            try {
+                run.get();
+                stats.completed++;
+                Log.d(LOG_TAG, name + " done in " + latency + "ms");
+            } catch (ExecutionException e) {
+                stats.failed++;
+                Log.e(LOG_TAG, name + " failed after " + latency + "ms", e.getCause());
+            } catch (InterruptedException e) {
+                // Can't happen; the run is done.
+            }
+        }
+    }
+
+    private static class Run extends FutureTask<Void> {
+        final Consumer consumer;
+        final PowerManager.WakeLock wakeLock;
+        final long dispatchedAt = SystemClock.elapsedRealtime();
+        volatile boolean dropped;
+
+        Run(Consumer consumer, Runnable work, PowerManager.WakeLock wakeLock) {
+            super(work, null);
+            this.consumer = consumer;
+            this.wakeLock = wakeLock;
+        }
+
+        @Override
+        protected void done() {
+            // Done, dropped or timed out; a timed out run that ignores interrupts goes on
+            // without keeping the device awake.
+            wakeLock.release();
+            consumer.record(this);
+        }
+    }
+}
@@ -2,25 +2,40 @@ package com.example.android.sunshine.app.sync;
 
 import android.util.Log;
 
-import com.google.android.gms.wearable.DataEvent;
-import com.google.android.gms.wearable.DataEventBuffer;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.shared.ForecastPayload;
+import com.example.android.sunshine.shared.WearableProtocol;
+import com.google.android.gms.wearable.MessageEvent;
 import com.google.android.gms.wearable.WearableListenerService;
 
+/**
+ * Answers the watch's requests for the forecast.  What's in the database goes straight back to
+ * the watch that asked, so a tap on the watch face updates in well under a second; only if it's
+ * stale is a sync started, and whatever it brings reaches the watch as the usual DataItem.
+ */
 public class WearRequestListenerService extends WearableListenerService {
-    private static final String WEATHER_REQUEST_PATH = "/weather-request";
     private final static String LOG_TAG = "SunshineWatchService";
 
 
     @Override
-    public void onDataChanged(DataEventBuffer dataEvents) {
-        Log.d(LOG_TAG, "onDataChanged request made from wearable");
-        for(DataEvent dataEvent : dataEvents){
-            if(dataEvent.getType() == DataEvent.TYPE_CHANGED){
-                if(dataEvent.getDataItem().getUri().getPath().equals(WEATHER_REQUEST_PATH)){
-                    Log.d(LOG_TAG, "onDataChanged data changed");
-                    SunshineSyncAdapter.syncImmediately(this);
-                }
-            }
+    public void onMessageReceived(MessageEvent messageEvent) {
+        if (!messageEvent.getPath().equals(WearableProtocol.WEATHER_REQUEST_PATH)) {
+            return;
+        }
+        // This runs on a background thread, so reading the provider and replying can block.
+        String locationSetting = Utility.getPreferredLocation(this);
+        long now = System.currentTimeMillis();
+        boolean fresh = WearableForecast.isFresh(this, locationSetting, now);
+        ForecastPayload payload = WearableForecast.fromProvider(this, locationSetting, now);
+        Log.d(LOG_TAG, "Weather requested from wearable, cached forecast is "
+                + (payload == null ? "missing" : fresh ? "fresh" : "stale"));
+
+        if (payload != null) {
+            WearableConnection.getInstance(this).sendMessage(messageEvent.getSourceNodeId(),
+                    WearableProtocol.WEATHER_RESPONSE_PATH, payload.toByteArray());
+        }
+        if (payload == null || !fresh) {
+            SyncCoordinator.getInstance().requestSync(this);
         }
     }
 
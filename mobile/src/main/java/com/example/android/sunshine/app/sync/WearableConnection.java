@@ -0,0 +1,348 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.common.api.PendingResult;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.PutDataRequest;
+import com.google.android.gms.wearable.Wearable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The phone's one connection to the watch.
+ *
+ * Writes are queued with {@link #put} and go out together on the next {@link #flush}, which
+ * connects first if it has to, waiting no longer than {@link #CONNECT_TIMEOUT_MILLIS}.  A write
+ * to a path that already has one waiting replaces it, since a DataItem only ever holds its
+ * latest value.  Writes that can't go out because the connection failed stay queued for the
+ * next flush.  Once the queue is empty the connection is kept for {@link #IDLE_DISCONNECT_MILLIS}
+ * so a burst of syncs shares it, and then dropped so it doesn't keep the radio busy.
+ *
+ * Messages, which only make sense to a watch that's there to get them, aren't queued;
+ * {@link #sendMessage} sends them right away over the same connection.
+ *
+ * Flushing and sending block, so they're only called from background threads such as the sync
+ * adapter's.
+ */
+public class WearableConnection {
+    private static final String LOG_TAG = WearableConnection.class.getSimpleName();
+
+    static final long CONNECT_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    static final long PUT_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    static final long IDLE_DISCONNECT_MILLIS = TimeUnit.MINUTES.toMillis(2);
+
+    /**
+     * What the connection sits on; the Wearable API, except in tests.
+     */
+    interface Link {
+        int CONNECTED = 0;
+        // Worth trying again later, like when the watch is out of range.
+        int FAILED = 1;
+        // Never going to work on this phone, like when there is no Android Wear app.
+        int UNAVAILABLE = 2;
+
+        boolean isConnected();
+
+        /**
+         * Connects, blocking for no longer than the timeout.
+         *
+         * @return {@link #CONNECTED}, {@link #FAILED} or {@link #UNAVAILABLE}.
+         */
+        int connect(long timeoutMillis);
+
+        void disconnect();
+
+        /**
+         * Sends the requests together and waits, no longer than the timeout in all, for the
+         * Data Layer to accept them.
+         *
+         * @return whether each request was accepted.
+         */
+        boolean[] putAll(List<PutDataRequest> requests, long timeoutMillis);
+
+        /**
+         * Sends a message to a node, waiting no longer than the timeout for it to go out.
+         *
+         * @return whether it went out.
+         */
+        boolean sendMessage(String nodeId, String path, byte[] data, long timeoutMillis);
+    }
+
+    private static WearableConnection sInstance;
+
+    private final Link mLink;
+    private final long mIdleDisconnectMillis;
+    private final ScheduledExecutorService mIdleExecutor =
+            Executors.newSingleThreadScheduledExecutor();
+    // Guards the link, so only one flush or message talks to it at a time.
+    private final Object mFlushLock = new Object();
+
+    // Waiting writes by path, oldest first, each with what to run once it's accepted.
+    private final LinkedHashMap<String, PendingWrite> mPending = new LinkedHashMap<>();
+    private ScheduledFuture<?> mIdleDisconnect;
+
+    private long mSentCount;
+    private long mDroppedCount;
+    private long mReplacedCount;
+
+    private static class PendingWrite {
+        final PutDataRequest request;
+        final Runnable onSent;
+
+        PendingWrite(PutDataRequest request, Runnable onSent) {
+            this.request = request;
+            this.onSent = onSent;
+        }
+    }
+
+    public static synchronized WearableConnection getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new WearableConnection(new GoogleApiLink(context.getApplicationContext()),
+                    IDLE_DISCONNECT_MILLIS);
+        }
+        return sInstance;
+    }
+
+    WearableConnection(Link link, long idleDisconnectMillis) {
+        mLink = link;
+        mIdleDisconnectMillis = idleDisconnectMillis;
+    }
+
+    /**
+     * Queues a write for the next {@link #flush()}.
+     *
+     * @param onSent run on the flushing thread once the Data Layer has accepted the write; not
+     *               run if it was replaced by a newer write or dropped.
+     */
+    public synchronized void put(PutDataRequest request, @Nullable Runnable onSent) {
+        PendingWrite replaced = mPending.remove(request.getUri().getPath());
+        if (replaced != null) {
+            mReplacedCount++;
+        }
+        mPending.put(request.getUri().getPath(), new PendingWrite(request, onSent));
+    }
+
+    /**
+     * Sends every queued write in one batch, connecting first if need be.  Blocks.
+     *
+     * @return how many writes the Data Layer accepted.
+     */
+    public int flush() {
+        synchronized (mFlushLock) {
+            List<PendingWrite> writes;
+            synchronized (this) {
+                if (mPending.isEmpty()) {
+                    return 0;
+                }
+                cancelIdleDisconnect();
+                writes = new ArrayList<>(mPending.values());
+            }
+
+            if (!mLink.isConnected()) {
+                int result = mLink.connect(CONNECT_TIMEOUT_MILLIS);
+                if (result != Link.CONNECTED) {
+                    synchronized (this) {
+                        if (result == Link.UNAVAILABLE) {
+                            // Holding on to them would only leak.
+                            mDroppedCount += mPending.size();
+                            mPending.clear();
+                        }
+                        Log.d(LOG_TAG, "Couldn't connect to the wearable, "
+                                + mPending.size() + " writes kept for later");
+                    }
+                    return 0;
+                }
+            }
+
+            List<PutDataRequest> requests = new ArrayList<>(writes.size());
+            for (PendingWrite write : writes) {
+                requests.add(write.request);
+            }
+            boolean[] accepted = mLink.putAll(requests, PUT_TIMEOUT_MILLIS);
+
+            int sent = 0;
+            synchronized (this) {
+                for (int i = 0; i < writes.size(); i++) {
+                    PendingWrite write = writes.get(i);
+                    String path = write.request.getUri().getPath();
+                    // A newer write to the same path may have come in while this one was out.
+                    if (mPending.get(path) == write) {
+                        mPending.remove(path);
+                    }
+                    if (accepted[i]) {
+                        sent++;
+                    } else {
+                        mDroppedCount++;
+                    }
+                }
+                mSentCount += sent;
+                Log.d(LOG_TAG, "Flushed " + writes.size() + " writes to the wearable. Sent: "
+                        + mSentCount + ", dropped: " + mDroppedCount
+                        + ", replaced: " + mReplacedCount);
+                scheduleIdleDisconnect();
+            }
+            for (int i = 0; i < writes.size(); i++) {
+                if (accepted[i] && writes.get(i).onSent != null) {
+                    writes.get(i).onSent.run();
+                }
+            }
+            return sent;
+        }
+    }
+
+    /**
+     * Sends a message to a node straight away, connecting first if need be.  Blocks.
+     *
+     * @return whether the message went out.
+     */
+    public boolean sendMessage(String nodeId, String path, byte[] data) {
+        synchronized (mFlushLock) {
+            synchronized (this) {
+                cancelIdleDisconnect();
+            }
+            boolean sent = (mLink.isConnected()
+                    || mLink.connect(CONNECT_TIMEOUT_MILLIS) == Link.CONNECTED)
+                    && mLink.sendMessage(nodeId, path, data, PUT_TIMEOUT_MILLIS);
+            synchronized (this) {
+                if (sent) {
+                    mSentCount++;
+                } else {
+                    mDroppedCount++;
+                }
+                scheduleIdleDisconnect();
+            }
+            return sent;
+        }
+    }
+
+    private void cancelIdleDisconnect() {
+        if (mIdleDisconnect != null) {
+            mIdleDisconnect.cancel(false);
+            mIdleDisconnect = null;
+        }
+    }
+
+    private void scheduleIdleDisconnect() {
+        cancelIdleDisconnect();
+        mIdleDisconnect = mIdleExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mFlushLock) {
+                    synchronized (WearableConnection.this) {
+                        if (!mPending.isEmpty()) {
+                            // A flush is on its way; leave the connection to it.
+                            return;
+                        }
+                        mIdleDisconnect = null;
+                    }
+                    mLink.disconnect();
+                }
+            }
+        }, mIdleDisconnectMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized int getPendingCount() {
+        return mPending.size();
+    }
+
+    /**
+     * @return how many writes and messages the Data Layer has accepted.
+     */
+    public synchronized long getSentCount() {
+        return mSentCount;
+    }
+
+    /**
+     * @return how many writes were given up on, rejected or with no Wear API to send them to.
+     */
+    public synchronized long getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    /**
+     * @return how many writes were replaced by a newer one to the same path before going out.
+     */
+    public synchronized long getReplacedCount() {
+        return mReplacedCount;
+    }
+
+    private static class GoogleApiLink implements Link {
+        private final GoogleApiClient mClient;
+
+        GoogleApiLink(Context context) {
+            mClient = new GoogleApiClient.Builder(context)
+                    .addApi(Wearable.API)
+                    .build();
+        }
+
+        @Override
+        public boolean isConnected() {
+            return mClient.isConnected();
+        }
+
+        @Override
+        public int connect(long timeoutMillis) {
+            ConnectionResult result = mClient.blockingConnect(timeoutMillis, TimeUnit.MILLISECONDS);
+            if (result.isSuccess()) {
+                return CONNECTED;
+            }
+            Log.d(LOG_TAG, "Wearable connection failed: " + result);
+            return result.getErrorCode() == ConnectionResult.API_UNAVAILABLE
+                    ? UNAVAILABLE : FAILED;
+        }
+
+        @Override
+        public void disconnect() {
+            mClient.disconnect();
+        }
+
+        @Override
+        public boolean[] putAll(List<PutDataRequest> requests, long timeoutMillis) {
+            // Hand them all over before waiting on any, so they go out together.
+            List<PendingResult<DataApi.DataItemResult>> results = new ArrayList<>(requests.size());
+            for (PutDataRequest request : requests) {
+                results.add(Wearable.DataApi.putDataItem(mClient, request));
+            }
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            boolean[] accepted = new boolean[requests.size()];
+            for (int i = 0; i < accepted.length; i++) {
+                long remaining = Math.max(0, deadline - System.currentTimeMillis());
+                accepted[i] = results.get(i).await(remaining, TimeUnit.MILLISECONDS)
+                        .getStatus().isSuccess();
+            }
+            return accepted;
+        }
+
+        @Override
+        public boolean sendMessage(String nodeId, String path, byte[] data, long timeoutMillis) {
+            return Wearable.MessageApi.sendMessage(mClient, nodeId, path, data)
+                    .await(timeoutMillis, TimeUnit.MILLISECONDS).getStatus().isSuccess();
+        }
+    }
+}
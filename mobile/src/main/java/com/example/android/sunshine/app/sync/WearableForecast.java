@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherRows;
+import com.example.android.sunshine.shared.ForecastPayload;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds the {@link ForecastPayload} the watch is sent, either from a sync's fresh rows or from
+ * what's already in the database.
+ */
+final class WearableForecast {
+
+    // How long after a download the stored forecast is good enough to answer the watch with,
+    // when the server didn't say itself.
+    static final long MAX_AGE_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private static final String[] FORECAST_COLUMNS = {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID
+    };
+    private static final int COL_DATE = 0;
+    private static final int COL_MAX_TEMP = 1;
+    private static final int COL_MIN_TEMP = 2;
+    private static final int COL_WEATHER_ID = 3;
+
+    private WearableForecast() {
+    }
+
+    static ForecastPayload fromRows(WeatherRows days) {
+        ForecastPayload.Builder builder = new ForecastPayload.Builder(days.getDate(0));
+        for (int i = 0; i < days.size(); i++) {
+            builder.addDay(days.getMaxTemp(i), days.getMinTemp(i), days.getWeatherId(i));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Reads the location's forecast from today on out of the provider.
+     *
+     * @return the forecast, or null if there's none stored.
+     */
+    static ForecastPayload fromProvider(Context context, String locationSetting, long now) {
+        Cursor cursor = context.getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                        locationSetting, WeatherContract.normalizeDate(now)),
+                FORECAST_COLUMNS, null, null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            ForecastPayload.Builder builder = new ForecastPayload.Builder(cursor.getLong(COL_DATE));
+            do {
+                builder.addDay(cursor.getDouble(COL_MAX_TEMP), cursor.getDouble(COL_MIN_TEMP),
+                        cursor.getInt(COL_WEATHER_ID));
+            } while (cursor.moveToNext());
+            return builder.build();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return whether the stored forecast for the location was downloaded recently enough to
+     * hand to the watch without going to the network first.
+     */
+    static boolean isFresh(Context context, String locationSetting, long now) {
+        ForecastValidators validators = ForecastValidators.load(context, locationSetting);
+        return validators != null
+                && (validators.isFresh(now) || now - validators.fetched < MAX_AGE_MILLIS);
+    }
+}
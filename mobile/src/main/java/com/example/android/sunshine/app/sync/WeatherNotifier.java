@@ -0,0 +1,365 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.annotation.SuppressLint;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.res.Resources;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Build;
+import android.preference.PreferenceManager;
+import android.support.annotation.Nullable;
+import android.support.v4.app.NotificationCompat;
+import android.support.v4.app.TaskStackBuilder;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.request.FutureTarget;
+import com.example.android.sunshine.app.ArtPreloader;
+import com.example.android.sunshine.app.MainActivity;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Shows the once-a-day weather notification.  The sync hands it over to the notification's
+ * worker once its rows are in, so the sync never waits on an image.
+ *
+ * Large icons are kept ready, already scaled to the notification's size, by art pack and art,
+ * which conditions share.  An art pack's icon that isn't ready within
+ * {@link #ICON_DEADLINE_MILLIS} isn't waited for: the notification goes out with our own art
+ * instead, and the sync's warming of the art means it'll be on disk next time.
+ */
+public class WeatherNotifier {
+    private static final String LOG_TAG = WeatherNotifier.class.getSimpleName();
+
+    static final long ICON_DEADLINE_MILLIS = TimeUnit.SECONDS.toMillis(2);
+    // A handful of icons; a large icon is at most 256px square.
+    static final int ICON_CACHE_BYTES = 2 * 1024 * 1024;
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    private static final int WEATHER_NOTIFICATION_ID = 3004;
+
+    private static final String[] NOTIFY_WEATHER_PROJECTION = new String[] {
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
+    };
+
+    // these indices must match the projection
+    private static final int INDEX_WEATHER_ID = 0;
+    private static final int INDEX_MAX_TEMP = 1;
+    private static final int INDEX_MIN_TEMP = 2;
+    private static final int INDEX_SHORT_DESC = 3;
+
+    /**
+     * Where art pack icons come from; Glide, except in tests.
+     */
+    interface IconLoader {
+        /**
+         * Starts loading the art, scaled to fit the size.  The load is cancelled through the
+         * returned future if it misses the deadline.  The bitmap it gives is the caller's to
+         * keep, since it goes into the icon cache.
+         */
+        Future<Bitmap> load(String artUrl, int width, int height);
+    }
+
+    private static WeatherNotifier sInstance;
+
+    private final Context mContext;
+    private final IconLoader mIconLoader;
+    private final long mIconDeadlineMillis;
+
+    private final LruCache<String, Bitmap> mIcons = new LruCache<String, Bitmap>(ICON_CACHE_BYTES) {
+        @Override
+        protected int sizeOf(String key, Bitmap icon) {
+            return icon.getRowBytes() * icon.getHeight();
+        }
+    };
+
+    private int mFallbackCount;
+
+    public static synchronized WeatherNotifier getInstance(Context context) {
+        if (sInstance == null) {
+            Context appContext = context.getApplicationContext();
+            sInstance = new WeatherNotifier(appContext, new GlideIconLoader(appContext),
+                    ICON_DEADLINE_MILLIS);
+        }
+        return sInstance;
+    }
+
+    WeatherNotifier(Context context, IconLoader iconLoader, long iconDeadlineMillis) {
+        mContext = context;
+        mIconLoader = iconLoader;
+        mIconDeadlineMillis = iconDeadlineMillis;
+    }
+
+    /**
+     * Shows today's weather if notifications are on and there hasn't been one for a day.
+     * Blocks for as long as {@link #ICON_DEADLINE_MILLIS} on the large icon, so it's only called
+     * from background threads.
+     */
+    public void notifyWeather() {
+        Context context = mContext;
+        //checking the last update and notify if it' the first of the day
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String displayNotificationsKey = context.getString(R.string.pref_enable_notifications_key);
+        boolean displayNotifications = prefs.getBoolean(displayNotificationsKey,
+                Boolean.parseBoolean(context.getString(R.string.pref_enable_notifications_default)));
+        if (!displayNotifications) {
+            return;
+        }
+
+        String lastNotificationKey = context.getString(R.string.pref_last_notification);
+        long lastSync = prefs.getLong(lastNotificationKey, 0);
+        if (System.currentTimeMillis() - lastSync < DAY_IN_MILLIS) {
+            return;
+        }
+
+        // Last sync was more than 1 day ago, let's send a notification with the weather.
+        String locationQuery = Utility.getPreferredLocation(context);
+        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
+        Cursor cursor = context.getContentResolver().query(weatherUri, NOTIFY_WEATHER_PROJECTION, null, null, null);
+        if (cursor == null) {
+            return;
+        }
+        try {
+            if (!cursor.moveToFirst()) {
+                return;
+            }
+            int weatherId = cursor.getInt(INDEX_WEATHER_ID);
+            double high = cursor.getDouble(INDEX_MAX_TEMP);
+            double low = cursor.getDouble(INDEX_MIN_TEMP);
+            String desc = cursor.getString(INDEX_SHORT_DESC);
+
+            int iconId = Utility.getIconResourceForWeatherCondition(weatherId);
+            Resources resources = context.getResources();
+            int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
+            String artUrl = Utility.usingLocalGraphics(context)
+                    ? null : Utility.getArtUrlForWeatherCondition(context, weatherId);
+
+            // On Honeycomb and higher devices, we can retrieve the size of the large icon
+            // Prior to that, we use a fixed size
+            @SuppressLint("InlinedApi")
+            int largeIconWidth = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                    ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width)
+                    : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+            @SuppressLint("InlinedApi")
+            int largeIconHeight = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                    ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height)
+                    : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+
+            Bitmap largeIcon = getLargeIcon(artUrl, artResourceId, largeIconWidth, largeIconHeight);
+            String title = context.getString(R.string.app_name);
+
+            // Define the text of the forecast.
+            String contentText = String.format(context.getString(R.string.format_notification),
+                    desc,
+                    Utility.formatTemperature(context, high),
+                    Utility.formatTemperature(context, low));
+
+            // NotificationCompatBuilder is a very convenient way to build backward-compatible
+            // notifications.  Just throw in some data.
+            NotificationCompat.Builder mBuilder =
+                    new NotificationCompat.Builder(context)
+                            .setColor(resources.getColor(R.color.primary_light))
+                            .setSmallIcon(iconId)
+                            .setLargeIcon(largeIcon)
+                            .setContentTitle(title)
+                            .setContentText(contentText);
+
+            // Make something interesting happen when the user clicks on the notification.
+            // In this case, opening the app is sufficient.
+            Intent resultIntent = new Intent(context, MainActivity.class);
+
+            // The stack builder object will contain an artificial back stack for the
+            // started Activity.
+            // This ensures that navigating backward from the Activity leads out of
+            // your application to the Home screen.
+            TaskStackBuilder stackBuilder = TaskStackBuilder.create(context);
+            stackBuilder.addNextIntent(resultIntent);
+            PendingIntent resultPendingIntent =
+                    stackBuilder.getPendingIntent(
+                            0,
+                            PendingIntent.FLAG_UPDATE_CURRENT
+                    );
+            mBuilder.setContentIntent(resultPendingIntent);
+
+            NotificationManager mNotificationManager =
+                    (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+            // WEATHER_NOTIFICATION_ID allows you to update the notification later on.
+            mNotificationManager.notify(WEATHER_NOTIFICATION_ID, mBuilder.build());
+
+            //refreshing last sync
+            SharedPreferences.Editor editor = prefs.edit();
+            editor.putLong(lastNotificationKey, System.currentTimeMillis());
+            editor.commit();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * The large icon for a condition's art at the given size: the art pack's if it's cached or
+     * arrives within the deadline, our own otherwise.
+     *
+     * @param artUrl the art pack's art, or null to use our own.
+     */
+    Bitmap getLargeIcon(@Nullable String artUrl, int artResourceId, int width, int height) {
+        if (artUrl != null) {
+            String key = artUrl + "@" + width + "x" + height;
+            Bitmap icon = mIcons.get(key);
+            if (icon != null) {
+                return icon;
+            }
+            Future<Bitmap> load = mIconLoader.load(artUrl, width, height);
+            try {
+                icon = load.get(mIconDeadlineMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                load.cancel(true);
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                Log.e(LOG_TAG, "Error retrieving large icon from " + artUrl, e);
+            } catch (TimeoutException e) {
+                load.cancel(true);
+                Log.d(LOG_TAG, "Large icon from " + artUrl + " missed the deadline");
+            }
+            if (icon != null) {
+                mIcons.put(key, icon);
+                return icon;
+            }
+            mFallbackCount++;
+        }
+        if (artResourceId == -1) {
+            return null;
+        }
+        String key = "res:" + artResourceId + "@" + width + "x" + height;
+        Bitmap icon = mIcons.get(key);
+        if (icon == null) {
+            icon = scaleToFit(BitmapFactory.decodeResource(mContext.getResources(), artResourceId),
+                    width, height);
+            if (icon != null) {
+                mIcons.put(key, icon);
+            }
+        }
+        return icon;
+    }
+
+    /**
+     * @return how many times an art pack's icon was replaced by our own.
+     */
+    int getFallbackCount() {
+        return mFallbackCount;
+    }
+
+    /**
+     * Scales the art down to fit the icon, keeping its shape, as Glide's fitCenter does.
+     */
+    private static Bitmap scaleToFit(Bitmap art, int width, int height) {
+        if (art == null || (art.getWidth() <= width && art.getHeight() <= height)) {
+            return art;
+        }
+        float scale = Math.min((float) width / art.getWidth(), (float) height / art.getHeight());
+        Bitmap scaled = Bitmap.createScaledBitmap(art,
+                Math.max(1, Math.round(art.getWidth() * scale)),
+                Math.max(1, Math.round(art.getHeight() * scale)), true);
+        if (scaled != art) {
+            art.recycle();
+        }
+        return scaled;
+    }
+
+    private static class GlideIconLoader implements IconLoader {
+        private final Context mContext;
+
+        GlideIconLoader(Context context) {
+            mContext = context;
+        }
+
+        @Override
+        public Future<Bitmap> load(String artUrl, int width, int height) {
+            return new CopiedIcon(Glide.with(mContext)
+                    .load(artUrl)
+                    .asBitmap()
+                    .diskCacheStrategy(ArtPreloader.ART_CACHE_STRATEGY)
+                    .fitCenter()
+                    .into(width, height));
+        }
+    }
+
+    /**
+     * Glide's bitmap belongs to Glide, which reuses it once the target is cleared, so what we
+     * keep is a copy and the target is cleared as soon as it's been made.
+     */
+    private static class CopiedIcon implements Future<Bitmap> {
+        private final FutureTarget<Bitmap> mTarget;
+
+        CopiedIcon(FutureTarget<Bitmap> target) {
+            mTarget = target;
+        }
+
+        @Override
+        public Bitmap get() throws InterruptedException, ExecutionException {
+            return copyAndClear(mTarget.get());
+        }
+
+        @Override
+        public Bitmap get(long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            return copyAndClear(mTarget.get(timeout, unit));
+        }
+
+        private Bitmap copyAndClear(Bitmap bitmap) {
+            try {
+                Bitmap.Config config = bitmap.getConfig() != null
+                        ? bitmap.getConfig() : Bitmap.Config.ARGB_8888;
+                return bitmap.copy(config, false);
+            } finally {
+                // Posts the clear to the main thread, where Glide wants it.
+                mTarget.clear();
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return mTarget.cancel(mayInterruptIfRunning);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return mTarget.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            return mTarget.isDone();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.shared;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What the list's selection pays to re-find checked rows after a new load, for long lists.
+ * Each operation re-finds every row of a list whose rows all moved down a few positions, as
+ * when days are added in front: through an index of ids, rebuilt for the new load as the
+ * adapter does, or by searching around each row's old position as ItemChoiceManager did.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LongIntMapBenchmark {
+
+    private static final long DAY_IN_MILLIS = 24L * 60 * 60 * 1000;
+    private static final int SEARCH_DISTANCE = 20;
+
+    @Param({"100", "10000"})
+    public int rows;
+
+    @Param({"3", "15"})
+    public int shift;
+
+    // Row ids, as dates, before and after the load.
+    private long[] mOldIds;
+    private long[] mNewIds;
+    private LongIntMap mIndex;
+
+    @Setup
+    public void setUp() {
+        mOldIds = new long[rows];
+        mNewIds = new long[rows];
+        for (int i = 0; i < rows; i++) {
+            mOldIds[i] = i * DAY_IN_MILLIS;
+            mNewIds[i] = (i - shift) * DAY_IN_MILLIS;
+        }
+        mIndex = new LongIntMap(rows);
+    }
+
+    @Benchmark
+    public void index(Blackhole blackhole) {
+        mIndex.clear();
+        for (int i = 0; i < rows; i++) {
+            mIndex.put(mNewIds[i], i);
+        }
+        for (int lastPos = 0; lastPos < rows; lastPos++) {
+            blackhole.consume(mIndex.get(mOldIds[lastPos], -1));
+        }
+    }
+
+    @Benchmark
+    public void search(Blackhole blackhole) {
+        for (int lastPos = 0; lastPos < rows; lastPos++) {
+            blackhole.consume(searchPosition(mOldIds[lastPos], lastPos));
+        }
+    }
+
+    /**
+     * Binary search over ids known to be sorted, for comparison; the adapter can't assume that
+     * in general.
+     */
+    @Benchmark
+    public void binarySearch(Blackhole blackhole) {
+        for (int lastPos = 0; lastPos < rows; lastPos++) {
+            blackhole.consume(Arrays.binarySearch(mNewIds, mOldIds[lastPos]));
+        }
+    }
+
+    private int searchPosition(long id, int lastPos) {
+        if (mNewIds[lastPos] == id) {
+            return lastPos;
+        }
+        int start = Math.max(0, lastPos - SEARCH_DISTANCE);
+        int end = Math.min(lastPos + SEARCH_DISTANCE, rows);
+        for (int searchPos = start; searchPos < end; searchPos++) {
+            if (mNewIds[searchPos] == id) {
+                return searchPos;
+            }
+        }
+        return -1;
+    }
+}
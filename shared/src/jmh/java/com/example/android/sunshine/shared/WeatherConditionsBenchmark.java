@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.shared;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looks up every attribute of a mix of conditions, through the tables and through the if/else
+ * chains they replaced.  The ids are a shuffled spread of real conditions with a few unknown
+ * ones, so neither version gets to ride a single well-predicted branch.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WeatherConditionsBenchmark {
+
+    private static final int ID_COUNT = 1024;
+
+    private int[] mIds;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        mIds = new int[ID_COUNT];
+        for (int i = 0; i < ID_COUNT; i++) {
+            // One in eight is an id nobody maps, as the API does send those now and then.
+            if (random.nextInt(8) == 0) {
+                mIds[i] = 100 + random.nextInt(1000);
+            } else {
+                int described = random.nextInt(WeatherConditions.DESCRIBED_CONDITIONS.length);
+                mIds[i] = WeatherConditions.DESCRIBED_CONDITIONS[described];
+            }
+        }
+    }
+
+    @Benchmark
+    public void tables(Blackhole blackhole) {
+        for (int id : mIds) {
+            blackhole.consume(WeatherConditions.getArt(id));
+            blackhole.consume(WeatherConditions.getArtName(id));
+            blackhole.consume(WeatherConditions.getImageUrl(id));
+            blackhole.consume(WeatherConditions.getDescription(id));
+        }
+    }
+
+    @Benchmark
+    public void chains(Blackhole blackhole) {
+        for (int id : mIds) {
+            blackhole.consume(LegacyConditions.getArt(id));
+            blackhole.consume(LegacyConditions.getArtName(id));
+            blackhole.consume(LegacyConditions.getImageUrl(id));
+            blackhole.consume(LegacyConditions.getDescribedCondition(id));
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.shared;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * The whole forecast window as the phone sends it to the watch, in a compact binary form:
+ *
+ * <pre>
+ *   byte   version
+ *   long   date of the first day, in milliseconds
+ *   byte   number of days
+ *   then for each day:
+ *     short  high, in tenths of a degree
+ *     short  low, in tenths of a degree
+ *     short  OpenWeatherMap condition id
+ * </pre>
+ *
+ * Two weeks come to under a hundred bytes.  The days follow each other one day apart, so only
+ * the first date is sent.  Reading is lazy: {@link #wrap(byte[])} only checks the header, and
+ * each getter reads its value straight out of the bytes.
+ */
+public final class ForecastPayload {
+    public static final int VERSION = 1;
+
+    // Enough for the sixteen days OpenWeatherMap goes up to.
+    public static final int MAX_DAYS = 16;
+
+    private static final int HEADER_SIZE = 1 + 8 + 1;
+    private static final int DAY_SIZE = 2 + 2 + 2;
+    private static final double TEMPERATURE_SCALE = 10.0;
+
+    private final ByteBuffer mBuffer;
+    private final int mDayCount;
+
+    private ForecastPayload(ByteBuffer buffer, int dayCount) {
+        mBuffer = buffer;
+        mDayCount = dayCount;
+    }
+
+    /**
+     * Reads a payload without decoding its days.
+     *
+     * @throws IllegalArgumentException if the bytes aren't a payload this version understands.
+     */
+    public static ForecastPayload wrap(byte[] bytes) {
+        if (bytes == null || bytes.length < HEADER_SIZE) {
+            throw new IllegalArgumentException("Forecast payload is too short");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int version = buffer.get(0);
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unknown forecast payload version " + version);
+        }
+        int dayCount = buffer.get(HEADER_SIZE - 1) & 0xff;
+        if (bytes.length != HEADER_SIZE + dayCount * DAY_SIZE) {
+            throw new IllegalArgumentException("Forecast payload of " + dayCount
+                    + " days has " + bytes.length + " bytes");
+        }
+        return new ForecastPayload(buffer, dayCount);
+    }
+
+    public int getDayCount() {
+        return mDayCount;
+    }
+
+    public long getFirstDate() {
+        return mBuffer.getLong(1);
+    }
+
+    public double getHigh(int day) {
+        return mBuffer.getShort(dayOffset(day)) / TEMPERATURE_SCALE;
+    }
+
+    public double getLow(int day) {
+        return mBuffer.getShort(dayOffset(day) + 2) / TEMPERATURE_SCALE;
+    }
+
+    public int getConditionId(int day) {
+        return mBuffer.getShort(dayOffset(day) + 4);
+    }
+
+    /**
+     * @return which day of the payload the time falls on, clamped to the days it has.  After
+     * midnight the watch moves on to the next day by itself, without waiting for the phone.
+     */
+    public int getDayIndex(long timeMillis) {
+        long day = (timeMillis - getFirstDate()) / (24L * 60 * 60 * 1000);
+        return (int) Math.max(0, Math.min(mDayCount - 1, day));
+    }
+
+    public byte[] toByteArray() {
+        return mBuffer.array();
+    }
+
+    /**
+     * @return a checksum of the payload, for telling whether it changed since the last one.
+     */
+    public static long hash(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return crc.getValue();
+    }
+
+    private int dayOffset(int day) {
+        if (day < 0 || day >= mDayCount) {
+            throw new IndexOutOfBoundsException("Day " + day + " of " + mDayCount);
+        }
+        return HEADER_SIZE + day * DAY_SIZE;
+    }
+
+    /**
+     * Packs days into a payload.  Days beyond {@link #MAX_DAYS} are dropped.
+     */
+    public static class Builder {
+        private final long mFirstDate;
+        private final short[] mValues = new short[MAX_DAYS * 3];
+        private int mDayCount;
+
+        public Builder(long firstDate) {
+            mFirstDate = firstDate;
+        }
+
+        public Builder addDay(double high, double low, int conditionId) {
+            if (mDayCount < MAX_DAYS) {
+                int i = mDayCount * 3;
+                mValues[i] = packTemperature(high);
+                mValues[i + 1] = packTemperature(low);
+                mValues[i + 2] = (short) conditionId;
+                mDayCount++;
+            }
+            return this;
+        }
+
+        public ForecastPayload build() {
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + mDayCount * DAY_SIZE);
+            buffer.put((byte) VERSION);
+            buffer.putLong(mFirstDate);
+            buffer.put((byte) mDayCount);
+            for (int i = 0; i < mDayCount * 3; i++) {
+                buffer.putShort(mValues[i]);
+            }
+            return new ForecastPayload(buffer, mDayCount);
+        }
+
+        private static short packTemperature(double temperature) {
+            long tenths = Math.round(temperature * TEMPERATURE_SCALE);
+            return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, tenths));
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.shared;
+
+import java.util.Arrays;
+
+/**
+ * A map from long keys to int values, with neither boxed.  Looking a key up, adding one and
+ * removing one each take constant time, unlike LongSparseArray's binary search and array copy.
+ *
+ * The entries are kept packed in insertion order, apart from removals, which move the last
+ * entry into the gap, so they can be walked by index as with a SparseArray.  An open-addressed
+ * table of indices into them, never more than half full, finds them by key.
+ *
+ * Not thread safe.
+ */
+public final class LongIntMap {
+
+    private static final int EMPTY = -1;
+    private static final int MIN_CAPACITY = 4;
+
+    private long[] mKeys;
+    private int[] mValues;
+    private int mSize;
+
+    // Each slot holds the index of an entry, or EMPTY.  Its length is a power of two.
+    private int[] mSlots;
+    private int mMask;
+
+    public LongIntMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param capacity how many entries the map should hold before it has to grow.
+     */
+    public LongIntMap(int capacity) {
+        allocate(Math.max(capacity, MIN_CAPACITY));
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public long keyAt(int index) {
+        checkIndex(index);
+        return mKeys[index];
+    }
+
+    public int valueAt(int index) {
+        checkIndex(index);
+        return mValues[index];
+    }
+
+    public void setValueAt(int index, int value) {
+        checkIndex(index);
+        mValues[index] = value;
+    }
+
+    /**
+     * @return the index of the key's entry, or -1 if it has none.
+     */
+    public int indexOfKey(long key) {
+        int slot = findSlot(key);
+        return slot < 0 ? -1 : mSlots[slot];
+    }
+
+    public int get(long key, int valueIfKeyNotFound) {
+        int slot = findSlot(key);
+        return slot < 0 ? valueIfKeyNotFound : mValues[mSlots[slot]];
+    }
+
+    public void put(long key, int value) {
+        int slot = findSlot(key);
+        if (slot >= 0) {
+            mValues[mSlots[slot]] = value;
+            return;
+        }
+        if (mSize == mKeys.length) {
+            grow();
+        }
+        mKeys[mSize] = key;
+        mValues[mSize] = value;
+        mSlots[freeSlot(key)] = mSize;
+        mSize++;
+    }
+
+    public void delete(long key) {
+        int slot = findSlot(key);
+        if (slot < 0) {
+            return;
+        }
+        int index = mSlots[slot];
+        closeGap(slot);
+
+        // Keep the entries packed by moving the last one into the hole.
+        int last = mSize - 1;
+        if (index != last) {
+            mSlots[findSlot(mKeys[last])] = index;
+            mKeys[index] = mKeys[last];
+            mValues[index] = mValues[last];
+        }
+        mSize--;
+    }
+
+    public void clear() {
+        Arrays.fill(mSlots, EMPTY);
+        mSize = 0;
+    }
+
+    private void allocate(int capacity) {
+        // Room for twice the entries, so the table is at most half full.
+        int slots = Integer.highestOneBit(capacity * 2 - 1) << 1;
+        mKeys = new long[slots / 2];
+        mValues = new int[slots / 2];
+        mSlots = new int[slots];
+        Arrays.fill(mSlots, EMPTY);
+        mMask = slots - 1;
+    }
+
+    private void grow() {
+        long[] keys = mKeys;
+        int[] values = mValues;
+        int size = mSize;
+        allocate(keys.length * 2);
+        System.arraycopy(keys, 0, mKeys, 0, size);
+        System.arraycopy(values, 0, mValues, 0, size);
+        for (int i = 0; i < size; i++) {
+            mSlots[freeSlot(mKeys[i])] = i;
+        }
+        mSize = size;
+    }
+
+    private int home(long key) {
+        // Fibonacci hashing spreads keys that only differ in their high bits, like dates.
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & mMask;
+    }
+
+    private int findSlot(long key) {
+        for (int slot = home(key); ; slot = (slot + 1) & mMask) {
+            int index = mSlots[slot];
+            if (index == EMPTY) {
+                return -1;
+            }
+            if (mKeys[index] == key) {
+                return slot;
+            }
+        }
+    }
+
+    private int freeSlot(long key) {
+        int slot = home(key);
+        while (mSlots[slot] != EMPTY) {
+            slot = (slot + 1) & mMask;
+        }
+        return slot;
+    }
+
+    /**
+     * Empties a slot, moving back any entries after it that would otherwise no longer be found
+     * from their home slot.
+     */
+    private void closeGap(int gap) {
+        for (int slot = (gap + 1) & mMask; mSlots[slot] != EMPTY; slot = (slot + 1) & mMask) {
+            int home = home(mKeys[mSlots[slot]]);
+            // The entry can move back to the gap unless its home slot lies between the two.
+            if (((slot - home) & mMask) >= ((slot - gap) & mMask)) {
+                mSlots[gap] = mSlots[slot];
+                gap = slot;
+            }
+        }
+        mSlots[gap] = EMPTY;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.shared;
+
+/**
+ * The paths and keys the phone and the watch use to talk to each other over the Wearable
+ * Data Layer.
+ */
+public final class WearableProtocol {
+    // The DataItem holding the latest forecast.
+    public static final String WEATHER_PATH = "/weather";
+    // The forecast, as a ForecastPayload, in the DataItem's DataMap.
+    public static final String KEY_FORECAST_PAYLOAD = "forecast_payload";
+
+    // The message the watch sends the phone to ask for the forecast.  It carries no data.
+    public static final String WEATHER_REQUEST_PATH = "/weather-request";
+    // The phone's answer, sent back to the node that asked.  Its data is a ForecastPayload.
+    public static final String WEATHER_RESPONSE_PATH = "/weather-response";
+
+    private WearableProtocol() {
+    }
+}
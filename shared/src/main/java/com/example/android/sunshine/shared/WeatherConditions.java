@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.shared;
+
+import java.util.Arrays;
+
+/**
+ * What to show for each OpenWeatherMap condition id, for the phone and the watch alike.
+ *
+ * Every lookup is one read from a table indexed by the id, built once from the ranges below.
+ * Resources differ between the apps, so the tables hold indices, not resource ids: each app
+ * keeps its own drawables in {@code ART_*} order and its own strings in
+ * {@link #DESCRIBED_CONDITIONS} order.
+ *
+ * Based on weather code data found at:
+ * http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+ */
+public final class WeatherConditions {
+
+    public static final int ART_NONE = -1;
+    public static final int ART_STORM = 0;
+    public static final int ART_LIGHT_RAIN = 1;
+    public static final int ART_RAIN = 2;
+    public static final int ART_SNOW = 3;
+    public static final int ART_FOG = 4;
+    public static final int ART_CLEAR = 5;
+    public static final int ART_LIGHT_CLOUDS = 6;
+    public static final int ART_CLOUDS = 7;
+    public static final int ART_COUNT = 8;
+
+    // The names the art packs use, in ART_* order.
+    private static final String[] ART_NAMES = {
+            "storm", "light_rain", "rain", "snow", "fog", "clear", "light_clouds", "clouds"
+    };
+
+    private static final String[] IMAGE_URLS = {
+            "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg"
+    };
+    private static final int IMAGE_STORM = 0;
+    private static final int IMAGE_LIGHT_RAIN = 1;
+    private static final int IMAGE_RAIN = 2;
+    private static final int IMAGE_SNOW = 3;
+    private static final int IMAGE_FOG = 4;
+    private static final int IMAGE_DUST = 5;
+    private static final int IMAGE_CLEAR = 6;
+    private static final int IMAGE_LIGHT_CLOUDS = 7;
+    private static final int IMAGE_CLOUDS = 8;
+
+    public static final int DESCRIPTION_NONE = -1;
+
+    /**
+     * The conditions that have a description of their own, in the order of the indices
+     * {@link #getDescription} returns.  200 and 300 stand for the whole 2xx and 3xx groups,
+     * which share one description each.
+     */
+    public static final int[] DESCRIBED_CONDITIONS = {
+            200, 300,
+            500, 501, 502, 503, 504, 511, 520, 531,
+            600, 601, 602, 611, 612, 615, 616, 620, 621, 622,
+            701, 711, 721, 731, 741, 751, 761, 762, 771, 781,
+            800, 801, 802, 803, 804,
+            900, 901, 902, 903, 904, 905, 906,
+            951, 952, 953, 954, 955, 956, 957, 958, 959, 960, 961, 962
+    };
+
+    private static final int MIN_ID = 200;
+    private static final int MAX_ID = 962;
+
+    private static final byte[] sArt = newTable();
+    private static final byte[] sImage = newTable();
+    private static final byte[] sDescription = newTable();
+
+    static {
+        // As it always has been, 761 (dust) falls in the fog range; only 781 (tornado) gets
+        // the storm art.
+        map(sArt, 200, 232, ART_STORM);
+        map(sArt, 300, 321, ART_LIGHT_RAIN);
+        map(sArt, 500, 504, ART_RAIN);
+        map(sArt, 511, 511, ART_SNOW);
+        map(sArt, 520, 531, ART_RAIN);
+        map(sArt, 600, 622, ART_SNOW);
+        map(sArt, 701, 761, ART_FOG);
+        map(sArt, 781, 781, ART_STORM);
+        map(sArt, 800, 800, ART_CLEAR);
+        map(sArt, 801, 801, ART_LIGHT_CLOUDS);
+        map(sArt, 802, 804, ART_CLOUDS);
+
+        map(sImage, 200, 232, IMAGE_STORM);
+        map(sImage, 300, 321, IMAGE_LIGHT_RAIN);
+        map(sImage, 500, 504, IMAGE_RAIN);
+        map(sImage, 511, 511, IMAGE_SNOW);
+        map(sImage, 520, 531, IMAGE_RAIN);
+        map(sImage, 600, 622, IMAGE_SNOW);
+        map(sImage, 701, 761, IMAGE_FOG);
+        map(sImage, 781, 781, IMAGE_DUST);
+        map(sImage, 800, 800, IMAGE_CLEAR);
+        map(sImage, 801, 801, IMAGE_LIGHT_CLOUDS);
+        map(sImage, 802, 804, IMAGE_CLOUDS);
+
+        map(sDescription, 200, 232, 0);
+        map(sDescription, 300, 321, 1);
+        for (int i = 2; i < DESCRIBED_CONDITIONS.length; i++) {
+            map(sDescription, DESCRIBED_CONDITIONS[i], DESCRIBED_CONDITIONS[i], i);
+        }
+    }
+
+    private WeatherConditions() {
+    }
+
+    /**
+     * @return the condition's {@code ART_*} index, or {@link #ART_NONE}.  The same index picks
+     * both the small icon and the large art.
+     */
+    public static int getArt(int weatherId) {
+        return lookup(sArt, weatherId);
+    }
+
+    /**
+     * @return the name art packs file the condition's art under, or null if it has none.
+     */
+    public static String getArtName(int weatherId) {
+        int art = lookup(sArt, weatherId);
+        return art == ART_NONE ? null : ART_NAMES[art];
+    }
+
+    /**
+     * @return a photo for the condition, or null if it has none.
+     */
+    public static String getImageUrl(int weatherId) {
+        int image = lookup(sImage, weatherId);
+        return image < 0 ? null : IMAGE_URLS[image];
+    }
+
+    /**
+     * @return the index in {@link #DESCRIBED_CONDITIONS} of the condition's description, or
+     * {@link #DESCRIPTION_NONE} if it's one we don't know.
+     */
+    public static int getDescription(int weatherId) {
+        return lookup(sDescription, weatherId);
+    }
+
+    private static int lookup(byte[] table, int weatherId) {
+        if (weatherId < MIN_ID || weatherId > MAX_ID) {
+            return -1;
+        }
+        return table[weatherId - MIN_ID];
+    }
+
+    private static byte[] newTable() {
+        byte[] table = new byte[MAX_ID - MIN_ID + 1];
+        Arrays.fill(table, (byte) -1);
+        return table;
+    }
+
+    private static void map(byte[] table, int fromId, int toId, int value) {
+        Arrays.fill(table, fromId - MIN_ID, toId - MIN_ID + 1, (byte) value);
+    }
+}
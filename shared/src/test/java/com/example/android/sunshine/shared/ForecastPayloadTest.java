@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.shared;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ForecastPayloadTest {
+
+    private static final long FIRST_DATE = 1419033600000L;
+    private static final long DAY_IN_MILLIS = 24L * 60 * 60 * 1000;
+
+    @Test
+    public void roundTripsEveryDay() {
+        ForecastPayload.Builder builder = new ForecastPayload.Builder(FIRST_DATE);
+        for (int day = 0; day < 14; day++) {
+            builder.addDay(20.2 + day, -3.5 - day, 800 + day);
+        }
+        byte[] bytes = builder.build().toByteArray();
+        assertTrue("Two weeks should fit in under 100 bytes", bytes.length < 100);
+
+        ForecastPayload payload = ForecastPayload.wrap(bytes);
+        assertEquals(14, payload.getDayCount());
+        assertEquals(FIRST_DATE, payload.getFirstDate());
+        for (int day = 0; day < 14; day++) {
+            // Temperatures are kept to a tenth of a degree.
+            assertEquals(20.2 + day, payload.getHigh(day), 0.001);
+            assertEquals(-3.5 - day, payload.getLow(day), 0.001);
+            assertEquals(800 + day, payload.getConditionId(day));
+        }
+    }
+
+    @Test
+    public void dropsDaysBeyondTheMaximum() {
+        ForecastPayload.Builder builder = new ForecastPayload.Builder(FIRST_DATE);
+        for (int day = 0; day < ForecastPayload.MAX_DAYS + 5; day++) {
+            builder.addDay(10, 5, 500);
+        }
+        assertEquals(ForecastPayload.MAX_DAYS, builder.build().getDayCount());
+    }
+
+    @Test
+    public void picksTheDayForATime() {
+        ForecastPayload payload = new ForecastPayload.Builder(FIRST_DATE)
+                .addDay(10, 5, 500)
+                .addDay(11, 6, 501)
+                .addDay(12, 7, 502)
+                .build();
+        assertEquals(0, payload.getDayIndex(FIRST_DATE - DAY_IN_MILLIS));
+        assertEquals(0, payload.getDayIndex(FIRST_DATE + 1000));
+        assertEquals(1, payload.getDayIndex(FIRST_DATE + DAY_IN_MILLIS + 1000));
+        assertEquals(2, payload.getDayIndex(FIRST_DATE + 10 * DAY_IN_MILLIS));
+    }
+
+    @Test
+    public void hashFollowsContent() {
+        byte[] first = new ForecastPayload.Builder(FIRST_DATE).addDay(10, 5, 500).build().toByteArray();
+        byte[] same = new ForecastPayload.Builder(FIRST_DATE).addDay(10, 5, 500).build().toByteArray();
+        byte[] changed = new ForecastPayload.Builder(FIRST_DATE).addDay(10.5, 5, 500).build().toByteArray();
+        assertEquals(ForecastPayload.hash(first), ForecastPayload.hash(same));
+        assertNotEquals(ForecastPayload.hash(first), ForecastPayload.hash(changed));
+    }
+
+    @Test
+    public void rejectsOtherVersionsAndTruncatedPayloads() {
+        byte[] bytes = new ForecastPayload.Builder(FIRST_DATE).addDay(10, 5, 500).build().toByteArray();
+
+        byte[] truncated = new byte[bytes.length - 1];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+        assertRejected(truncated);
+
+        byte[] future = bytes.clone();
+        future[0] = ForecastPayload.VERSION + 1;
+        assertRejected(future);
+
+        assertRejected(new byte[0]);
+    }
+
+    private static void assertRejected(byte[] bytes) {
+        try {
+            ForecastPayload.wrap(bytes);
+            fail("Should not have accepted " + bytes.length + " bytes");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.shared;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class LongIntMapTest {
+
+    private static final long DAY_IN_MILLIS = 24L * 60 * 60 * 1000;
+
+    @Test
+    public void putGetAndDelete() {
+        LongIntMap map = new LongIntMap();
+        map.put(7L, 1);
+        map.put(-7L, 2);
+        map.put(Long.MAX_VALUE, 3);
+        assertEquals(3, map.size());
+        assertEquals(1, map.get(7L, -1));
+        assertEquals(2, map.get(-7L, -1));
+        assertEquals(3, map.get(Long.MAX_VALUE, -1));
+        assertEquals(-1, map.get(8L, -1));
+
+        map.put(7L, 10);
+        assertEquals("Putting a key again replaces its value", 3, map.size());
+        assertEquals(10, map.get(7L, -1));
+
+        map.delete(-7L);
+        map.delete(12345L);
+        assertEquals(2, map.size());
+        assertEquals(-1, map.indexOfKey(-7L));
+        assertEquals(10, map.get(7L, -1));
+        assertEquals(3, map.get(Long.MAX_VALUE, -1));
+
+        map.clear();
+        assertEquals(0, map.size());
+        assertEquals(-1, map.get(7L, -1));
+    }
+
+    @Test
+    public void entriesCanBeWalkedByIndex() {
+        LongIntMap map = new LongIntMap();
+        for (int i = 0; i < 100; i++) {
+            map.put(i * DAY_IN_MILLIS, i);
+        }
+        for (int i = 0; i < map.size(); i++) {
+            assertEquals(map.keyAt(i) / DAY_IN_MILLIS, map.valueAt(i));
+            assertEquals(i, map.indexOfKey(map.keyAt(i)));
+            map.setValueAt(i, -i);
+        }
+        assertEquals(-42, map.get(42 * DAY_IN_MILLIS, 0));
+    }
+
+    /*
+        Random puts and deletes over a small range of keys, so they collide and get removed
+        from the middle of runs, checked against a HashMap after every step.
+     */
+    @Test
+    public void matchesHashMap() {
+        Random random = new Random(42);
+        LongIntMap map = new LongIntMap();
+        Map<Long, Integer> expected = new HashMap<>();
+        for (int step = 0; step < 50000; step++) {
+            long key = random.nextInt(500) * DAY_IN_MILLIS;
+            if (random.nextInt(3) == 0) {
+                map.delete(key);
+                expected.remove(key);
+            } else {
+                map.put(key, step);
+                expected.put(key, step);
+            }
+            assertEquals(expected.size(), map.size());
+            Integer value = expected.get(key);
+            assertEquals(value == null ? -1 : value, map.get(key, -1));
+        }
+        for (Map.Entry<Long, Integer> entry : expected.entrySet()) {
+            assertEquals((int) entry.getValue(), map.get(entry.getKey(), -1));
+        }
+        for (int i = 0; i < map.size(); i++) {
+            assertEquals(expected.get(map.keyAt(i)), Integer.valueOf(map.valueAt(i)));
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.shared;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the tables against the if/else chains they replaced, for every id from well below the
+ * smallest condition to well above the largest.
+ */
+public class WeatherConditionsTest {
+
+    private static final int FIRST_ID = -1;
+    private static final int LAST_ID = 1100;
+
+    @Test
+    public void artMatchesChains() {
+        for (int id = FIRST_ID; id <= LAST_ID; id++) {
+            assertEquals("Art for " + id, LegacyConditions.getArt(id), WeatherConditions.getArt(id));
+            assertEquals("Art name for " + id, LegacyConditions.getArtName(id),
+                    WeatherConditions.getArtName(id));
+        }
+    }
+
+    @Test
+    public void imageUrlMatchesChains() {
+        for (int id = FIRST_ID; id <= LAST_ID; id++) {
+            assertEquals("Image for " + id, LegacyConditions.getImageUrl(id),
+                    WeatherConditions.getImageUrl(id));
+        }
+    }
+
+    @Test
+    public void descriptionMatchesSwitch() {
+        for (int id = FIRST_ID; id <= LAST_ID; id++) {
+            int description = WeatherConditions.getDescription(id);
+            int describedAs = description == WeatherConditions.DESCRIPTION_NONE
+                    ? -1 : WeatherConditions.DESCRIBED_CONDITIONS[description];
+            assertEquals("Description for " + id, LegacyConditions.getDescribedCondition(id),
+                    describedAs);
+        }
+    }
+}
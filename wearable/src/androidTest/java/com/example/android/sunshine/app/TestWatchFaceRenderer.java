@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+
+import java.util.Locale;
+
+/*
+    Draws the watch face into an offscreen bitmap, without a watch face service, and checks what
+    each frame allocates, what it looks like and how its time is accounted for.
+ */
+public class TestWatchFaceRenderer extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWatchFaceRenderer.class.getSimpleName();
+
+    private static final int SURFACE_SIZE = 320;
+    private static final int FRAMES = 100;
+    // Ten seconds into a minute, so all the frames below fall in the same minute.
+    private static final long NOW = 1419033600000L + 10 * 1000;
+
+    private WatchFaceRenderer mRenderer;
+    private Canvas mCanvas;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mRenderer = new WatchFaceRenderer(mContext.getResources(), false);
+        mRenderer.setSurfaceSize(SURFACE_SIZE, SURFACE_SIZE);
+        mRenderer.setWeather(
+                BitmapFactory.decodeResource(mContext.getResources(), R.drawable.art_rain),
+                "12\u00B0 7\u00B0");
+        mCanvas = new Canvas(Bitmap.createBitmap(SURFACE_SIZE, SURFACE_SIZE, Bitmap.Config.ARGB_8888));
+    }
+
+    public void testInteractiveDrawDoesNotAllocate() {
+        assertEquals("An interactive frame allocated", 0, countAllocations(false));
+    }
+
+    public void testAmbientDrawDoesNotAllocate() {
+        assertEquals("An ambient frame allocated", 0, countAllocations(true));
+    }
+
+    /*
+        The texts are only worked out again when the minute changes, and they have to be.
+     */
+    public void testNewMinuteIsLaidOut() {
+        Bitmap first = Bitmap.createBitmap(SURFACE_SIZE, SURFACE_SIZE, Bitmap.Config.ARGB_8888);
+        Bitmap second = Bitmap.createBitmap(SURFACE_SIZE, SURFACE_SIZE, Bitmap.Config.ARGB_8888);
+        mRenderer.draw(new Canvas(first), NOW);
+        mRenderer.draw(new Canvas(second), NOW + 60 * 1000);
+        assertFalse("The next minute should look different", first.sameAs(second));
+    }
+
+    /*
+        A new locale is picked up in the same minute, without waiting for the next one.
+     */
+    public void testLocaleChangeIsLaidOut() {
+        Bitmap english = Bitmap.createBitmap(SURFACE_SIZE, SURFACE_SIZE, Bitmap.Config.ARGB_8888);
+        Bitmap french = Bitmap.createBitmap(SURFACE_SIZE, SURFACE_SIZE, Bitmap.Config.ARGB_8888);
+        mRenderer.setLocale(Locale.US);
+        mRenderer.draw(new Canvas(english), NOW);
+        mRenderer.setLocale(Locale.FRANCE);
+        mRenderer.draw(new Canvas(french), NOW);
+        assertFalse("The date should be written out in French", english.sameAs(french));
+    }
+
+    /*
+        A frame copied from the static layer should look exactly like one drawn from scratch.
+     */
+    public void testStaticLayerLooksTheSame() {
+        Bitmap cached = Bitmap.createBitmap(SURFACE_SIZE, SURFACE_SIZE, Bitmap.Config.ARGB_8888);
+        Bitmap direct = Bitmap.createBitmap(SURFACE_SIZE, SURFACE_SIZE, Bitmap.Config.ARGB_8888);
+        mRenderer.draw(new Canvas(cached), NOW);
+        mRenderer.draw(new Canvas(cached), NOW);
+        mRenderer.setStaticLayerEnabled(false);
+        mRenderer.draw(new Canvas(direct), NOW);
+        assertTrue(cached.sameAs(direct));
+    }
+
+    /*
+        Frames drawn from scratch to measure the static layer are counted apart from the copied
+        ones, and look the same.  The logged averages are what show the saving.
+     */
+    public void testFrameStatsSeparateDirectFrames() {
+        Bitmap cached = Bitmap.createBitmap(SURFACE_SIZE, SURFACE_SIZE, Bitmap.Config.ARGB_8888);
+        Bitmap direct = Bitmap.createBitmap(SURFACE_SIZE, SURFACE_SIZE, Bitmap.Config.ARGB_8888);
+        mRenderer.setDirectFrameInterval(10);
+        mRenderer.resetFrameStats();
+        for (int i = 0; i < FRAMES; i++) {
+            // The tenth of every ten is the one drawn from scratch.
+            mRenderer.draw(new Canvas(i % 10 == 9 ? direct : cached), NOW + i);
+        }
+        assertEquals(FRAMES / 10, mRenderer.getDirectFrameCount());
+        assertEquals(FRAMES - FRAMES / 10, mRenderer.getLayerFrameCount());
+        assertTrue(cached.sameAs(direct));
+
+        mRenderer.logFrameStats(LOG_TAG);
+        assertEquals(0, mRenderer.getDirectFrameCount());
+        assertEquals(0, mRenderer.getLayerFrameCount());
+    }
+
+    private int countAllocations(boolean ambient) {
+        mRenderer.setAmbient(ambient);
+        // The first frame of a minute lays out the texts, which is allowed to allocate.
+        mRenderer.draw(mCanvas, NOW);
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        for (int i = 0; i < FRAMES; i++) {
+            mRenderer.draw(mCanvas, NOW + i);
+        }
+        Debug.stopAllocCounting();
+        return Debug.getThreadAllocCount();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.shared.ForecastPayload;
+
+/*
+    Checks that the forecast, and when it arrived, outlive the store that saved them, the way
+    they have to outlive the watch face process.
+ */
+public class TestWatchForecastStore extends AndroidTestCase {
+
+    private static final long NOW = 1419033600000L;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        new WatchForecastStore(mContext).clear();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        new WatchForecastStore(mContext).clear();
+        super.tearDown();
+    }
+
+    public void testEmptyStoreIsStale() {
+        WatchForecastStore store = new WatchForecastStore(mContext);
+        assertNull(store.load());
+        assertTrue(store.isStale(NOW));
+    }
+
+    public void testForecastSurvivesRestart() {
+        ForecastPayload payload = new ForecastPayload.Builder(NOW)
+                .addDay(21.5, 12, 501)
+                .addDay(19, 10.5, 800)
+                .build();
+        new WatchForecastStore(mContext).save(new WatchForecastStore.Forecast(payload, NOW));
+
+        // A new store, as the next watch face process would make.
+        WatchForecastStore store = new WatchForecastStore(mContext);
+        WatchForecastStore.Forecast forecast = store.load();
+        assertNotNull(forecast);
+        assertEquals(2, forecast.payload.getDayCount());
+        assertEquals(21.5, forecast.payload.getHigh(0));
+        assertEquals(10.5, forecast.payload.getLow(1));
+        assertEquals(800, forecast.payload.getConditionId(1));
+        assertEquals(NOW, forecast.syncTime);
+
+        assertFalse(store.isStale(NOW + WatchForecastStore.STALE_AFTER_MILLIS));
+        assertTrue(store.isStale(NOW + WatchForecastStore.STALE_AFTER_MILLIS + 1));
+    }
+
+    public void testUnreadablePayloadIsIgnored() {
+        mContext.getSharedPreferences("watch_forecast", 0).edit()
+                .putString("payload", "AAAA")
+                .putLong("sync_time", NOW)
+                .commit();
+        assertNull(new WatchForecastStore(mContext).load());
+    }
+}
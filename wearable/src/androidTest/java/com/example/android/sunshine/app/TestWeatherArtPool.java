@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.test.AndroidTestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Checks that the art pool decodes at exactly the size asked for, and serves the second request
+    for the same art from its cache.
+ */
+public class TestWeatherArtPool extends AndroidTestCase {
+
+    private static final int ART_SIZE = 32;
+
+    private WeatherArtPool mPool;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPool = new WeatherArtPool(mContext.getResources());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mPool.quit();
+        super.tearDown();
+    }
+
+    public void testDecodesAtRequestedSize() throws InterruptedException {
+        assertNull(mPool.getCached(R.drawable.art_storm, ART_SIZE));
+
+        Bitmap art = requestAndWait(R.drawable.art_storm, ART_SIZE);
+        assertNotNull(art);
+        assertEquals(ART_SIZE, art.getWidth());
+        assertEquals(ART_SIZE, art.getHeight());
+
+        assertSame("The second request should come from the cache",
+                art, mPool.getCached(R.drawable.art_storm, ART_SIZE));
+        assertSame(art, requestAndWait(R.drawable.art_storm, ART_SIZE));
+    }
+
+    /*
+        Decoding one piece of art after another reuses the scratch bitmap; the art handed out
+        must not change when it is.
+     */
+    public void testReusedScratchDoesNotChangeArt() throws InterruptedException {
+        Bitmap clear = requestAndWait(R.drawable.art_clear, ART_SIZE);
+        Bitmap copy = clear.copy(clear.getConfig(), false);
+        requestAndWait(R.drawable.art_rain, ART_SIZE);
+        requestAndWait(R.drawable.art_snow, ART_SIZE * 2);
+        assertTrue(clear.sameAs(copy));
+    }
+
+    /*
+        Once the pool has quit, as it does when the engine is destroyed, nothing it was still
+        decoding is delivered.
+     */
+    public void testNoCallbackAfterQuit() throws InterruptedException {
+        final CountDownLatch delivered = new CountDownLatch(1);
+        WeatherArtPool.Callback callback = new WeatherArtPool.Callback() {
+            @Override
+            public void onArtReady(int artResId, int size, Bitmap art) {
+                delivered.countDown();
+            }
+        };
+        mPool.request(R.drawable.art_storm, ART_SIZE, callback);
+        mPool.request(R.drawable.art_rain, ART_SIZE, callback);
+        mPool.quit();
+        mPool.request(R.drawable.art_snow, ART_SIZE, callback);
+        assertFalse("Art was delivered after quit", delivered.await(1, TimeUnit.SECONDS));
+    }
+
+    private Bitmap requestAndWait(int artResId, int size) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        final Bitmap[] result = new Bitmap[1];
+        mPool.request(artResId, size, new WeatherArtPool.Callback() {
+            @Override
+            public void onArtReady(int artResId, int size, Bitmap art) {
+                result[0] = art;
+                done.countDown();
+            }
+        });
+        assertTrue("The art never arrived", done.await(5, TimeUnit.SECONDS));
+        return result[0];
+    }
+}
@@ -20,15 +20,9 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.content.res.Resources;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
 import android.graphics.Rect;
-import android.graphics.RectF;
-import android.graphics.Typeface;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
@@ -41,6 +35,9 @@ import android.util.Log;
 import android.view.SurfaceHolder;
 import android.widget.Toast;
 
+import com.example.android.sunshine.shared.ForecastPayload;
+import com.example.android.sunshine.shared.WeatherConditions;
+import com.example.android.sunshine.shared.WearableProtocol;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.common.api.ResultCallback;
@@ -50,14 +47,13 @@ import com.google.android.gms.wearable.DataEventBuffer;
 import com.google.android.gms.wearable.DataItem;
 import com.google.android.gms.wearable.DataMap;
 import com.google.android.gms.wearable.DataMapItem;
-import com.google.android.gms.wearable.PutDataMapRequest;
-import com.google.android.gms.wearable.PutDataRequest;
+import com.google.android.gms.wearable.MessageApi;
+import com.google.android.gms.wearable.MessageEvent;
+import com.google.android.gms.wearable.Node;
+import com.google.android.gms.wearable.NodeApi;
 import com.google.android.gms.wearable.Wearable;
 
 import java.lang.ref.WeakReference;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.Date;
 import java.util.Locale;
 import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
@@ -67,9 +63,6 @@ import java.util.concurrent.TimeUnit;
  * low-bit ambient mode, the text is drawn without anti-aliasing in ambient mode.
  */
 public class SunshineWatchFaceService extends CanvasWatchFaceService {
-    private static final Typeface NORMAL_TYPEFACE =
-            Typeface.create("sans-serif-thin", Typeface.NORMAL);
-
     private final static String LOG_TAG = "SunshineWatchService";
 
     /**
@@ -83,6 +76,22 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
      */
     private static final int MSG_UPDATE_TIME = 0;
 
+    // In debug builds, one in this many interactive frames is drawn without the static layer, so
+    // the frame stats logged when the face is hidden show what the layer saves.
+    private static final int DEBUG_DIRECT_FRAME_INTERVAL = 4;
+
+    // Our art in WeatherConditions.ART_* order.
+    private static final int[] ARTS = {
+            R.drawable.art_storm,
+            R.drawable.art_light_rain,
+            R.drawable.art_rain,
+            R.drawable.art_snow,
+            R.drawable.art_fog,
+            R.drawable.art_clear,
+            R.drawable.art_light_clouds,
+            R.drawable.art_clouds
+    };
+
     @Override
     public Engine onCreateEngine() {
         return new Engine();
@@ -108,34 +117,31 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
         }
     }
 
-    private class Engine extends CanvasWatchFaceService.Engine implements DataApi.DataListener, GoogleApiClient.ConnectionCallbacks, GoogleApiClient.OnConnectionFailedListener {
-        private static final String WEATHER_PATH = "/weather";
-        private static final String WEATHER_REQUEST_PATH = "/weather-request";
-        private static final String LOW_TEMP_KEY = "low_temp_key";
-        private static final String HIGH_TEMP_KEY = "high_temp_key";
-        private static final String WEATHER_CONDITION_KEY = "weather_condition_key";
-        private static final String REQUEST_ID_STRING = "request_id";
+    private class Engine extends CanvasWatchFaceService.Engine implements DataApi.DataListener, MessageApi.MessageListener, GoogleApiClient.ConnectionCallbacks, GoogleApiClient.OnConnectionFailedListener {
         private final Handler mUpdateTimeHandler = new EngineHandler(this);
         private boolean mRegisteredTimeZoneReceiver = false;
-        private Paint mBackgroundPaint, mHourBgPaint, mMinuteBgPaint, mWeatherBitmapPaint;
-        private RectF mHourRect, mMinuteRect, mWeatherContainer;
-        private Paint mTimeTextPaint, mDateTextPaint, mHourTextPaint, mMinuteTextPaint, mAmPmTextPaint, mTempTextPaint;
-        private Calendar mCalendar;
+        private WatchFaceRenderer mRenderer;
+        private WeatherArtPool mArtPool;
+        // The art for the latest weather, and its temperatures.
+        private int mArtResId = -1;
+        private String mTempText;
+        // The whole forecast the phone sent, and which of its days is on screen.
+        private ForecastPayload mForecast;
+        private int mShownDay = -1;
         private final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                mCalendar.setTimeZone(TimeZone.getDefault());
-                long now = System.currentTimeMillis();
-                mCalendar.setTimeInMillis(now);
+                if (Intent.ACTION_LOCALE_CHANGED.equals(intent.getAction())) {
+                    mRenderer.setLocale(Locale.getDefault());
+                } else {
+                    mRenderer.setTimeZone(TimeZone.getDefault());
+                }
+                invalidate();
             }
         };
-        private boolean mLowBitAmbient;
-        private Bitmap mBackgroundBitmap, mWeatherBitmap;
-        private boolean is24Hrs;
         private GoogleApiClient mGoogleApiClient;
         private Toast mToast;
-        private String mTempText;
-        private long mLastSyncTime;
+        private WatchForecastStore mForecastStore;
 
 
         @Override
@@ -148,77 +154,43 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
                     .setShowSystemUiTime(false)
                     .setAcceptsTapEvents(true)
                     .build());
-            Resources resources = SunshineWatchFaceService.this.getResources();
-
-            mBackgroundPaint = new Paint();
-            mBackgroundBitmap = BitmapFactory.decodeResource(resources, R.drawable.bg);
-            mWeatherBitmap = BitmapFactory.decodeResource(resources, R.drawable.art_clear);
-            mTempTextPaint = createTextPaint(Color.BLACK);
-            mWeatherBitmapPaint = new Paint();
-
-            //noinspection deprecation
-            mTimeTextPaint = createTextPaint(resources.getColor(R.color.digital_text));
-            mTimeTextPaint.setShadowLayer(1.0f, 0, 1.0f, Color.BLACK);
-            mHourTextPaint = createTextPaint(Color.BLACK);
-            mMinuteTextPaint = createTextPaint(Color.BLACK);
-            mDateTextPaint = createTextPaint(Color.BLACK);
-            mAmPmTextPaint = createTextPaint(Color.BLACK);
-            mHourBgPaint = new Paint();
-            mMinuteBgPaint = new Paint();
-            mHourBgPaint.setShadowLayer(1.0f, 0, 1.0f, Color.BLACK);
-            mMinuteBgPaint.setShadowLayer(1.0f, 0, 1.0f, Color.BLACK);
-            mHourBgPaint.setColor(Color.WHITE);
-            mMinuteBgPaint.setColor(Color.WHITE);
-            mHourBgPaint.setAntiAlias(true);
-            mMinuteBgPaint.setAntiAlias(true);
-
-            mCalendar = Calendar.getInstance();
-            is24Hrs = DateFormat.is24HourFormat(getApplicationContext());
+            mRenderer = new WatchFaceRenderer(SunshineWatchFaceService.this.getResources(),
+                    DateFormat.is24HourFormat(getApplicationContext()));
+            if (BuildConfig.DEBUG) {
+                mRenderer.setDirectFrameInterval(DEBUG_DIRECT_FRAME_INTERVAL);
+            }
+            mArtPool = new WeatherArtPool(SunshineWatchFaceService.this.getResources());
+
+            // Show the last forecast we got straight away, even after a restart.
+            mForecastStore = new WatchForecastStore(SunshineWatchFaceService.this);
+            WatchForecastStore.Forecast forecast = mForecastStore.load();
+            if (forecast != null) {
+                showForecast(forecast.payload);
+            }
             mGoogleApiClient = new GoogleApiClient.Builder(SunshineWatchFaceService.this)
                     .addConnectionCallbacks(this)
                     .addOnConnectionFailedListener(this)
 
                     .addApi(Wearable.API)
                     .build();
-            mTempText = String.format(Locale.getDefault(), getString(R.string.temp_format), "-", "-");
 
         }
 
         @Override
         public void onDestroy() {
             mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            mArtPool.quit();
             super.onDestroy();
         }
 
-        private Paint createTextPaint(int textColor) {
-            Paint paint = new Paint();
-            paint.setColor(textColor);
-            paint.setTypeface(NORMAL_TYPEFACE);
-            paint.setAntiAlias(true);
-            return paint;
-        }
-
         @Override
         public void onSurfaceChanged(SurfaceHolder holder, int format, int width, int height) {
             super.onSurfaceChanged(holder, format, width, height);
-            float scale = ((float) width) / (float) mBackgroundBitmap.getWidth();
-            mBackgroundBitmap = Bitmap.createScaledBitmap(mBackgroundBitmap,
-                    (int) (mBackgroundBitmap.getWidth() * scale),
-                    (int) (mBackgroundBitmap.getHeight() * scale), true);
-
-
-            mTimeTextPaint.setTextSize(is24Hrs ? height * 0.3F : height * 0.225F);
-            mDateTextPaint.setTextSize(height * 0.075F);
-            mHourRect = new RectF(width * 0.1F, height * 0.3125F, width * 0.475F, height * 0.6875F);
-            mMinuteRect = new RectF(width * 0.525F, height * 0.3125F, width * 0.9F, height * 0.6875F);
-            mWeatherContainer = new RectF(0, height * 0.85F, width, height);
-            float timeTextSize = mHourRect.height() * 0.6F;
-            float amPmTextSize = height * 0.075F;
-            mHourTextPaint.setTextSize(timeTextSize);
-            mMinuteTextPaint.setTextSize(timeTextSize);
-            mAmPmTextPaint.setTextSize(amPmTextSize);
-            mTempTextPaint.setTextSize(width * 0.08F);
-
+            mRenderer.setSurfaceSize(width, height);
+            if (mArtResId != -1) {
+                // The art is drawn at a new size now.
+                showWeather(mArtResId, mTempText);
+            }
         }
 
         @Override
@@ -229,16 +201,18 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
                 registerReceiver();
                 mGoogleApiClient.connect();
 
-                // Update time zone in case it changed while we weren't visible.
-                mCalendar.setTimeZone(TimeZone.getDefault());
-                long now = System.currentTimeMillis();
-                mCalendar.setTimeInMillis(now);
-                is24Hrs = DateFormat.is24HourFormat(getApplicationContext());
+                // Update time zone and locale in case they changed while we weren't visible.
+                mRenderer.setTimeZone(TimeZone.getDefault());
+                mRenderer.setLocale(Locale.getDefault());
+                mRenderer.set24HourFormat(DateFormat.is24HourFormat(getApplicationContext()));
+                showForecastDay(System.currentTimeMillis());
             } else {
+                mRenderer.logFrameStats(LOG_TAG);
                 unregisterReceiver();
                 if (mGoogleApiClient != null && mGoogleApiClient.isConnected()) {
-                    mGoogleApiClient.disconnect();
                     Wearable.DataApi.removeListener(mGoogleApiClient, this);
+                    Wearable.MessageApi.removeListener(mGoogleApiClient, this);
+                    mGoogleApiClient.disconnect();
                 }
             }
 
@@ -253,6 +227,7 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             }
             mRegisteredTimeZoneReceiver = true;
             IntentFilter filter = new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED);
+            filter.addAction(Intent.ACTION_LOCALE_CHANGED);
             SunshineWatchFaceService.this.registerReceiver(mTimeZoneReceiver, filter);
         }
 
@@ -268,23 +243,21 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
         @Override
         public void onPropertiesChanged(Bundle properties) {
             super.onPropertiesChanged(properties);
-            mLowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
+            mRenderer.setLowBitAmbient(properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false));
 
         }
 
         @Override
         public void onTimeTick() {
             super.onTimeTick();
+            showForecastDay(System.currentTimeMillis());
             invalidate();
         }
 
         @Override
         public void onAmbientModeChanged(boolean inAmbientMode) {
             super.onAmbientModeChanged(inAmbientMode);
-            if (mLowBitAmbient) {
-                mTimeTextPaint.setAntiAlias(!inAmbientMode);
-                mDateTextPaint.setAntiAlias(!inAmbientMode);
-            }
+            mRenderer.setAmbient(inAmbientMode);
             invalidate();
 
 
@@ -301,7 +274,7 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
         public void onTapCommand(int tapType, int x, int y, long eventTime) {
             switch (tapType) {
                 case TAP_TYPE_TAP:
-                    if (mWeatherContainer.contains(x, y)) {
+                    if (mRenderer.isInWeatherContainer(x, y)) {
                         requestWeatherUpdate();
                     }
                     break;
@@ -311,44 +284,7 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
 
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
-            // Draw the background.
-            long now = System.currentTimeMillis();
-            mCalendar.setTimeInMillis(now);
-            Date date = new Date();
-            date.setTime(now);
-            String dateFormatString = getString(R.string.date_format);
-            SimpleDateFormat sdf = new SimpleDateFormat(dateFormatString, Locale.getDefault());
-            String dateString = sdf.format(date);
-            String hourText = is24Hrs ? String.format(Locale.getDefault(), getString(R.string.time_format_single), mCalendar.get(Calendar.HOUR_OF_DAY)) : String.format(Locale.getDefault(), "%02d", mCalendar.get(Calendar.HOUR));
-            String amPmText = (mCalendar.get(Calendar.AM_PM) == 0) ? getString(R.string.am) : getString(R.string.pm);
-            String minuteText = String.format(Locale.getDefault(), getString(R.string.time_format_single), mCalendar.get(Calendar.MINUTE));
-            if (isInAmbientMode()) {
-                canvas.drawColor(Color.BLACK);
-                String fullTime = is24Hrs ? String.format(Locale.getDefault(), getString(R.string.time_format_full), hourText, minuteText)
-                        : String.format(Locale.getDefault(), getString(R.string.time_format_full_am_pm), hourText, minuteText, amPmText);
-                canvas.drawText(fullTime, bounds.centerX() - mTimeTextPaint.measureText(fullTime) / 2, bounds.centerY(), mTimeTextPaint);
-                mDateTextPaint.setColor(Color.WHITE);
-                canvas.drawText(dateString, bounds.centerX() - mDateTextPaint.measureText(dateString) / 2, bounds.height() * 0.6F, mDateTextPaint);
-            } else {
-
-
-                canvas.drawBitmap(mBackgroundBitmap, 0, 0, mBackgroundPaint);
-                canvas.drawOval(mHourRect, mHourBgPaint);
-                canvas.drawOval(mMinuteRect, mMinuteBgPaint);
-                float weatherSize = bounds.width() * 0.1F;
-                mWeatherBitmap = Bitmap.createScaledBitmap(mWeatherBitmap, (int) (weatherSize), (int) (weatherSize), true);
-                canvas.drawText(hourText, mHourRect.centerX() - mHourTextPaint.measureText(hourText) / 2, mHourRect.centerY() + (mHourTextPaint.descent() - mHourTextPaint.ascent()) / 3, mHourTextPaint);
-                canvas.drawText(minuteText, mMinuteRect.centerX() - mMinuteTextPaint.measureText(minuteText) / 2, mHourRect.centerY() + (mHourTextPaint.descent() - mHourTextPaint.ascent()) / 3, mMinuteTextPaint);
-                if (!is24Hrs) {
-                    canvas.drawText(amPmText, bounds.centerX() - mAmPmTextPaint.measureText(amPmText) / 2, bounds.height() * 0.6875F, mAmPmTextPaint);
-                }
-                mDateTextPaint.setColor(Color.BLACK);
-                canvas.drawText(dateString, bounds.centerX() - mDateTextPaint.measureText(dateString) / 2, mHourRect.bottom + bounds.height() * 0.1F, mDateTextPaint);
-                float weatherXOffset = bounds.centerX() - (mWeatherBitmap.getWidth() + mTempTextPaint.measureText(mTempText) + 0.025F * bounds.width()) / 2;
-                canvas.drawBitmap(mWeatherBitmap, weatherXOffset, bounds.height() * 0.85F, mWeatherBitmapPaint);
-                canvas.drawText(mTempText, weatherXOffset + mWeatherBitmap.getWidth() + 0.025F * bounds.width(), bounds.height() * 0.92F, mTempTextPaint);
-            }
-
+            mRenderer.draw(canvas, System.currentTimeMillis());
         }
 
         /**
@@ -374,43 +310,55 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
          * Handle updating the time periodically in interactive mode.
          */
         private void handleUpdateTimeMessage() {
+            long timeMs = System.currentTimeMillis();
+            showForecastDay(timeMs);
             invalidate();
             if (shouldTimerBeRunning()) {
-                long timeMs = System.currentTimeMillis();
                 long delayMs = INTERACTIVE_UPDATE_RATE_MINUTE
                         - (timeMs % INTERACTIVE_UPDATE_RATE_MINUTE);
                 mUpdateTimeHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, delayMs);
             }
         }
 
+        /**
+         * Asks the phone for the forecast.  It answers with a message straight from its database,
+         * or, if what it has is too old, syncs and sends the result as the usual DataItem.
+         */
         private void requestWeatherUpdate() {
             makeToast(getString(R.string.updating_weather_toast));
 
-            PutDataMapRequest putDataMapRequest = PutDataMapRequest.create(WEATHER_REQUEST_PATH);
-            putDataMapRequest.getDataMap().putLong(REQUEST_ID_STRING, System.currentTimeMillis());
-            PutDataRequest putDataRequest = putDataMapRequest.asPutDataRequest();
-            Wearable.DataApi.putDataItem(mGoogleApiClient, putDataRequest)
-                    .setResultCallback(new ResultCallback<DataApi.DataItemResult>() {
+            Wearable.NodeApi.getConnectedNodes(mGoogleApiClient)
+                    .setResultCallback(new ResultCallback<NodeApi.GetConnectedNodesResult>() {
                         @Override
-                        public void onResult(@NonNull DataApi.DataItemResult dataItemResult) {
-                            String logText = dataItemResult.getStatus().isSuccess() ?
-                                    "Successful request"
-                                    : "Request failed " + dataItemResult.getStatus().getStatusMessage();
-                            Log.d(LOG_TAG, "onResult " + logText);
+                        public void onResult(@NonNull NodeApi.GetConnectedNodesResult result) {
+                            for (Node node : result.getNodes()) {
+                                Wearable.MessageApi.sendMessage(mGoogleApiClient, node.getId(),
+                                        WearableProtocol.WEATHER_REQUEST_PATH, null)
+                                        .setResultCallback(new ResultCallback<MessageApi.SendMessageResult>() {
+                                            @Override
+                                            public void onResult(@NonNull MessageApi.SendMessageResult sendResult) {
+                                                String logText = sendResult.getStatus().isSuccess() ?
+                                                        "Successful request"
+                                                        : "Request failed " + sendResult.getStatus().getStatusMessage();
+                                                Log.d(LOG_TAG, "onResult " + logText);
+                                            }
+                                        });
+                            }
                         }
                     });
-
         }
 
         @Override
         public void onConnected(@Nullable Bundle bundle) {
             Wearable.DataApi.addListener(mGoogleApiClient, this);
+            Wearable.MessageApi.addListener(mGoogleApiClient, this);
             long currentTime = System.currentTimeMillis();
             //Since we don't want to request weather sync manually every visibility change
             //we set 4 hours interval between allowed updates, unless tapped on weather
             //If there were changes in weather pushed from the server to mobile or manual sync on mobile
             //weather will sync anyway
-            if ((currentTime - mLastSyncTime) > 240 * 60 * 1000) {
+            //The time of the last update is stored, so a restart doesn't count as one being due
+            if (mForecastStore.isStale(currentTime)) {
                 requestWeatherUpdate();
             }
 
@@ -424,34 +372,95 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
         @Override
         public void onDataChanged(DataEventBuffer dataEventBuffer) {
             Log.d(LOG_TAG, "onDataChanged is called on wearable");
-            String high, low;
-            mLastSyncTime = System.currentTimeMillis();
-            int condition;
             for (DataEvent dataEvent : dataEventBuffer) {
                 if (dataEvent.getType() == DataEvent.TYPE_CHANGED) {
                     DataItem dataItem = dataEvent.getDataItem();
-                    if (dataItem.getUri().getPath().equals(WEATHER_PATH)) {
+                    if (dataItem.getUri().getPath().equals(WearableProtocol.WEATHER_PATH)) {
                         DataMap dataMap = DataMapItem.fromDataItem(dataItem).getDataMap();
-                        high = dataMap.containsKey(HIGH_TEMP_KEY) ? formatTemperature(dataMap.getDouble(HIGH_TEMP_KEY)) : "N/A";
-                        low = dataMap.containsKey(LOW_TEMP_KEY) ? formatTemperature(dataMap.getDouble(LOW_TEMP_KEY)) : "N/A";
-                        condition = dataMap.containsKey(WEATHER_CONDITION_KEY) ? dataMap.getInt(WEATHER_CONDITION_KEY) : 800;
-                        configureWeatherView(high, low, condition);
+                        onForecastReceived(dataMap.getByteArray(WearableProtocol.KEY_FORECAST_PAYLOAD));
                     }
                 }
             }
 
         }
 
+        @Override
+        public void onMessageReceived(MessageEvent messageEvent) {
+            if (messageEvent.getPath().equals(WearableProtocol.WEATHER_RESPONSE_PATH)) {
+                onForecastReceived(messageEvent.getData());
+            }
+        }
+
+        private void onForecastReceived(byte[] bytes) {
+            ForecastPayload payload;
+            try {
+                payload = ForecastPayload.wrap(bytes);
+            } catch (IllegalArgumentException e) {
+                // A phone app newer or older than us; keep what we have.
+                Log.w(LOG_TAG, "Can't read forecast: " + e.getMessage());
+                return;
+            }
+            mForecastStore.save(new WatchForecastStore.Forecast(payload, System.currentTimeMillis()));
+            showForecast(payload);
+            makeToast(getString(R.string.weather_updated_toast));
+        }
+
         @Override
         public void onConnectionFailed(@NonNull ConnectionResult connectionResult) {
 
         }
 
-        private void configureWeatherView(String high, String low, int condition) {
-            mWeatherBitmap = BitmapFactory.decodeResource(SunshineWatchFaceService.this.getResources(), getArtResourceForWeatherCondition(condition));
-            mTempText = String.format(Locale.getDefault(), getString(R.string.temp_format), high, low);
-            makeToast(getString(R.string.weather_updated_toast));
-            invalidate();
+        private void showForecast(ForecastPayload forecast) {
+            mForecast = forecast;
+            mShownDay = -1;
+            showForecastDay(System.currentTimeMillis());
+        }
+
+        /**
+         * Shows the day of the forecast that the time falls on.  Only that day's values are read
+         * out of the payload, and only when the day changes, so past midnight the watch moves on
+         * to tomorrow's weather without hearing from the phone.
+         */
+        private void showForecastDay(long now) {
+            if (mForecast == null || mForecast.getDayCount() == 0) {
+                return;
+            }
+            int day = mForecast.getDayIndex(now);
+            if (day == mShownDay) {
+                return;
+            }
+            mShownDay = day;
+            String high = formatTemperature(mForecast.getHigh(day));
+            String low = formatTemperature(mForecast.getLow(day));
+            showWeather(getArtResourceForWeatherCondition(mForecast.getConditionId(day)),
+                    String.format(Locale.getDefault(), getString(R.string.temp_format), high, low));
+        }
+
+        /**
+         * Shows the weather once its art is ready, which is right away unless it has to be
+         * decoded first.  Decoding happens off the main thread, so it never holds up a frame.
+         */
+        private void showWeather(final int artResId, final String tempText) {
+            mArtResId = artResId;
+            mTempText = tempText;
+            int size = mRenderer.getWeatherArtSize();
+            if (artResId == -1 || size <= 0) {
+                // No art for this condition, or no surface to size it for yet; onSurfaceChanged
+                // asks again once there is one.
+                mRenderer.setWeather(null, tempText);
+                invalidate();
+                return;
+            }
+            mArtPool.request(artResId, size, new WeatherArtPool.Callback() {
+                @Override
+                public void onArtReady(int readyResId, int size, Bitmap art) {
+                    // Newer weather may have come in while this was decoding.
+                    if (readyResId == mArtResId && tempText.equals(mTempText)) {
+                        mRenderer.setWeather(art, tempText);
+                        invalidate();
+                    }
+                }
+            });
 
         }
 
@@ -470,32 +479,8 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
     }
 
     private int getArtResourceForWeatherCondition(int weatherId) {
-        // Based on weather code data found at:
-        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
-        if (weatherId >= 200 && weatherId <= 232) {
-            return R.drawable.art_storm;
-        } else if (weatherId >= 300 && weatherId <= 321) {
-            return R.drawable.art_light_rain;
-        } else if (weatherId >= 500 && weatherId <= 504) {
-            return R.drawable.art_rain;
-        } else if (weatherId == 511) {
-            return R.drawable.art_snow;
-        } else if (weatherId >= 520 && weatherId <= 531) {
-            return R.drawable.art_rain;
-        } else if (weatherId >= 600 && weatherId <= 622) {
-            return R.drawable.art_snow;
-        } else if (weatherId >= 701 && weatherId <= 761) {
-            return R.drawable.art_fog;
-        } else if (weatherId == 761 || weatherId == 781) {
-            return R.drawable.art_storm;
-        } else if (weatherId == 800) {
-            return R.drawable.art_clear;
-        } else if (weatherId == 801) {
-            return R.drawable.art_light_clouds;
-        } else if (weatherId >= 802 && weatherId <= 804) {
-            return R.drawable.art_clouds;
-        }
-        return -1;
+        int art = WeatherConditions.getArt(weatherId);
+        return art == WeatherConditions.ART_NONE ? -1 : ARTS[art];
     }
 
 
@@ -0,0 +1,420 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.graphics.Typeface;
+import android.util.Log;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Draws the Sunshine watch face.  Everything a frame needs is worked out ahead of time: the
+ * texts and where they go once a minute, the bitmaps once per surface size or weather change,
+ * so {@link #draw(Canvas, long)} allocates nothing and only measures text when the minute
+ * changes.  Drawing runs many times a minute, and on a watch every allocation and the garbage
+ * collection it leads to comes out of the battery.
+ *
+ * In interactive mode, everything but the digits (the background, the shadowed dials, the date
+ * and the weather) is drawn once into an offscreen layer, which each frame just copies.
+ * Shadow layers are slow to draw in software, and they only change when the surface, the time
+ * format, the date or the weather does.  To see what that saves, every so many interactive
+ * frames can be drawn from scratch instead; the frame stats keep those apart from the copied
+ * ones.
+ */
+class WatchFaceRenderer {
+    private static final Typeface NORMAL_TYPEFACE =
+            Typeface.create("sans-serif-thin", Typeface.NORMAL);
+
+    private static final long MINUTE_IN_MILLIS = 60 * 1000;
+
+    private final Resources mResources;
+
+    private final Paint mBackgroundPaint, mHourBgPaint, mMinuteBgPaint, mWeatherBitmapPaint;
+    private final Paint mTimeTextPaint, mDateTextPaint, mHourTextPaint, mMinuteTextPaint,
+            mAmPmTextPaint, mTempTextPaint;
+    private final RectF mHourRect = new RectF();
+    private final RectF mMinuteRect = new RectF();
+    private final RectF mWeatherContainer = new RectF();
+
+    // The background as decoded, and scaled to the surface.
+    private final Bitmap mBackgroundSource;
+    private Bitmap mBackgroundBitmap;
+    // The art for the current condition as decoded, and scaled to its place on the surface.
+    private Bitmap mWeatherSource;
+    private Bitmap mWeatherBitmap;
+    private String mTempText;
+
+    private int mWidth, mHeight;
+    private boolean mAmbient;
+    private boolean mLowBitAmbient;
+    private boolean mIs24Hour;
+
+    // Everything but the digits, drawn once and copied onto every interactive frame.
+    private Bitmap mStaticLayer;
+    private final Canvas mStaticLayerCanvas = new Canvas();
+    private boolean mStaticLayerValid;
+    private boolean mStaticLayerEnabled = true;
+    // Every how many interactive frames one is drawn without the layer, or 0 for never.
+    private int mDirectFrameInterval;
+    private int mInteractiveFrames;
+    // The date the static layer shows.
+    private String mStaticLayerDateText;
+
+    // Time spent in draw() since the stats were last logged, by the kind of frame.
+    private final FrameStats mAmbientFrames = new FrameStats();
+    private final FrameStats mLayerFrames = new FrameStats();
+    private final FrameStats mDirectFrames = new FrameStats();
+
+    private final Calendar mCalendar = Calendar.getInstance();
+    private final Date mDate = new Date();
+    private SimpleDateFormat mDateFormat;
+    // The locale mDateFormat was built for.
+    private Locale mLocale;
+
+    // The minute the texts below were worked out for, or -1 when they need working out again.
+    private long mLaidOutMinute = -1;
+    private String mHourText, mMinuteText, mAmPmText, mFullTimeText, mDateText;
+    private float mHourTextX, mMinuteTextX, mDigitsY, mAmPmTextX, mFullTimeTextX, mDateTextX,
+            mWeatherX, mTempTextX;
+
+    WatchFaceRenderer(Resources resources, boolean is24Hour) {
+        mResources = resources;
+        mIs24Hour = is24Hour;
+
+        mBackgroundPaint = new Paint();
+        mBackgroundSource = BitmapFactory.decodeResource(resources, R.drawable.bg);
+        mBackgroundBitmap = mBackgroundSource;
+        mWeatherSource = BitmapFactory.decodeResource(resources, R.drawable.art_clear);
+        mWeatherBitmap = mWeatherSource;
+        mTempTextPaint = createTextPaint(Color.BLACK);
+        mWeatherBitmapPaint = new Paint();
+
+        //noinspection deprecation
+        mTimeTextPaint = createTextPaint(resources.getColor(R.color.digital_text));
+        mTimeTextPaint.setShadowLayer(1.0f, 0, 1.0f, Color.BLACK);
+        mHourTextPaint = createTextPaint(Color.BLACK);
+        mMinuteTextPaint = createTextPaint(Color.BLACK);
+        mDateTextPaint = createTextPaint(Color.BLACK);
+        mAmPmTextPaint = createTextPaint(Color.BLACK);
+        mHourBgPaint = new Paint();
+        mMinuteBgPaint = new Paint();
+        mHourBgPaint.setShadowLayer(1.0f, 0, 1.0f, Color.BLACK);
+        mMinuteBgPaint.setShadowLayer(1.0f, 0, 1.0f, Color.BLACK);
+        mHourBgPaint.setColor(Color.WHITE);
+        mMinuteBgPaint.setColor(Color.WHITE);
+        mHourBgPaint.setAntiAlias(true);
+        mMinuteBgPaint.setAntiAlias(true);
+
+        setLocale(Locale.getDefault());
+        mTempText = resources.getString(R.string.temp_format, "-", "-");
+    }
+
+    private static Paint createTextPaint(int textColor) {
+        Paint paint = new Paint();
+        paint.setColor(textColor);
+        paint.setTypeface(NORMAL_TYPEFACE);
+        paint.setAntiAlias(true);
+        return paint;
+    }
+
+    void setSurfaceSize(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+
+        // Always scaled from the decoded bitmap, never from a previous scaled copy.
+        float scale = ((float) width) / (float) mBackgroundSource.getWidth();
+        mBackgroundBitmap = Bitmap.createScaledBitmap(mBackgroundSource,
+                (int) (mBackgroundSource.getWidth() * scale),
+                (int) (mBackgroundSource.getHeight() * scale), true);
+
+        mTimeTextPaint.setTextSize(mIs24Hour ? height * 0.3F : height * 0.225F);
+        mDateTextPaint.setTextSize(height * 0.075F);
+        mHourRect.set(width * 0.1F, height * 0.3125F, width * 0.475F, height * 0.6875F);
+        mMinuteRect.set(width * 0.525F, height * 0.3125F, width * 0.9F, height * 0.6875F);
+        mWeatherContainer.set(0, height * 0.85F, width, height);
+        float timeTextSize = mHourRect.height() * 0.6F;
+        float amPmTextSize = height * 0.075F;
+        mHourTextPaint.setTextSize(timeTextSize);
+        mMinuteTextPaint.setTextSize(timeTextSize);
+        mAmPmTextPaint.setTextSize(amPmTextSize);
+        mTempTextPaint.setTextSize(width * 0.08F);
+
+        scaleWeatherBitmap();
+        invalidateLayout();
+
+        Bitmap oldLayer = mStaticLayer;
+        mStaticLayer = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        mStaticLayerCanvas.setBitmap(mStaticLayer);
+        mStaticLayerValid = false;
+        if (oldLayer != null) {
+            oldLayer.recycle();
+        }
+    }
+
+    void set24HourFormat(boolean is24Hour) {
+        if (mIs24Hour != is24Hour) {
+            mIs24Hour = is24Hour;
+            if (mHeight > 0) {
+                mTimeTextPaint.setTextSize(is24Hour ? mHeight * 0.3F : mHeight * 0.225F);
+            }
+            invalidateLayout();
+            mStaticLayerValid = false;
+        }
+    }
+
+    void setTimeZone(TimeZone timeZone) {
+        mCalendar.setTimeZone(timeZone);
+        mDateFormat.setTimeZone(timeZone);
+        invalidateLayout();
+    }
+
+    void setLocale(Locale locale) {
+        if (locale.equals(mLocale)) {
+            return;
+        }
+        // Both the pattern and the month and day names may differ in the new locale.
+        mLocale = locale;
+        mDateFormat = new SimpleDateFormat(mResources.getString(R.string.date_format), locale);
+        mDateFormat.setTimeZone(mCalendar.getTimeZone());
+        invalidateLayout();
+        mStaticLayerValid = false;
+    }
+
+    void setAmbient(boolean ambient) {
+        mAmbient = ambient;
+        if (mLowBitAmbient) {
+            mTimeTextPaint.setAntiAlias(!ambient);
+            mDateTextPaint.setAntiAlias(!ambient);
+        }
+    }
+
+    void setLowBitAmbient(boolean lowBitAmbient) {
+        mLowBitAmbient = lowBitAmbient;
+    }
+
+    /**
+     * Shows new weather.  Art that isn't {@link #getWeatherArtSize()} already is scaled here,
+     * once, rather than on every frame.
+     */
+    void setWeather(Bitmap art, String tempText) {
+        if (art != null) {
+            mWeatherSource = art;
+            scaleWeatherBitmap();
+        }
+        mTempText = tempText;
+        invalidateLayout();
+        mStaticLayerValid = false;
+    }
+
+    /**
+     * Turns the static layer off, so every frame draws everything.
+     */
+    void setStaticLayerEnabled(boolean enabled) {
+        mStaticLayerEnabled = enabled;
+        mStaticLayerValid = false;
+    }
+
+    /**
+     * Draws one in every interval interactive frames without the static layer, leaving the layer
+     * as it is, so {@link #logFrameStats} can compare the two.  0 never does.
+     */
+    void setDirectFrameInterval(int interval) {
+        mDirectFrameInterval = interval;
+        mInteractiveFrames = 0;
+    }
+
+    boolean isInWeatherContainer(int x, int y) {
+        return mWeatherContainer.contains(x, y);
+    }
+
+    void draw(Canvas canvas, long now) {
+        long start = System.nanoTime();
+        boolean direct = false;
+        long minute = now / MINUTE_IN_MILLIS;
+        if (minute != mLaidOutMinute) {
+            layOut(now);
+            mLaidOutMinute = minute;
+            if (!mDateText.equals(mStaticLayerDateText)) {
+                mStaticLayerValid = false;
+            }
+        }
+
+        if (mAmbient) {
+            canvas.drawColor(Color.BLACK);
+            canvas.drawText(mFullTimeText, mFullTimeTextX, mHeight / 2, mTimeTextPaint);
+            mDateTextPaint.setColor(Color.WHITE);
+            canvas.drawText(mDateText, mDateTextX, mHeight * 0.6F, mDateTextPaint);
+        } else {
+            direct = !mStaticLayerEnabled || (mDirectFrameInterval > 0
+                    && mInteractiveFrames++ % mDirectFrameInterval == mDirectFrameInterval - 1);
+            if (direct) {
+                drawStaticLayer(canvas);
+            } else {
+                if (!mStaticLayerValid) {
+                    mStaticLayer.eraseColor(Color.TRANSPARENT);
+                    drawStaticLayer(mStaticLayerCanvas);
+                    mStaticLayerDateText = mDateText;
+                    mStaticLayerValid = true;
+                }
+                canvas.drawBitmap(mStaticLayer, 0, 0, null);
+            }
+            canvas.drawText(mHourText, mHourTextX, mDigitsY, mHourTextPaint);
+            canvas.drawText(mMinuteText, mMinuteTextX, mDigitsY, mMinuteTextPaint);
+            if (!mIs24Hour) {
+                canvas.drawText(mAmPmText, mAmPmTextX, mHeight * 0.6875F, mAmPmTextPaint);
+            }
+        }
+
+        long frameNanos = System.nanoTime() - start;
+        (mAmbient ? mAmbientFrames : direct ? mDirectFrames : mLayerFrames).add(frameNanos);
+    }
+
+    private void drawStaticLayer(Canvas canvas) {
+        canvas.drawBitmap(mBackgroundBitmap, 0, 0, mBackgroundPaint);
+        canvas.drawOval(mHourRect, mHourBgPaint);
+        canvas.drawOval(mMinuteRect, mMinuteBgPaint);
+        mDateTextPaint.setColor(Color.BLACK);
+        canvas.drawText(mDateText, mDateTextX, mHourRect.bottom + mHeight * 0.1F, mDateTextPaint);
+        canvas.drawBitmap(mWeatherBitmap, mWeatherX, mHeight * 0.85F, mWeatherBitmapPaint);
+        canvas.drawText(mTempText, mTempTextX, mHeight * 0.92F, mTempTextPaint);
+    }
+
+    /**
+     * Logs how long each kind of frame took since the stats were last logged, and what the
+     * static layer saved if both interactive kinds were drawn.
+     */
+    void logFrameStats(String tag) {
+        mAmbientFrames.log(tag, "ambient");
+        mLayerFrames.log(tag, "interactive, from the static layer");
+        mDirectFrames.log(tag, "interactive, drawn from scratch");
+        if (mLayerFrames.count > 0 && mDirectFrames.count > 0) {
+            Log.d(tag, String.format(Locale.US, "The static layer saves %.2f ms a frame",
+                    mDirectFrames.getAverageMillis() - mLayerFrames.getAverageMillis()));
+        }
+        resetFrameStats();
+    }
+
+    void resetFrameStats() {
+        mAmbientFrames.reset();
+        mLayerFrames.reset();
+        mDirectFrames.reset();
+    }
+
+    int getLayerFrameCount() {
+        return mLayerFrames.count;
+    }
+
+    int getDirectFrameCount() {
+        return mDirectFrames.count;
+    }
+
+    private void invalidateLayout() {
+        mLaidOutMinute = -1;
+    }
+
+    /**
+     * @return the width and height the condition art is drawn at, or 0 before the surface size
+     * is known.
+     */
+    int getWeatherArtSize() {
+        return (int) (mWidth * 0.1F);
+    }
+
+    private void scaleWeatherBitmap() {
+        int weatherSize = getWeatherArtSize();
+        if (weatherSize <= 0) {
+            return;
+        }
+        if (mWeatherSource.getWidth() == weatherSize && mWeatherSource.getHeight() == weatherSize) {
+            mWeatherBitmap = mWeatherSource;
+        } else {
+            mWeatherBitmap = Bitmap.createScaledBitmap(mWeatherSource, weatherSize, weatherSize,
+                    true);
+        }
+    }
+
+    /**
+     * Works out the texts for the minute that now falls in, and where each of them goes.
+     */
+    private void layOut(long now) {
+        mCalendar.setTimeInMillis(now);
+        mDate.setTime(now);
+        mDateText = mDateFormat.format(mDate);
+
+        mHourText = mIs24Hour
+                ? String.format(Locale.getDefault(), mResources.getString(R.string.time_format_single), mCalendar.get(Calendar.HOUR_OF_DAY))
+                : String.format(Locale.getDefault(), "%02d", mCalendar.get(Calendar.HOUR));
+        mAmPmText = (mCalendar.get(Calendar.AM_PM) == 0)
+                ? mResources.getString(R.string.am) : mResources.getString(R.string.pm);
+        mMinuteText = String.format(Locale.getDefault(),
+                mResources.getString(R.string.time_format_single), mCalendar.get(Calendar.MINUTE));
+        mFullTimeText = mIs24Hour
+                ? mResources.getString(R.string.time_format_full, mHourText, mMinuteText)
+                : mResources.getString(R.string.time_format_full_am_pm, mHourText, mMinuteText, mAmPmText);
+
+        float centerX = mWidth / 2;
+        mHourTextX = mHourRect.centerX() - mHourTextPaint.measureText(mHourText) / 2;
+        mMinuteTextX = mMinuteRect.centerX() - mMinuteTextPaint.measureText(mMinuteText) / 2;
+        mDigitsY = mHourRect.centerY() + (mHourTextPaint.descent() - mHourTextPaint.ascent()) / 3;
+        mAmPmTextX = centerX - mAmPmTextPaint.measureText(mAmPmText) / 2;
+        mFullTimeTextX = centerX - mTimeTextPaint.measureText(mFullTimeText) / 2;
+        mDateTextX = centerX - mDateTextPaint.measureText(mDateText) / 2;
+        mWeatherX = centerX - (mWeatherBitmap.getWidth() + mTempTextPaint.measureText(mTempText)
+                + 0.025F * mWidth) / 2;
+        mTempTextX = mWeatherX + mWeatherBitmap.getWidth() + 0.025F * mWidth;
+    }
+
+    private static class FrameStats {
+        int count;
+        long nanos;
+        long slowestNanos;
+
+        void add(long frameNanos) {
+            count++;
+            nanos += frameNanos;
+            slowestNanos = Math.max(slowestNanos, frameNanos);
+        }
+
+        double getAverageMillis() {
+            return count == 0 ? 0 : nanos / 1e6 / count;
+        }
+
+        void log(String tag, String kind) {
+            if (count > 0) {
+                Log.d(tag, String.format(Locale.US,
+                        "%d %s frames, %.2f ms average, %.2f ms slowest",
+                        count, kind, getAverageMillis(), slowestNanos / 1e6));
+            }
+        }
+
+        void reset() {
+            count = 0;
+            nanos = 0;
+            slowestNanos = 0;
+        }
+    }
+}
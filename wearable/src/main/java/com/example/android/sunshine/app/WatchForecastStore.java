@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Base64;
+import android.util.Log;
+
+import com.example.android.sunshine.shared.ForecastPayload;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The last forecast the phone sent, kept on the watch.  The watch face process is restarted
+ * often, and without this it came back showing "- -" and asked the phone for the weather over
+ * Bluetooth every time, however recently it had been sent.  It's the payload the phone sent,
+ * under a hundred bytes, so it's read synchronously when the watch face is created and the first
+ * frame shows real weather.
+ */
+class WatchForecastStore {
+    private static final String LOG_TAG = WatchForecastStore.class.getSimpleName();
+
+    private static final String PREFS_NAME = "watch_forecast";
+
+    private static final String KEY_PAYLOAD = "payload";
+    private static final String KEY_SYNC_TIME = "sync_time";
+
+    // How long a forecast is good for before we ask the phone for a new one.  The phone pushes
+    // changes anyway, so this only matters when one was missed.
+    static final long STALE_AFTER_MILLIS = TimeUnit.HOURS.toMillis(4);
+
+    static class Forecast {
+        final ForecastPayload payload;
+        final long syncTime;
+
+        Forecast(ForecastPayload payload, long syncTime) {
+            this.payload = payload;
+            this.syncTime = syncTime;
+        }
+    }
+
+    private final SharedPreferences mPrefs;
+
+    WatchForecastStore(Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @return the stored forecast, or null if the phone has never sent one, or sent it in a
+     * format this version doesn't read.
+     */
+    Forecast load() {
+        String encoded = mPrefs.getString(KEY_PAYLOAD, null);
+        if (encoded == null) {
+            return null;
+        }
+        try {
+            return new Forecast(ForecastPayload.wrap(Base64.decode(encoded, Base64.NO_WRAP)),
+                    mPrefs.getLong(KEY_SYNC_TIME, 0));
+        } catch (IllegalArgumentException e) {
+            // Left behind by another version; the phone will send a new one.
+            Log.w(LOG_TAG, "Ignoring stored forecast: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Stores a forecast.  Written in the background; {@link #load()} sees it right away.
+     */
+    void save(Forecast forecast) {
+        mPrefs.edit()
+                .putString(KEY_PAYLOAD,
+                        Base64.encodeToString(forecast.payload.toByteArray(), Base64.NO_WRAP))
+                .putLong(KEY_SYNC_TIME, forecast.syncTime)
+                .apply();
+    }
+
+    /**
+     * @return when the stored forecast arrived, or 0 if there is none.
+     */
+    long getLastSyncTime() {
+        return mPrefs.getLong(KEY_SYNC_TIME, 0);
+    }
+
+    boolean isStale(long now) {
+        return now - getLastSyncTime() > STALE_AFTER_MILLIS;
+    }
+
+    void clear() {
+        mPrefs.edit().clear().apply();
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import android.util.LruCache;
+
+/**
+ * Condition art for the watch face, decoded off the main thread and scaled to the size it's
+ * drawn at.  The art resources are far bigger than the few dozen pixels they end up as, so
+ * they're decoded with inSampleSize into one reused scratch bitmap (inBitmap), scaled from
+ * there, and the result kept in a small LRU cache keyed by resource and size.
+ */
+class WeatherArtPool {
+    private static final String LOG_TAG = WeatherArtPool.class.getSimpleName();
+
+    // Plenty for every condition at a couple of sizes, on any watch screen.
+    private static final int CACHE_BYTES = 512 * 1024;
+
+    interface Callback {
+        /**
+         * Called on the main thread with the art, or null if it couldn't be decoded.
+         */
+        void onArtReady(int artResId, int size, Bitmap art);
+    }
+
+    private final Resources mResources;
+    private final HandlerThread mThread;
+    private final Handler mDecodeHandler;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final LruCache<String, Bitmap> mCache = new LruCache<String, Bitmap>(CACHE_BYTES) {
+        @Override
+        protected int sizeOf(String key, Bitmap value) {
+            return value.getByteCount();
+        }
+    };
+
+    // Only touched on the decode thread.
+    private Bitmap mScratch;
+
+    // Set by quit(), after which no callback is called; a decode that was already running may
+    // still post one.
+    private volatile boolean mQuit;
+
+    WeatherArtPool(Resources resources) {
+        mResources = resources;
+        mThread = new HandlerThread(LOG_TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        mThread.start();
+        mDecodeHandler = new Handler(mThread.getLooper());
+    }
+
+    /**
+     * @return the art at this size if it has been decoded already, or null.
+     */
+    Bitmap getCached(int artResId, int size) {
+        return mCache.get(key(artResId, size));
+    }
+
+    /**
+     * Hands the art, scaled to size x size, to the callback: right away if it's cached,
+     * otherwise once the decode thread has got it ready.
+     */
+    void request(final int artResId, final int size, final Callback callback) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Art size must be positive: " + size);
+        }
+        if (mQuit) {
+            return;
+        }
+        Bitmap cached = getCached(artResId, size);
+        if (cached != null) {
+            callback.onArtReady(artResId, size, cached);
+            return;
+        }
+        mDecodeHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap art = decode(artResId, size);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!mQuit) {
+                            callback.onArtReady(artResId, size, art);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Stops decoding and drops the art.  Callbacks still pending are never called, so the
+     * engine that asked for them can go away.
+     */
+    void quit() {
+        mQuit = true;
+        mThread.quit();
+        mDecodeHandler.removeCallbacksAndMessages(null);
+        mMainHandler.removeCallbacksAndMessages(null);
+        mCache.evictAll();
+    }
+
+    private Bitmap decode(int artResId, int size) {
+        String key = key(artResId, size);
+        Bitmap art = mCache.get(key);
+        if (art != null) {
+            return art;
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(mResources, artResId, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            Log.w(LOG_TAG, "Can't decode art " + artResId);
+            return null;
+        }
+
+        // The largest power of two that still leaves the art at least as big as it's drawn.
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= size
+                && options.outHeight / (sampleSize * 2) >= size) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        options.inScaled = false;
+        options.inMutable = true;
+        options.inBitmap = mScratch;
+
+        Bitmap sampled;
+        try {
+            sampled = BitmapFactory.decodeResource(mResources, artResId, options);
+        } catch (IllegalArgumentException e) {
+            // The scratch bitmap is too small for this art; decode into a new one.
+            options.inBitmap = null;
+            sampled = BitmapFactory.decodeResource(mResources, artResId, options);
+        }
+        if (sampled == null) {
+            return null;
+        }
+        mScratch = sampled;
+
+        art = Bitmap.createScaledBitmap(sampled, size, size, true);
+        if (art == sampled) {
+            // Already the right size; the cache can't share the scratch bitmap.
+            art = sampled.copy(sampled.getConfig(), false);
+        }
+        mCache.put(key, art);
+        return art;
+    }
+
+    private static String key(int artResId, int size) {
+        return artResId + "@" + size;
+    }
+}